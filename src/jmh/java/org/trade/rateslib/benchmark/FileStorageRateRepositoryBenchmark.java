@@ -0,0 +1,138 @@
+package org.trade.rateslib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+import org.trade.rateslib.data.RateEntity;
+import org.trade.rateslib.data.impl.FileStorageRateRepository;
+import org.trade.rateslib.data.impl.FileStorageSettings;
+import org.trade.rateslib.model.RateSeries;
+import org.trade.rateslib.model.Timeframe;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Чтение и запись блоков файлового репозитория на синтетической истории H1
+ *
+ * @author javonavi
+ */
+@State(Scope.Benchmark)
+public class FileStorageRateRepositoryBenchmark {
+
+    private static final int BARS = 50_000;
+
+    @Param({"HEAP", "MAPPED"})
+    public FileStorageSettings.ReadMode readMode;
+
+    /**
+     * 0 - кеш блоков фактически выключен, каждое чтение идет на диск
+     */
+    @Param({"0", "100"})
+    public long cacheMaximumBlocks;
+
+    private Path directory;
+    private FileStorageRateRepository repository;
+    private List<RateEntity> rates;
+    /**
+     * Два варианта суток с разными close: запись чередует их, чтобы каждый вызов менял данные блока
+     */
+    private List<List<RateEntity>> dayRates;
+    private int invocation;
+    private LocalDateTime middle;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("rates-bench");
+        rates = SyntheticRates.entities(Timeframe.H1, BARS);
+        repository = new FileStorageRateRepository(directory, "BENCH", Timeframe.H1,
+                FileStorageSettings.builder()
+                        .withReadMode(readMode)
+                        .withCacheMaximumBlocks(cacheMaximumBlocks)
+                        .build(),
+                LoggerFactory.getLogger(FileStorageRateRepositoryBenchmark.class));
+        repository.upsertAll(rates);
+        middle = rates.get(BARS / 2).getTime();
+        dayRates = List.of(withClose(rates.subList(BARS / 2, BARS / 2 + 24), 0.),
+                withClose(rates.subList(BARS / 2, BARS / 2 + 24), 0.01));
+    }
+
+    private static List<RateEntity> withClose(List<RateEntity> source, double shift) {
+        List<RateEntity> result = new ArrayList<>(source.size());
+        for (RateEntity rate : source) {
+            RateEntity copy = new RateEntity();
+            copy.setTime(rate.getTime());
+            copy.setOpen(rate.getOpen());
+            copy.setHigh(rate.getHigh() + shift);
+            copy.setLow(rate.getLow());
+            copy.setClose(rate.getClose() + shift);
+            result.add(copy);
+        }
+        return result;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<RateEntity> loadBlock() {
+        return repository.findAllByTimeBetween(middle, middle.plusHours(23));
+    }
+
+    /**
+     * Изменение всех баров суток: блок перезаписывается целиком
+     */
+    @Benchmark
+    public void saveBlock() {
+        repository.upsertAll(dayRates.get(invocation++ & 1));
+    }
+
+    /**
+     * Изменение одного бара: запись одного слота в существующий файл блока
+     */
+    @Benchmark
+    public void updateSlot() {
+        repository.update(dayRates.get(invocation++ & 1).get(0));
+    }
+
+    @Benchmark
+    public List<RateEntity> rangeScanMonth() {
+        return repository.findAllByTimeBetween(middle, middle.plusDays(30));
+    }
+
+    @Benchmark
+    public RateSeries rangeScanMonthSeries() {
+        return repository.getSeriesBetween(middle, middle.plusDays(30));
+    }
+
+    @Benchmark
+    public void rangeScanMonthConsumer(Blackhole blackhole) {
+        repository.scan(middle, middle.plusDays(30), (time, open, high, low, close) -> blackhole.consume(close));
+    }
+
+    @Benchmark
+    public List<RateEntity> getLatest() {
+        return repository.getLatest(100);
+    }
+
+    @Benchmark
+    public List<RateEntity> getLatestBeforeTime() {
+        return repository.getLatest(middle, 100);
+    }
+}
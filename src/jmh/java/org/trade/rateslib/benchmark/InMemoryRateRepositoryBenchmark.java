@@ -0,0 +1,63 @@
+package org.trade.rateslib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.trade.rateslib.data.RateEntity;
+import org.trade.rateslib.data.impl.InMemoryRateRepository;
+import org.trade.rateslib.model.Timeframe;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Выборки из репозитория в памяти в зависимости от длины истории
+ *
+ * @author javonavi
+ */
+@State(Scope.Benchmark)
+public class InMemoryRateRepositoryBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int bars;
+
+    private InMemoryRateRepository repository;
+    private LocalDateTime middle;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = new InMemoryRateRepository();
+        List<RateEntity> rates = SyntheticRates.entities(Timeframe.M15, bars);
+        rates.forEach(repository::insert);
+        middle = rates.get(bars / 2).getTime();
+    }
+
+    @Benchmark
+    public List<RateEntity> getLatest() {
+        return repository.getLatest(100);
+    }
+
+    @Benchmark
+    public List<RateEntity> getLatestBeforeTime() {
+        return repository.getLatest(middle, 100);
+    }
+
+    @Benchmark
+    public Optional<RateEntity> getRate() {
+        return repository.getRate(bars / 3);
+    }
+
+    @Benchmark
+    public int getShift() {
+        return repository.getShift(middle);
+    }
+
+    @Benchmark
+    public Optional<RateEntity> getHighestRate() {
+        return repository.getHighestRate(middle, middle.plusDays(30));
+    }
+}
@@ -0,0 +1,118 @@
+package org.trade.rateslib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.trade.rateslib.indicator.Atr;
+import org.trade.rateslib.indicator.BollingerBands;
+import org.trade.rateslib.indicator.BollingerBandsNarrowing;
+import org.trade.rateslib.indicator.MovingAverage;
+import org.trade.rateslib.indicator.Rsi;
+import org.trade.rateslib.model.PriceType;
+import org.trade.rateslib.model.Rate;
+import org.trade.rateslib.model.RateSeries;
+import org.trade.rateslib.model.Timeframe;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Расчет индикаторов по всей синтетической истории: пакетные реализации и потоковые калькуляторы
+ *
+ * @author javonavi
+ */
+@State(Scope.Benchmark)
+public class IndicatorBenchmark {
+
+    private static final int BARS = 10_000;
+
+    @Param({"14", "50"})
+    public int length;
+
+    private final Atr atr = new Atr();
+    private final BollingerBands bollingerBands = new BollingerBands();
+    private final BollingerBandsNarrowing bollingerBandsNarrowing = new BollingerBandsNarrowing();
+    private final MovingAverage movingAverage = new MovingAverage();
+    private final Rsi rsi = new Rsi();
+
+    private List<Rate> rates;
+    private RateSeries series;
+    private List<Double> closes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rates = SyntheticRates.rates(Timeframe.H1, BARS);
+        series = RateSeries.fromRates(rates);
+        closes = rates.stream().map(rate -> rate.getClose().doubleValue()).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Double> atr() {
+        return atr.calc(rates, length);
+    }
+
+    @Benchmark
+    public double[] atrSeries() {
+        return atr.calc(series, length);
+    }
+
+    @Benchmark
+    public void atrCalculator(Blackhole blackhole) {
+        Atr.AtrCalculator calculator = new Atr.AtrCalculator(length);
+        for (int i = 0; i < series.size(); i++) {
+            blackhole.consume(calculator.calc(series.getHigh(i), series.getLow(i), series.getClose(i)));
+        }
+    }
+
+    @Benchmark
+    public List<BollingerBands.BollingerBandsResult> bollingerBands() {
+        return bollingerBands.calc(rates, length);
+    }
+
+    @Benchmark
+    public void bollingerBandsCalculator(Blackhole blackhole) {
+        BollingerBands.BollingerBandsCalculator calculator = new BollingerBands.BollingerBandsCalculator(length);
+        for (int i = 0; i < series.size(); i++) {
+            blackhole.consume(calculator.calc(series.getClose(i)));
+        }
+    }
+
+    @Benchmark
+    public List<Boolean> bollingerBandsNarrowing() {
+        return bollingerBandsNarrowing.check(rates, length, length);
+    }
+
+    @Benchmark
+    public List<Double> sma() {
+        return movingAverage.calc(closes, length, MovingAverage.MovingAverageType.SMA);
+    }
+
+    @Benchmark
+    public List<Double> ema() {
+        return movingAverage.calc(closes, length, MovingAverage.MovingAverageType.EMA);
+    }
+
+    @Benchmark
+    public void smaCalculator(Blackhole blackhole) {
+        MovingAverage.MovingAverageCalculator calculator = new MovingAverage.SmaCalculator(length);
+        for (int i = 0; i < series.size(); i++) {
+            blackhole.consume(calculator.calc(series.getClose(i)));
+        }
+    }
+
+    @Benchmark
+    public Map<LocalDateTime, Double> rsi() {
+        return rsi.calc(rates, length, PriceType.CLOSE);
+    }
+
+    @Benchmark
+    public double[] rsiSeries() {
+        return rsi.calc(series, length, PriceType.CLOSE);
+    }
+}
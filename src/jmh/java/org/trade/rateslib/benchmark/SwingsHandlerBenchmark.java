@@ -0,0 +1,85 @@
+package org.trade.rateslib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+import org.trade.rateslib.data.RateEntity;
+import org.trade.rateslib.data.SwingHandlerContextEntity;
+import org.trade.rateslib.data.SwingsService;
+import org.trade.rateslib.data.impl.InMemorySwingRepository;
+import org.trade.rateslib.model.Rate;
+import org.trade.rateslib.model.SwingsHandler;
+import org.trade.rateslib.model.Timeframe;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск свингов на синтетической истории M15 из 1 млн баров.
+ * Каждый замер - полный прогон истории через новый обработчик
+ *
+ * @author javonavi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SwingsHandlerBenchmark {
+
+    private static final String STOCK = "BENCH";
+    private static final int BARS = 1_000_000;
+
+    @Param({"12", "48"})
+    public int reverseBarsCount;
+
+    private List<RateEntity> entities;
+    private List<Rate> rates;
+    private SwingsHandler handler;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        entities = SyntheticRates.entities(Timeframe.M15, BARS);
+        rates = SyntheticRates.rates(Timeframe.M15, BARS);
+    }
+
+    @Setup(Level.Iteration)
+    public void createHandler() {
+        SwingsService swingsService = new SwingsService();
+        swingsService.init(STOCK, Map.of(Timeframe.M15.name().toLowerCase(), new InMemorySwingRepository()));
+        handler = new SwingsHandler(reverseBarsCount, Timeframe.M15.name(), STOCK,
+                new SwingHandlerContextEntity(), swingsService, NOPLogger.NOP_LOGGER);
+    }
+
+    @Benchmark
+    public int addRateEntity() {
+        int swings = 0;
+        for (RateEntity rate : entities) {
+            if (handler.addRate(rate).isPresent()) {
+                swings++;
+            }
+        }
+        return swings;
+    }
+
+    @Benchmark
+    public int addRate() {
+        int swings = 0;
+        for (Rate rate : rates) {
+            if (handler.addRate(rate).isPresent()) {
+                swings++;
+            }
+        }
+        return swings;
+    }
+}
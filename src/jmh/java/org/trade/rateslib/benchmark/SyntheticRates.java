@@ -0,0 +1,73 @@
+package org.trade.rateslib.benchmark;
+
+import org.trade.rateslib.data.RateEntity;
+import org.trade.rateslib.model.Rate;
+import org.trade.rateslib.model.Timeframe;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Детерминированный генератор котировок для бенчмарков: случайное блуждание с фиксированным seed
+ *
+ * @author javonavi
+ */
+public final class SyntheticRates {
+
+    public static final long SEED = 20240504L;
+    public static final LocalDateTime START = LocalDateTime.parse("2000-01-03T00:00:00");
+
+    private SyntheticRates() {
+    }
+
+    /**
+     * Возвращает count баров с шагом таймфрейма начиная с {@link #START}
+     *
+     * @param timeframe поддерживаются таймфреймы без месячного периода (M15, H1, D1, ...)
+     * @param count
+     * @return
+     */
+    public static List<RateEntity> entities(Timeframe timeframe, int count) {
+        long stepMinutes = timeframe.getDuration().getPeriod().getDays() * 1440L
+                + timeframe.getDuration().getDuration().toMinutes();
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<RateEntity> result = new ArrayList<>(count);
+        double close = 100.;
+        LocalDateTime time = START;
+        for (int i = 0; i < count; i++) {
+            double open = close;
+            close = Math.max(1., open + random.nextDouble(-1., 1.));
+            RateEntity entity = new RateEntity();
+            entity.setTime(time);
+            entity.setOpen(round(open));
+            entity.setClose(round(close));
+            entity.setHigh(round(Math.max(open, close) + random.nextDouble(0., 0.5)));
+            entity.setLow(round(Math.max(0.5, Math.min(open, close) - random.nextDouble(0., 0.5))));
+            result.add(entity);
+            time = time.plusMinutes(stepMinutes);
+        }
+        return result;
+    }
+
+    public static List<Rate> rates(Timeframe timeframe, int count) {
+        List<RateEntity> entities = entities(timeframe, count);
+        List<Rate> result = new ArrayList<>(entities.size());
+        for (RateEntity entity : entities) {
+            result.add(Rate.builder()
+                    .withTime(entity.getTime())
+                    .withOpen(entity.getOpen())
+                    .withHigh(entity.getHigh())
+                    .withLow(entity.getLow())
+                    .withClose(entity.getClose())
+                    .withTimeframe(timeframe.name())
+                    .build());
+        }
+        return result;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100000.) / 100000.;
+    }
+}
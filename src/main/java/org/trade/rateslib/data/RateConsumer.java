@@ -0,0 +1,19 @@
+package org.trade.rateslib.data;
+
+/**
+ * Получатель котировок без создания объекта на каждый бар
+ *
+ * @author javonavi
+ */
+@FunctionalInterface
+public interface RateConsumer {
+
+    /**
+     * @param epochMinutes время бара в минутах от начала эпохи (см. {@link org.trade.rateslib.utils.TimeUtils#toEpochMinutes})
+     * @param open
+     * @param high
+     * @param low
+     * @param close
+     */
+    void accept(long epochMinutes, double open, double high, double low, double close);
+}
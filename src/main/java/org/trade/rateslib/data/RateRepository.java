@@ -1,6 +1,12 @@
 package org.trade.rateslib.data;
 
+import org.trade.rateslib.model.PriceCodec;
+import org.trade.rateslib.model.RateSeries;
+import org.trade.rateslib.model.TickSeries;
+
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +23,53 @@ public interface RateRepository {
 
     List<RateEntity> findAllByTimeBetween(LocalDateTime timeStart, LocalDateTime timeEnd);
 
+    /**
+     * Возвращает бары в интервале [timeStart, timeEnd] в виде массивов примитивов
+     *
+     * @param timeStart
+     * @param timeEnd
+     * @return
+     */
+    default RateSeries getSeriesBetween(LocalDateTime timeStart, LocalDateTime timeEnd) {
+        return RateSeries.fromEntities(findAllByTimeBetween(timeStart, timeEnd));
+    }
+
+    /**
+     * Возвращает бары в интервале [timeStart, timeEnd] с ценами в тиках
+     *
+     * @param timeStart
+     * @param timeEnd
+     * @param codec     шаг цены инструмента; цены, не кратные шагу, округляются до ближайшего тика
+     * @return
+     */
+    default TickSeries getTickSeriesBetween(LocalDateTime timeStart, LocalDateTime timeEnd, PriceCodec codec) {
+        return TickSeries.of(getSeriesBetween(timeStart, timeEnd), codec);
+    }
+
+    /**
+     * Возвращает бар с максимальным high в интервале [fromTime, toTime]. При равенстве - самый ранний
+     *
+     * @param fromTime
+     * @param toTime
+     * @return
+     */
+    default Optional<RateEntity> getHighestRate(LocalDateTime fromTime, LocalDateTime toTime) {
+        return findAllByTimeBetween(fromTime, toTime)
+                .stream().max(Comparator.comparing(RateEntity::getHigh));
+    }
+
+    /**
+     * Возвращает бар с минимальным low в интервале [fromTime, toTime]. При равенстве - самый ранний
+     *
+     * @param fromTime
+     * @param toTime
+     * @return
+     */
+    default Optional<RateEntity> getLowestRate(LocalDateTime fromTime, LocalDateTime toTime) {
+        return findAllByTimeBetween(fromTime, toTime)
+                .stream().min(Comparator.comparing(RateEntity::getLow));
+    }
+
     int countByTimeBetween(LocalDateTime timeStart, LocalDateTime timeEnd);
 
     RateEntity findFirstByTimeLessThanOrderByTimeDesc(LocalDateTime time);
@@ -27,6 +80,34 @@ public interface RateRepository {
 
     void update(RateEntity rateEntity);
 
+    /**
+     * Вставляет бары, которых еще нет в репозитории. Существующие бары не изменяются
+     *
+     * @param rates
+     */
+    default void insertAll(Collection<RateEntity> rates) {
+        rates.forEach(r -> {
+            if (findById(r.getTime()).isEmpty()) {
+                insert(r);
+            }
+        });
+    }
+
+    /**
+     * Вставляет новые бары и заменяет существующие
+     *
+     * @param rates
+     */
+    default void upsertAll(Collection<RateEntity> rates) {
+        rates.forEach(r -> {
+            if (findById(r.getTime()).isPresent()) {
+                update(r);
+            } else {
+                insert(r);
+            }
+        });
+    }
+
     Optional<RateEntity> findById(LocalDateTime time);
 
     int count();
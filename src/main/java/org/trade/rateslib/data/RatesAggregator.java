@@ -0,0 +1,221 @@
+package org.trade.rateslib.data;
+
+import org.trade.rateslib.model.Timeframe;
+import org.trade.rateslib.utils.TimeUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Потоковое построение баров старших таймфреймов из баров младшего.
+ * Границы баров определяются {@link TimeUtils#getLatestFinishedBarTime}.
+ * На каждый таймфрейм хранится только текущий бар: свертка завершенных младших баров и последний младший бар,
+ * поэтому последний младший бар можно обновлять повторной передачей с тем же временем.
+ * После каждого бара слушатель получает текущие (незавершенные) бары, а при переходе границы - завершенные
+ *
+ * @author javonavi
+ */
+public class RatesAggregator {
+
+    private final Timeframe sourceTimeframe;
+    private final List<Bucket> buckets;
+    private final Listener listener;
+    private LocalDateTime lastTime;
+
+    /**
+     * @param sourceTimeframe таймфрейм входящих баров
+     * @param listener
+     */
+    public RatesAggregator(Timeframe sourceTimeframe,
+                           Listener listener) {
+        this(sourceTimeframe, Arrays.stream(Timeframe.values())
+                .filter(timeframe -> timeframe.isAfter(sourceTimeframe))
+                .collect(Collectors.toList()), listener);
+    }
+
+    /**
+     * @param sourceTimeframe  таймфрейм входящих баров
+     * @param targetTimeframes строимые таймфреймы, старше sourceTimeframe
+     * @param listener
+     */
+    public RatesAggregator(Timeframe sourceTimeframe,
+                           Collection<Timeframe> targetTimeframes,
+                           Listener listener) {
+        this.sourceTimeframe = requireNonNull(sourceTimeframe, "sourceTimeframe");
+        this.listener = requireNonNull(listener, "listener");
+        this.buckets = new ArrayList<>(targetTimeframes.size());
+        for (Timeframe timeframe : targetTimeframes) {
+            if (!timeframe.isAfter(sourceTimeframe)) {
+                throw new RuntimeException("Unexpected target timeframe: " + timeframe);
+            }
+            buckets.add(new Bucket(timeframe));
+        }
+    }
+
+    public Timeframe getSourceTimeframe() {
+        return sourceTimeframe;
+    }
+
+    /**
+     * Добавляет бар младшего таймфрейма. Бар с временем последнего добавленного бара заменяет его
+     *
+     * @param rate
+     */
+    public void add(RateEntity rate) {
+        LocalDateTime time = requireNonNull(rate.getTime(), "time");
+        if (lastTime != null && time.isBefore(lastTime)) {
+            throw new RuntimeException("Unexpected rate time: time=" + time + ", lastTime=" + lastTime);
+        }
+        boolean replace = time.equals(lastTime);
+        lastTime = time;
+        for (Bucket bucket : buckets) {
+            LocalDateTime barTime = TimeUtils.getLatestFinishedBarTime(time, bucket.timeframe);
+            if (bucket.time != null && !barTime.equals(bucket.time)) {
+                listener.onRate(bucket.timeframe, bucket.toEntity(), true);
+                bucket.reset();
+            }
+            bucket.add(barTime, rate, replace);
+            listener.onRate(bucket.timeframe, bucket.toEntity(), false);
+        }
+    }
+
+    /**
+     * Добавляет бары младшего таймфрейма в порядке возрастания времени
+     *
+     * @param rates
+     */
+    public void addAll(Collection<RateEntity> rates) {
+        rates.forEach(this::add);
+    }
+
+    /**
+     * Возвращает текущий (незавершенный) бар таймфрейма
+     *
+     * @param timeframe
+     * @return
+     */
+    public Optional<RateEntity> getCurrent(Timeframe timeframe) {
+        return buckets.stream()
+                .filter(bucket -> bucket.timeframe == timeframe && bucket.time != null)
+                .findFirst()
+                .map(Bucket::toEntity);
+    }
+
+    /**
+     * Создает слушателя, записывающего бары в репозитории по таймфреймам
+     *
+     * @param repositories
+     * @param withCurrent  записывать ли незавершенные бары
+     * @return
+     */
+    public static Listener toRepositories(Map<Timeframe, ? extends RateRepository> repositories,
+                                          boolean withCurrent) {
+        return (timeframe, rate, finished) -> {
+            RateRepository repository = repositories.get(timeframe);
+            if (repository != null && (finished || withCurrent)) {
+                repository.upsertAll(Collections.singletonList(rate));
+            }
+        };
+    }
+
+    /**
+     * Создает слушателя, записывающего бары товара через {@link RatesService}
+     *
+     * @param ratesService
+     * @param stock
+     * @param withCurrent  записывать ли незавершенные бары
+     * @return
+     */
+    public static Listener toService(RatesService ratesService,
+                                     String stock,
+                                     boolean withCurrent) {
+        return (timeframe, rate, finished) -> {
+            if (finished || withCurrent) {
+                ratesService.insertOrUpdate(stock, timeframe, Collections.singletonList(rate));
+            }
+        };
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * @param timeframe
+         * @param rate      новый объект на каждый вызов
+         * @param finished  true, если бар завершен и больше не изменится
+         */
+        void onRate(Timeframe timeframe, RateEntity rate, boolean finished);
+    }
+
+    /**
+     * Текущий бар одного таймфрейма
+     */
+    private static class Bucket {
+        private final Timeframe timeframe;
+        private LocalDateTime time;
+        /**
+         * Свертка младших баров, кроме последнего
+         */
+        private boolean hasBase;
+        private double baseOpen;
+        private double baseHigh;
+        private double baseLow;
+        /**
+         * Последний младший бар
+         */
+        private double lastOpen;
+        private double lastHigh;
+        private double lastLow;
+        private double lastClose;
+
+        Bucket(Timeframe timeframe) {
+            this.timeframe = timeframe;
+        }
+
+        void reset() {
+            time = null;
+            hasBase = false;
+        }
+
+        void add(LocalDateTime barTime,
+                 RateEntity rate,
+                 boolean replace) {
+            if (time == null) {
+                time = barTime;
+            } else if (!replace) {
+                if (hasBase) {
+                    baseHigh = Math.max(baseHigh, lastHigh);
+                    baseLow = Math.min(baseLow, lastLow);
+                } else {
+                    baseOpen = lastOpen;
+                    baseHigh = lastHigh;
+                    baseLow = lastLow;
+                    hasBase = true;
+                }
+            }
+            lastOpen = rate.getOpen();
+            lastHigh = rate.getHigh();
+            lastLow = rate.getLow();
+            lastClose = rate.getClose();
+        }
+
+        RateEntity toEntity() {
+            RateEntity entity = new RateEntity();
+            entity.setTime(time);
+            entity.setOpen(hasBase ? baseOpen : lastOpen);
+            entity.setHigh(hasBase ? Math.max(baseHigh, lastHigh) : lastHigh);
+            entity.setLow(hasBase ? Math.min(baseLow, lastLow) : lastLow);
+            entity.setClose(lastClose);
+            return entity;
+        }
+    }
+}
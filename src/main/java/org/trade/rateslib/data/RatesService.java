@@ -1,11 +1,10 @@
 package org.trade.rateslib.data;
 
 import org.trade.rateslib.model.Rate;
+import org.trade.rateslib.model.Timeframe;
 
 import java.time.LocalDateTime;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -18,14 +17,18 @@ import static java.util.Objects.requireNonNull;
  * @author javonavi
  */
 public class RatesService {
-    private final Map<String, Map<String, RateRepository>> ratesRepository;
+    private final StockTimeframeRegistry<RateRepository> ratesRepository;
 
     public RatesService() {
-        this.ratesRepository = new HashMap<>();
+        this.ratesRepository = new StockTimeframeRegistry<>();
     }
 
-    public synchronized void init(String stock, Map<String, RateRepository> rateRepositoryMap) {
-        this.ratesRepository.put(stock, rateRepositoryMap);
+    public void init(String stock, Map<String, RateRepository> rateRepositoryMap) {
+        this.ratesRepository.putAll(stock, rateRepositoryMap);
+    }
+
+    public void init(String stock, Timeframe timeframe, RateRepository rateRepository) {
+        this.ratesRepository.put(stock, timeframe, rateRepository);
     }
 
     public List<RateEntity> mapRates(Collection<Rate> rates, String stock, String timeframe) {
@@ -60,30 +63,29 @@ public class RatesService {
     public void insertOrIgnore(String stock,
                                String timeframe,
                                Collection<RateEntity> rates) {
-        RateRepository repository = getRepository(stock, timeframe);
-        rates.forEach(r -> {
-            if (repository.findById(r.getTime()).isEmpty()) {
-                repository.insert(r);
-            }
-        });
+        getRepository(stock, timeframe).insertAll(rates);
     }
 
     public void insertOrUpdate(String stock,
                                String timeframe,
                                Collection<RateEntity> rates) {
-        RateRepository repository = getRepository(stock, timeframe);
-        rates.forEach(r -> {
-            if (repository.findById(r.getTime()).isPresent()) {
-                repository.update(r);
-            } else {
-                repository.insert(r);
-            }
-        });
+        getRepository(stock, timeframe).upsertAll(rates);
+    }
+
+    public void insertOrUpdate(String stock,
+                               Timeframe timeframe,
+                               Collection<RateEntity> rates) {
+        getRepository(stock, timeframe).upsertAll(rates);
     }
 
     private RateRepository getRepository(String stock,
                                          String timeframe) {
-        return ratesRepository.get(stock).get(timeframe.toLowerCase());
+        return getRepository(stock, Timeframe.of(timeframe));
+    }
+
+    private RateRepository getRepository(String stock,
+                                         Timeframe timeframe) {
+        return ratesRepository.get(stock, timeframe);
     }
 
     public Optional<RateEntity> getByTime(LocalDateTime time,
@@ -135,17 +137,19 @@ public class RatesService {
     }
 
     public Optional<RateEntity> getLatestRateBeforeTime(String stock, String timeframe, LocalDateTime beforeTime) {
+        return getLatestRateBeforeTime(stock, Timeframe.of(timeframe), beforeTime);
+    }
+
+    public Optional<RateEntity> getLatestRateBeforeTime(String stock, Timeframe timeframe, LocalDateTime beforeTime) {
         return Optional.ofNullable(getRepository(stock, timeframe).findFirstByTimeLessThanOrderByTimeDesc(beforeTime));
     }
 
     public Optional<RateEntity> getHighestRate(String stock, String timeframe, LocalDateTime fromTime, LocalDateTime toTime) {
-        return getRepository(stock, timeframe).findAllByTimeBetween(fromTime, toTime)
-                .stream().max(Comparator.comparing(RateEntity::getHigh));
+        return getRepository(stock, timeframe).getHighestRate(fromTime, toTime);
     }
 
     public Optional<RateEntity> getLowestRate(String stock, String timeframe, LocalDateTime fromTime, LocalDateTime toTime) {
-        return getRepository(stock, timeframe).findAllByTimeBetween(fromTime, toTime)
-                .stream().min(Comparator.comparing(RateEntity::getLow));
+        return getRepository(stock, timeframe).getLowestRate(fromTime, toTime);
     }
 
     public List<RateEntity> getRatesFromTime(String stock, String timeframe, LocalDateTime fromTime) {
@@ -173,6 +177,10 @@ public class RatesService {
      * @return
      */
     public int getCountBetween(String stock, String timeframe, LocalDateTime fromTime, LocalDateTime toTime) {
+        return getCountBetween(stock, Timeframe.of(timeframe), fromTime, toTime);
+    }
+
+    public int getCountBetween(String stock, Timeframe timeframe, LocalDateTime fromTime, LocalDateTime toTime) {
         return (int) getRepository(stock, timeframe).countByTimeBetween(fromTime, toTime);
     }
 
@@ -0,0 +1,77 @@
+package org.trade.rateslib.data;
+
+import org.trade.rateslib.model.StockTimeframe;
+import org.trade.rateslib.model.Timeframe;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Потокобезопасный реестр значений по товару и таймфрейму.
+ * Чтение не блокируется: товар ищется в {@link ConcurrentHashMap}, таймфрейм - по индексу в массиве.
+ * Товары и таймфреймы можно добавлять во время работы параллельно с чтением
+ *
+ * @author javonavi
+ */
+public class StockTimeframeRegistry<T> {
+
+    private static final Timeframe[] TIMEFRAMES = Timeframe.values();
+
+    private final ConcurrentHashMap<String, AtomicReferenceArray<T>> values = new ConcurrentHashMap<>();
+
+    /**
+     * Заменяет все значения товара
+     *
+     * @param stock
+     * @param timeframeValues значения по коду таймфрейма (регистр не важен)
+     */
+    public void putAll(String stock, Map<String, ? extends T> timeframeValues) {
+        AtomicReferenceArray<T> row = new AtomicReferenceArray<>(TIMEFRAMES.length);
+        timeframeValues.forEach((code, value) -> row.set(toTimeframe(code).ordinal(), value));
+        values.put(stock, row);
+    }
+
+    public void put(String stock, Timeframe timeframe, T value) {
+        values.computeIfAbsent(stock, s -> new AtomicReferenceArray<>(TIMEFRAMES.length))
+                .set(timeframe.ordinal(), value);
+    }
+
+    /**
+     * @return Если значения нет, возвращает null
+     */
+    public T get(String stock, Timeframe timeframe) {
+        AtomicReferenceArray<T> row = values.get(stock);
+        return row == null || timeframe == null ? null : row.get(timeframe.ordinal());
+    }
+
+    /**
+     * @param timeframe код таймфрейма (регистр не важен)
+     * @return Если значения нет, возвращает null
+     */
+    public T get(String stock, String timeframe) {
+        return get(stock, Timeframe.of(timeframe));
+    }
+
+    public T get(StockTimeframe stockTimeframe) {
+        return get(stockTimeframe.getStock(), stockTimeframe.getTimeframe());
+    }
+
+    public void remove(String stock) {
+        values.remove(stock);
+    }
+
+    public Set<String> getStocks() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    private static Timeframe toTimeframe(String code) {
+        Timeframe timeframe = Timeframe.of(code);
+        if (timeframe == null) {
+            throw new RuntimeException("Unexpected timeframe: " + code);
+        }
+        return timeframe;
+    }
+}
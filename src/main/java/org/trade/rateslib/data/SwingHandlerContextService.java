@@ -1,5 +1,7 @@
 package org.trade.rateslib.data;
 
+import org.trade.rateslib.model.Timeframe;
+
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
@@ -11,22 +13,19 @@ import java.util.function.Supplier;
  * @author javonavi
  */
 public class SwingHandlerContextService {
-    private final Map<String, Map<String, SwingHandlerContextRepository>> repository;
+    private static final List<Timeframe> TIMEFRAMES = List.of(
+            Timeframe.M5, Timeframe.M15, Timeframe.H1, Timeframe.H4, Timeframe.D1, Timeframe.W1, Timeframe.MN1, Timeframe.Y1);
+
+    private final StockTimeframeRegistry<SwingHandlerContextRepository> repository;
 
     public SwingHandlerContextService() {
-        this.repository = new HashMap<>();
+        this.repository = new StockTimeframeRegistry<>();
     }
 
-    public synchronized void init(String stock, Supplier<SwingHandlerContextRepository> repositorySupplier) {
-        this.repository.put(stock, new HashMap<>());
-        this.repository.get(stock).put("m5", repositorySupplier.get());
-        this.repository.get(stock).put("m15", repositorySupplier.get());
-        this.repository.get(stock).put("h1", repositorySupplier.get());
-        this.repository.get(stock).put("h4", repositorySupplier.get());
-        this.repository.get(stock).put("d1", repositorySupplier.get());
-        this.repository.get(stock).put("w1", repositorySupplier.get());
-        this.repository.get(stock).put("mn1", repositorySupplier.get());
-        this.repository.get(stock).put("y1", repositorySupplier.get());
+    public void init(String stock, Supplier<SwingHandlerContextRepository> repositorySupplier) {
+        Map<String, SwingHandlerContextRepository> repositories = new HashMap<>();
+        TIMEFRAMES.forEach(timeframe -> repositories.put(timeframe.getCode(), repositorySupplier.get()));
+        this.repository.putAll(stock, repositories);
     }
 
     /**
@@ -37,17 +36,32 @@ public class SwingHandlerContextService {
      * @param time
      */
     public void deleteAfterTime(String stock, String timeframe, LocalDateTime time) {
+        deleteAfterTime(stock, Timeframe.of(timeframe), time);
+    }
+
+    public void deleteAfterTime(String stock, Timeframe timeframe, LocalDateTime time) {
         getRepository(stock, timeframe).deleteByTimeGreaterThan(time);
     }
 
     private SwingHandlerContextRepository getRepository(String stock,
                                                         String timeframe) {
-        return repository.get(stock).get(timeframe);
+        return getRepository(stock, Timeframe.of(timeframe));
+    }
+
+    private SwingHandlerContextRepository getRepository(String stock,
+                                                        Timeframe timeframe) {
+        return repository.get(stock, timeframe);
     }
 
     public void save(String stock,
                      String timeframe,
                      SwingHandlerContextEntity entity) {
+        save(stock, Timeframe.of(timeframe), entity);
+    }
+
+    public void save(String stock,
+                     Timeframe timeframe,
+                     SwingHandlerContextEntity entity) {
         getRepository(stock, timeframe).save(entity);
     }
 
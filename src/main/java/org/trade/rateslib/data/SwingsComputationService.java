@@ -0,0 +1,227 @@
+package org.trade.rateslib.data;
+
+import org.slf4j.Logger;
+import org.trade.rateslib.model.StockTimeframe;
+import org.trade.rateslib.model.SwingsHandler;
+import org.trade.rateslib.model.Timeframe;
+
+import java.io.Closeable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Пересчет свингов сразу по многим товарам и таймфреймам.
+ * Каждая пара (товар, таймфрейм) обрабатывается своим {@link SwingsHandler} в отдельной задаче
+ * на work-stealing пуле с ограниченным параллелизмом. Задачи не имеют общего состояния,
+ * поэтому результат совпадает с последовательным пересчетом
+ *
+ * @author javonavi
+ */
+public class SwingsComputationService implements Closeable {
+
+    private final RatesService ratesService;
+    private final SwingsService swingsService;
+    private final SwingHandlerContextService swingHandlerContextService;
+    private final ForkJoinPool pool;
+    private final Logger log;
+
+    /**
+     * @param ratesService
+     * @param swingsService
+     * @param swingHandlerContextService
+     * @param parallelism                максимальное количество одновременно выполняемых задач
+     * @param logger
+     */
+    public SwingsComputationService(RatesService ratesService,
+                                    SwingsService swingsService,
+                                    SwingHandlerContextService swingHandlerContextService,
+                                    int parallelism,
+                                    Logger logger) {
+        this.ratesService = requireNonNull(ratesService, "ratesService");
+        this.swingsService = requireNonNull(swingsService, "swingsService");
+        this.swingHandlerContextService = requireNonNull(swingHandlerContextService, "swingHandlerContextService");
+        this.pool = new ForkJoinPool(parallelism);
+        this.log = logger;
+    }
+
+    /**
+     * Запускает пересчет свингов с первого бара для каждой пары (товар, таймфрейм).
+     * Ранее сохраненные свинги и контексты пары удаляются. Повторяющиеся пары запускаются один раз
+     *
+     * @param targets
+     * @param reverseBarsCount
+     * @return Задачи в порядке переданных пар
+     */
+    public List<Task> submit(Collection<StockTimeframe> targets,
+                             int reverseBarsCount) {
+        Map<String, Task> tasks = new LinkedHashMap<>();
+        for (StockTimeframe target : targets) {
+            tasks.computeIfAbsent(target.getStock() + ":" + target.getTimeframeCode(),
+                    key -> new Task(target, reverseBarsCount));
+        }
+        tasks.values().forEach(task -> task.future = CompletableFuture.supplyAsync(() -> compute(task), pool));
+        return new ArrayList<>(tasks.values());
+    }
+
+    /**
+     * Запускает пересчет и ждет завершения всех задач
+     *
+     * @param targets
+     * @param reverseBarsCount
+     * @return Задачи в порядке переданных пар
+     */
+    public List<Task> computeAll(Collection<StockTimeframe> targets,
+                                 int reverseBarsCount) {
+        List<Task> tasks = submit(targets, reverseBarsCount);
+        CompletableFuture.allOf(tasks.stream().map(Task::getFuture).toArray(CompletableFuture[]::new)).join();
+        return tasks;
+    }
+
+    private int compute(Task task) {
+        String stock = task.stockTimeframe.getStock();
+        String timeframe = task.stockTimeframe.getTimeframeCode();
+        Timeframe tf = task.stockTimeframe.getTimeframe();
+        task.state.set(State.RUNNING);
+        try {
+            Optional<RateEntity> firstRate = ratesService.getFirstRate(stock, timeframe);
+            if (firstRate.isEmpty()) {
+                task.state.set(State.DONE);
+                return 0;
+            }
+            LocalDateTime fromTime = firstRate.get().getTime();
+            List<RateEntity> rates = ratesService.getRatesFromTime(stock, timeframe, fromTime);
+            task.totalBars = rates.size();
+            log.info("Start swings computation: stock={}, timeframe={}, bars={}", stock, timeframe, rates.size());
+
+            if (swingsService.getCount(stock, timeframe) > 0) {
+                swingsService.deleteSwingsAfterTime(stock, timeframe, fromTime.minusMinutes(1));
+            }
+            swingHandlerContextService.deleteAfterTime(stock, tf, fromTime.minusMinutes(1));
+
+            SwingsHandler handler = new SwingsHandler(task.reverseBarsCount, timeframe, stock,
+                    swingHandlerContextService.createEntityObject(stock, timeframe), swingsService, log);
+            for (RateEntity rate : rates) {
+                handler.addRate(rate).ifPresent(swing -> {
+                    swingsService.save(stock, tf, swing.getSwingPoint());
+                    task.swingsCount.incrementAndGet();
+                });
+                task.processedBars.incrementAndGet();
+            }
+            if (!rates.isEmpty()) {
+                SwingHandlerContextEntity context = handler.getContext().clone();
+                context.setTime(rates.get(rates.size() - 1).getTime());
+                swingHandlerContextService.save(stock, tf, context);
+            }
+            task.state.set(State.DONE);
+            log.info("Finish swings computation: stock={}, timeframe={}, swings={}", stock, timeframe, task.swingsCount.get());
+            return task.swingsCount.get();
+        } catch (RuntimeException e) {
+            task.state.set(State.FAILED);
+            log.error("Swings computation failed: stock={}, timeframe={}", stock, timeframe, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public enum State {
+        PENDING,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    /**
+     * Задача пересчета свингов по одной паре (товар, таймфрейм) с отслеживанием прогресса
+     */
+    public static class Task {
+        private final StockTimeframe stockTimeframe;
+        private final int reverseBarsCount;
+        private final AtomicReference<State> state = new AtomicReference<>(State.PENDING);
+        private final AtomicInteger processedBars = new AtomicInteger();
+        private final AtomicInteger swingsCount = new AtomicInteger();
+        private volatile int totalBars;
+        private CompletableFuture<Integer> future;
+
+        private Task(StockTimeframe stockTimeframe,
+                     int reverseBarsCount) {
+            this.stockTimeframe = stockTimeframe;
+            this.reverseBarsCount = reverseBarsCount;
+        }
+
+        public StockTimeframe getStockTimeframe() {
+            return stockTimeframe;
+        }
+
+        public State getState() {
+            return state.get();
+        }
+
+        /**
+         * Возвращает количество баров для обработки. До начала выполнения равно 0
+         */
+        public int getTotalBars() {
+            return totalBars;
+        }
+
+        public int getProcessedBars() {
+            return processedBars.get();
+        }
+
+        /**
+         * Возвращает долю обработанных баров от 0 до 1
+         */
+        public double getProgress() {
+            if (state.get() == State.DONE) {
+                return 1.;
+            }
+            int total = totalBars;
+            return total == 0 ? 0. : (double) processedBars.get() / total;
+        }
+
+        public int getSwingsCount() {
+            return swingsCount.get();
+        }
+
+        /**
+         * @return Количество найденных свингов по завершении задачи
+         */
+        public CompletableFuture<Integer> getFuture() {
+            return future;
+        }
+
+        @Override
+        public String toString() {
+            return "Task{" +
+                    "stockTimeframe=" + stockTimeframe +
+                    ", state=" + state.get() +
+                    ", processedBars=" + processedBars.get() +
+                    ", totalBars=" + totalBars +
+                    ", swingsCount=" + swingsCount.get() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.trade.rateslib.data;
+
+import org.slf4j.Logger;
+import org.trade.rateslib.model.SwingEvent;
+import org.trade.rateslib.model.SwingsHandler;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Потоковая обработка котировок одной пары (товар, таймфрейм).
+ * Подписывается на поток баров, передает их в {@link SwingsHandler} и публикует {@link SwingEvent}:
+ * подтвержденные свинги (они же сохраняются в {@link SwingsService}) и изменения контекста.
+ * Буферы подписчиков ограничены: если подписчик не успевает, публикация блокируется,
+ * новые бары у источника не запрашиваются и источник тоже упирается в свой буфер.
+ * Подписчики получают события на своем {@link Executor} и не держат блокировку обработчика
+ *
+ * @author javonavi
+ */
+public class SwingsProcessor extends SubmissionPublisher<SwingEvent> implements Flow.Processor<RateEntity, SwingEvent> {
+
+    private final String stock;
+    private final String timeframe;
+    private final SwingsHandler handler;
+    private final SwingsService swingsService;
+    private final int requestSize;
+    private final Logger log;
+    private Flow.Subscription subscription;
+    private SwingHandlerContextEntity lastContext;
+    private int consumed;
+
+    /**
+     * @param stock
+     * @param timeframe
+     * @param reverseBarsCount
+     * @param context          начальный контекст обработчика
+     * @param swingsService
+     * @param executor         исполнитель для доставки событий подписчикам
+     * @param bufferCapacity   размер буфера каждого подписчика и количество запрашиваемых у источника баров
+     * @param logger
+     */
+    public SwingsProcessor(String stock,
+                           String timeframe,
+                           int reverseBarsCount,
+                           SwingHandlerContextEntity context,
+                           SwingsService swingsService,
+                           Executor executor,
+                           int bufferCapacity,
+                           Logger logger) {
+        super(executor, bufferCapacity);
+        this.stock = requireNonNull(stock, "stock");
+        this.timeframe = requireNonNull(timeframe, "timeframe");
+        this.swingsService = requireNonNull(swingsService, "swingsService");
+        this.handler = new SwingsHandler(reverseBarsCount, timeframe, stock, context, swingsService, logger);
+        this.requestSize = getMaxBufferCapacity();
+        this.lastContext = context.clone();
+        this.log = logger;
+    }
+
+    public SwingsHandler getHandler() {
+        return handler;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(requestSize);
+    }
+
+    @Override
+    public void onNext(RateEntity rate) {
+        try {
+            handler.addRate(rate).ifPresent(swing -> {
+                swingsService.save(stock, timeframe, swing.getSwingPoint());
+                submit(SwingEvent.builder()
+                        .withType(SwingEvent.Type.SWING)
+                        .withStock(stock)
+                        .withTimeframe(timeframe)
+                        .withTime(rate.getTime())
+                        .withSwingPoint(swing.getSwingPoint())
+                        .withCause(swing.getCause())
+                        .withNewLastWorkingPoint(swing.getNewLastWorkingPoint())
+                        .build());
+            });
+            SwingHandlerContextEntity context = handler.getContext();
+            if (isChanged(lastContext, context)) {
+                lastContext = context.clone();
+                lastContext.setTime(rate.getTime());
+                submit(SwingEvent.builder()
+                        .withType(SwingEvent.Type.CONTEXT)
+                        .withStock(stock)
+                        .withTimeframe(timeframe)
+                        .withTime(rate.getTime())
+                        .withNewLastWorkingPoint(lastContext.getLastWorkingPoint())
+                        .withContext(lastContext.clone())
+                        .build());
+            }
+        } catch (RuntimeException e) {
+            log.error("Swings processing failed: stock={}, timeframe={}, rate={}", stock, timeframe, rate, e);
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            closeExceptionally(e);
+            return;
+        }
+        if (subscription != null && ++consumed >= (requestSize + 1) / 2) {
+            subscription.request(consumed);
+            consumed = 0;
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        closeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        close();
+    }
+
+    private static boolean isChanged(SwingHandlerContextEntity previous,
+                                     SwingHandlerContextEntity current) {
+        return !Objects.equals(previous.getCurrentDirection(), current.getCurrentDirection())
+                || !Objects.equals(previous.getLastWorkingPoint(), current.getLastWorkingPoint())
+                || !Objects.equals(previous.getLastWorkingPrice(), current.getLastWorkingPrice())
+                || !Objects.equals(previous.getLastUpSwing(), current.getLastUpSwing())
+                || !Objects.equals(previous.getLastDownSwing(), current.getLastDownSwing())
+                || !Objects.equals(previous.getWaitingReverseCount(), current.getWaitingReverseCount())
+                || !Objects.equals(previous.getLocalHigh(), current.getLocalHigh())
+                || !Objects.equals(previous.getLocalLow(), current.getLocalLow())
+                || !Objects.equals(previous.getCurrentHigh(), current.getCurrentHigh())
+                || !Objects.equals(previous.getCurrentLow(), current.getCurrentLow())
+                || !Objects.equals(previous.getGlobalHigh(), current.getGlobalHigh())
+                || !Objects.equals(previous.getGlobalLow(), current.getGlobalLow());
+    }
+}
@@ -9,7 +9,6 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -22,14 +21,18 @@ import static java.util.Objects.requireNonNull;
  * @author javonavi
  */
 public class SwingsService {
-    private final Map<String, Map<String, SwingRepository>> swingsRepository;
+    private final StockTimeframeRegistry<SwingRepository> swingsRepository;
 
     public SwingsService() {
-        this.swingsRepository = new HashMap<>();
+        this.swingsRepository = new StockTimeframeRegistry<>();
     }
 
-    public synchronized void init(String stock, Map<String, SwingRepository> swingRepositoryMap) {
-        this.swingsRepository.put(stock, swingRepositoryMap);
+    public void init(String stock, Map<String, SwingRepository> swingRepositoryMap) {
+        this.swingsRepository.putAll(stock, swingRepositoryMap);
+    }
+
+    public void init(String stock, Timeframe timeframe, SwingRepository swingRepository) {
+        this.swingsRepository.put(stock, timeframe, swingRepository);
     }
 
     /**
@@ -45,7 +48,12 @@ public class SwingsService {
 
     private SwingRepository getRepository(String stock,
                                           String timeframe) {
-        return swingsRepository.get(stock).get(timeframe.toLowerCase());
+        return getRepository(stock, Timeframe.of(timeframe));
+    }
+
+    private SwingRepository getRepository(String stock,
+                                          Timeframe timeframe) {
+        return swingsRepository.get(stock, timeframe);
     }
 
     /**
@@ -75,7 +83,11 @@ public class SwingsService {
     }
 
     public void save(String stock, String timeframe, SwingPoint swingPoint) {
-        SwingEntity entity = createClass(stock, timeframe);
+        save(stock, Timeframe.of(timeframe), swingPoint);
+    }
+
+    public void save(String stock, Timeframe timeframe, SwingPoint swingPoint) {
+        SwingEntity entity = createClass(stock, timeframe.getCode());
         entity.setDirection(swingPoint.getDirection().toBoolean());
         entity.setLength(swingPoint.getLength());
         entity.setLengthInBars(swingPoint.getLengthInBars());
@@ -237,7 +249,7 @@ public class SwingsService {
         LocalDateTime fromTime = time.minusMinutes(upperTimeframe.getValue());
         LocalDateTime toTime = time.plusMinutes(upperTimeframe.getValue());
         while (true) {
-            SwingRepository swingRepository = getRepository(stock, currentTimeframe.getCode().toLowerCase());
+            SwingRepository swingRepository = getRepository(stock, currentTimeframe);
             if (swingRepository == null) {
                 break;
             }
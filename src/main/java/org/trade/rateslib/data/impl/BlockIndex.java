@@ -0,0 +1,283 @@
+package org.trade.rateslib.data.impl;
+
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Сохраняемая на диск битовая карта непустых блоков товара и таймфрейма.
+ * Блок задается порядковым номером периода (см. {@link BlockLayout#getOrdinal}), бит номер i соответствует
+ * периоду {@code origin + i}. Позволяет находить соседние блоки с данными без обращения к файловой системе.
+ * Файл перезаписывается атомарно и только при изменении карты, каждая запись увеличивает номер поколения в файле.
+ * После загрузки карта в памяти считается актуальной, чтение блоков к файлу индекса не обращается.
+ * Изменения, сделанные другим экземпляром репозитория, подхватываются в {@link #refresh()} не чаще заданного
+ * интервала и только если он задан; перед изменением карта перечитывается всегда,
+ * а экземпляры в одном процессе изменяют файл по очереди
+ *
+ * @author javonavi
+ */
+class BlockIndex {
+
+    private static final byte VERSION = 2;
+    /**
+     * Блокировки файлов индекса, общие для всех экземпляров в процессе
+     */
+    private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final Duration refreshInterval;
+    private final Logger log;
+    private boolean loaded;
+    private long origin;
+    private BitSet bits = new BitSet();
+    /**
+     * Номер поколения файла на момент последнего чтения или записи
+     */
+    private long generation;
+    private long refreshedAt = System.nanoTime();
+
+    /**
+     * @param path
+     * @param refreshInterval как часто проверять изменения другими экземплярами; null - не проверять
+     * @param log
+     */
+    BlockIndex(Path path,
+               Duration refreshInterval,
+               Logger log) {
+        this.path = path;
+        this.refreshInterval = refreshInterval;
+        this.log = log;
+    }
+
+    /**
+     * Признак того, что карта известна (прочитана из файла или задана через {@link #reset})
+     */
+    synchronized boolean isLoaded() {
+        if (!loaded) {
+            load();
+        }
+        return loaded;
+    }
+
+    /**
+     * Перечитывает карту, если задан интервал проверки, он истек и файл изменен не этим экземпляром
+     */
+    synchronized void refresh() {
+        if (refreshInterval == null || System.nanoTime() - refreshedAt < refreshInterval.toNanos()) {
+            return;
+        }
+        reread();
+    }
+
+    /**
+     * Перечитывает карту, если файл изменен не этим экземпляром. Читает только заголовок файла.
+     * При ошибке чтения остается прежняя карта
+     */
+    private void reread() {
+        refreshedAt = System.nanoTime();
+        if (!loaded) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            if (in.readByte() != VERSION || in.readLong() != generation) {
+                load();
+            }
+        } catch (IOException e) {
+            log.debug("Block index is not refreshed: path={}, error={}", path, e.toString());
+        }
+    }
+
+    synchronized boolean contains(long ordinal) {
+        long i = ordinal - origin;
+        return i >= 0 && i < Integer.MAX_VALUE && bits.get((int) i);
+    }
+
+    /**
+     * @return Номер первого непустого блока
+     */
+    synchronized OptionalLong first() {
+        return bits.isEmpty() ? OptionalLong.empty() : OptionalLong.of(origin + bits.nextSetBit(0));
+    }
+
+    /**
+     * @return Номер последнего непустого блока
+     */
+    synchronized OptionalLong last() {
+        return bits.isEmpty() ? OptionalLong.empty() : OptionalLong.of(origin + bits.length() - 1);
+    }
+
+    /**
+     * @param ordinal
+     * @return Наибольший номер непустого блока строго меньше заданного
+     */
+    synchronized OptionalLong previous(long ordinal) {
+        long i = Math.min(ordinal - origin - 1, bits.length() - 1);
+        if (i < 0) {
+            return OptionalLong.empty();
+        }
+        int found = bits.previousSetBit((int) i);
+        return found < 0 ? OptionalLong.empty() : OptionalLong.of(origin + found);
+    }
+
+    /**
+     * @param ordinal
+     * @return Наименьший номер непустого блока строго больше заданного
+     */
+    synchronized OptionalLong next(long ordinal) {
+        long i = Math.max(ordinal - origin + 1, 0);
+        if (i >= bits.length()) {
+            return OptionalLong.empty();
+        }
+        int found = bits.nextSetBit((int) i);
+        return found < 0 ? OptionalLong.empty() : OptionalLong.of(origin + found);
+    }
+
+    /**
+     * Отмечает блок непустым или пустым
+     *
+     * @param ordinal
+     * @param present
+     */
+    synchronized void set(long ordinal, boolean present) {
+        synchronized (LOCKS.computeIfAbsent(path, p -> new Object())) {
+            reread();
+            if (!isLoaded() || contains(ordinal) == present) {
+                return;
+            }
+            if (present) {
+                if (bits.isEmpty()) {
+                    origin = ordinal;
+                } else if (ordinal < origin) {
+                    rebase(ordinal);
+                }
+                bits.set(toIndex(ordinal));
+            } else {
+                bits.clear((int) (ordinal - origin));
+            }
+            save();
+        }
+    }
+
+    /**
+     * Задает непустые блоки, например после обхода каталогов
+     *
+     * @param ordinals
+     */
+    synchronized void reset(Collection<Long> ordinals) {
+        synchronized (LOCKS.computeIfAbsent(path, p -> new Object())) {
+            generation = readGeneration();
+            origin = ordinals.stream().mapToLong(Long::longValue).min().orElse(0);
+            bits = new BitSet();
+            ordinals.forEach(ordinal -> bits.set(toIndex(ordinal)));
+            loaded = true;
+            save();
+        }
+    }
+
+    private void rebase(long newOrigin) {
+        long shift = origin - newOrigin;
+        if (shift + bits.length() >= Integer.MAX_VALUE) {
+            throw new RuntimeException("Unexpected block ordinal: " + newOrigin + ", origin=" + origin);
+        }
+        BitSet rebased = new BitSet();
+        bits.stream().forEach(i -> rebased.set(i + (int) shift));
+        bits = rebased;
+        origin = newOrigin;
+    }
+
+    private int toIndex(long ordinal) {
+        long i = ordinal - origin;
+        if (i < 0 || i >= Integer.MAX_VALUE) {
+            throw new RuntimeException("Unexpected block ordinal: " + ordinal + ", origin=" + origin);
+        }
+        return (int) i;
+    }
+
+    private void load() {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                log.warn("Unexpected block index version: path={}, version={}", path, version);
+                return;
+            }
+            long fileGeneration = in.readLong();
+            long fileOrigin = in.readLong();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            origin = fileOrigin;
+            bits = BitSet.valueOf(data);
+            generation = fileGeneration;
+            loaded = true;
+        } catch (IOException e) {
+            log.warn("Error on read block index: path={}", path, e);
+        }
+    }
+
+    /**
+     * @return Номер поколения файла; 0, если файла нет или он другой версии
+     */
+    private long readGeneration() {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readByte() == VERSION ? in.readLong() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void save() {
+        byte[] data = bits.toByteArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(21 + data.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(generation + 1);
+            out.writeLong(origin);
+            out.writeInt(data.length);
+            out.write(data);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        Path tmp = null;
+        try {
+            Files.createDirectories(path.getParent());
+            tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            Files.write(tmp, bytes.toByteArray());
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            generation++;
+        } catch (IOException e) {
+            log.warn("Error on write block index: path={}", path, e);
+            deleteQuietly(tmp);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void deleteQuietly(Path tmp) {
+        if (tmp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            log.warn("Error on delete temporary file: path={}", tmp, e);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.trade.rateslib.data.impl;
+
+import org.trade.rateslib.model.Timeframe;
+import org.trade.rateslib.utils.TimeUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Разбиение котировок таймфрейма на файлы блоков.
+ * Блок покрывает один календарный период ({@link Period}): период задает путь к файлу блока
+ * ({@code год/месяц/день}, {@code год/месяц}, {@code год} или {@code начало десятилетия})
+ * и количество слотов в файле - наибольшее число баров таймфрейма в периоде.
+ * Первый слот блока - первое начало бара не раньше начала периода
+ *
+ * @author javonavi
+ */
+public class BlockLayout {
+
+    private final Period period;
+
+    private BlockLayout(Period period) {
+        this.period = Objects.requireNonNull(period, "period is null");
+    }
+
+    public static BlockLayout of(Period period) {
+        return new BlockLayout(period);
+    }
+
+    /**
+     * Возвращает разбиение по умолчанию. Для MN1, W1, D1, H1 и M15 совпадает с исторически сложившимся форматом файлов
+     *
+     * @param timeframe
+     * @return
+     */
+    public static BlockLayout defaultFor(Timeframe timeframe) {
+        switch (timeframe) {
+            case M1:
+            case M5:
+            case M15:
+            case H1:
+                return of(Period.DAY);
+            case H4:
+            case H8:
+            case D1:
+                return of(Period.MONTH);
+            case W1:
+                return of(Period.YEAR);
+            case MN1:
+            case MN3:
+            case Y1:
+                return of(Period.DECADE);
+
+            default:
+                throw new RuntimeException("Unexpected timeframe: " + timeframe);
+        }
+    }
+
+    public Period getPeriod() {
+        return period;
+    }
+
+    /**
+     * Возвращает количество уровней каталогов до файла блока, включая сам файл
+     */
+    public int getDepth() {
+        return period.depth;
+    }
+
+    /**
+     * Возвращает количество слотов в файле блока
+     *
+     * @param timeframe
+     * @return
+     */
+    public int getCapacity(Timeframe timeframe) {
+        Timeframe.TimeframeDuration duration = timeframe.getDuration();
+        int months = duration.getPeriod().getYears() * 12 + duration.getPeriod().getMonths();
+        if (months > 0) {
+            if (period.months == 0 || period.months % months != 0) {
+                throw new RuntimeException("Unexpected timeframe for block period " + period + ": " + timeframe);
+            }
+            return period.months / months;
+        }
+        long stepMinutes = duration.getPeriod().getDays() * 1440L + duration.getDuration().toMinutes();
+        if (stepMinutes > period.maxMinutes) {
+            throw new RuntimeException("Unexpected timeframe for block period " + period + ": " + timeframe);
+        }
+        return (int) ((period.maxMinutes + stepMinutes - 1) / stepMinutes);
+    }
+
+    /**
+     * Возвращает блок, в который попадает время
+     *
+     * @param base      каталог таймфрейма
+     * @param timeframe
+     * @param time
+     * @return
+     */
+    FileStorageRateRepository.StorageBlock getBlock(Path base,
+                                                    Timeframe timeframe,
+                                                    LocalDateTime time) {
+        int year = time.getYear();
+        int month = time.getMonthValue();
+        int day = time.getDayOfMonth();
+        Path path;
+        LocalDateTime periodStart;
+        LocalDateTime nextPeriodStart;
+        switch (period) {
+            case DAY:
+                path = base.resolve(String.format("%d", year)).resolve(String.format("%d", month)).resolve(String.format("%d", day));
+                periodStart = LocalDateTime.of(year, month, day, 0, 0, 0);
+                nextPeriodStart = periodStart.plusDays(1);
+                break;
+            case MONTH:
+                path = base.resolve(String.format("%d", year)).resolve(String.format("%d", month));
+                periodStart = LocalDateTime.of(year, month, 1, 0, 0, 0);
+                nextPeriodStart = periodStart.plusMonths(1);
+                break;
+            case YEAR:
+                path = base.resolve(String.format("%d", year));
+                periodStart = LocalDateTime.of(year, 1, 1, 0, 0, 0);
+                nextPeriodStart = periodStart.plusYears(1);
+                break;
+            case DECADE:
+                int startYear = Math.floorDiv(year, 10) * 10;
+                path = base.resolve(String.format("%d", startYear));
+                periodStart = LocalDateTime.of(startYear, 1, 1, 0, 0, 0);
+                nextPeriodStart = periodStart.plusYears(10);
+                break;
+
+            default:
+                throw new RuntimeException("Unexpected block period: " + period);
+        }
+        return new FileStorageRateRepository.StorageBlock(
+                path,
+                ceilToBar(periodStart, timeframe),
+                TimeUtils.minus(ceilToBar(nextPeriodStart, timeframe), timeframe),
+                getCapacity(timeframe));
+    }
+
+    /**
+     * Возвращает порядковый номер периода, в который попадает время: номер дня, месяца, года или десятилетия
+     * от начала эпохи. У соседних блоков номера отличаются на единицу
+     *
+     * @param time
+     * @return
+     */
+    long getOrdinal(LocalDateTime time) {
+        switch (period) {
+            case DAY:
+                return time.toLocalDate().toEpochDay();
+            case MONTH:
+                return time.getYear() * 12L + time.getMonthValue() - 1;
+            case YEAR:
+                return time.getYear();
+            case DECADE:
+                return Math.floorDiv(time.getYear(), 10);
+
+            default:
+                throw new RuntimeException("Unexpected block period: " + period);
+        }
+    }
+
+    /**
+     * Возвращает блок по порядковому номеру периода (см. {@link #getOrdinal})
+     *
+     * @param base      каталог таймфрейма
+     * @param timeframe
+     * @param ordinal
+     * @return
+     */
+    FileStorageRateRepository.StorageBlock getBlock(Path base,
+                                                    Timeframe timeframe,
+                                                    long ordinal) {
+        LocalDateTime periodStart;
+        switch (period) {
+            case DAY:
+                periodStart = LocalDate.ofEpochDay(ordinal).atStartOfDay();
+                break;
+            case MONTH:
+                periodStart = LocalDateTime.of((int) Math.floorDiv(ordinal, 12), Math.floorMod(ordinal, 12) + 1, 1, 0, 0);
+                break;
+            case YEAR:
+                periodStart = LocalDateTime.of((int) ordinal, 1, 1, 0, 0);
+                break;
+            case DECADE:
+                periodStart = LocalDateTime.of((int) ordinal * 10, 1, 1, 0, 0);
+                break;
+
+            default:
+                throw new RuntimeException("Unexpected block period: " + period);
+        }
+        return getBlock(base, timeframe, periodStart);
+    }
+
+    private static LocalDateTime ceilToBar(LocalDateTime time, Timeframe timeframe) {
+        LocalDateTime barTime = TimeUtils.getLatestFinishedBarTime(time, timeframe);
+        return barTime.isBefore(time) ? TimeUtils.plus(barTime, timeframe) : barTime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return period == ((BlockLayout) o).period;
+    }
+
+    @Override
+    public int hashCode() {
+        return period.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "BlockLayout{" +
+                "period=" + period +
+                '}';
+    }
+
+    /**
+     * Календарный период одного блока
+     */
+    public enum Period {
+        DAY(3, 1440L, 0),
+        MONTH(2, 31 * 1440L, 1),
+        YEAR(1, 366 * 1440L, 12),
+        DECADE(1, 3653 * 1440L, 120);
+
+        private final int depth;
+        private final long maxMinutes;
+        private final int months;
+
+        Period(int depth,
+               long maxMinutes,
+               int months) {
+            this.depth = depth;
+            this.maxMinutes = maxMinutes;
+            this.months = months;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.trade.rateslib.data.impl;
+
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Упреждающее чтение блоков в кеш репозитория.
+ * Блоки загружаются параллельно на отдельном пуле, пока поток сканирования обрабатывает текущий блок.
+ * Кеш вычисляет значение ключа один раз, поэтому обращение к блоку, который еще читается, дожидается
+ * этого чтения, а не читает файл повторно
+ *
+ * @author javonavi
+ */
+class BlockPrefetcher implements Closeable {
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private final LoadingCache<FileStorageRateRepository.StorageBlock, RateBlock> cache;
+    private final Executor executor;
+    /**
+     * Собственный пул, если он не передан в настройках; закрывается в {@link #close()}
+     */
+    private final ExecutorService ownExecutor;
+    private final Logger log;
+    private final Set<FileStorageRateRepository.StorageBlock> inFlight = ConcurrentHashMap.newKeySet();
+
+    BlockPrefetcher(LoadingCache<FileStorageRateRepository.StorageBlock, RateBlock> cache,
+                    int threads,
+                    Executor executor,
+                    Logger log) {
+        this.cache = cache;
+        this.log = log;
+        if (executor != null) {
+            this.executor = executor;
+            this.ownExecutor = null;
+        } else {
+            this.ownExecutor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "rates-prefetch-" + THREAD_NUMBER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor = ownExecutor;
+        }
+    }
+
+    /**
+     * Ставит в очередь чтение блоков, которых нет в кеше. Блоки без файла пропускаются
+     *
+     * @param blocks блоки в порядке ожидаемого обращения
+     */
+    void prefetch(List<FileStorageRateRepository.StorageBlock> blocks) {
+        for (FileStorageRateRepository.StorageBlock block : blocks) {
+            if (cache.getIfPresent(block) != null || !inFlight.add(block)) {
+                continue;
+            }
+            try {
+                executor.execute(() -> load(block));
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(block);
+                log.debug("Prefetch rejected: block={}", block);
+                return;
+            }
+        }
+    }
+
+    private void load(FileStorageRateRepository.StorageBlock block) {
+        try {
+            if (block.getPath().toFile().exists()) {
+                cache.get(block);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Error on prefetch block: block={}", block, e);
+        } finally {
+            inFlight.remove(block);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+}
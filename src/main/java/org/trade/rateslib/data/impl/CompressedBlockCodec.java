@@ -0,0 +1,185 @@
+package org.trade.rateslib.data.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Сжатый формат файла блока.
+ * Файл начинается с байта заголовка с установленным старшим битом (у несжатого блока первый байт -
+ * старший байт неотрицательного double, поэтому старший бит всегда сброшен), затем идут количество слотов,
+ * битовая карта занятых слотов и поток бит со значениями open, high, low, close занятых слотов.
+ * Каждое значение кодируется XOR с тем же полем предыдущего занятого слота по схеме Gorilla:
+ * {@code 0} - значение не изменилось, {@code 10} - значащие биты помещаются в окно предыдущего значения,
+ * {@code 11} - 5 бит ведущих нулей, 6 бит длины и значащие биты
+ *
+ * @author javonavi
+ */
+final class CompressedBlockCodec {
+
+    static final byte HEADER = (byte) 0x81;
+    private static final int FIELDS = 4;
+
+    private CompressedBlockCodec() {
+    }
+
+    /**
+     * Проверяет, записан ли блок в сжатом формате
+     *
+     * @param data содержимое файла блока с позиции 0
+     * @return
+     */
+    static boolean isCompressed(ByteBuffer data) {
+        return data.limit() > 0 && data.get(0) < 0;
+    }
+
+    /**
+     * @param values значения слотов подряд: open, high, low, close. Пустые слоты заполнены нулями
+     * @param slots  количество слотов
+     * @return
+     */
+    static byte[] encode(double[] values, int slots) {
+        int bitmapSize = (slots + 7) >>> 3;
+        BitWriter writer = new BitWriter(5 + bitmapSize + slots * 8);
+        writer.writeBits(HEADER & 0xFF, 8);
+        writer.writeBits(slots, 32);
+        byte[] bitmap = new byte[bitmapSize];
+        for (int slot = 0; slot < slots; slot++) {
+            if (Double.compare(values[slot * FIELDS], 0) > 0) {
+                bitmap[slot >>> 3] |= (byte) (0x80 >>> (slot & 7));
+            }
+        }
+        for (byte b : bitmap) {
+            writer.writeBits(b & 0xFF, 8);
+        }
+        long[] previous = new long[FIELDS];
+        int[] leading = new int[FIELDS];
+        int[] trailing = new int[FIELDS];
+        Arrays.fill(leading, -1);
+        for (int slot = 0; slot < slots; slot++) {
+            if ((bitmap[slot >>> 3] & (0x80 >>> (slot & 7))) == 0) {
+                continue;
+            }
+            for (int field = 0; field < FIELDS; field++) {
+                long bits = Double.doubleToRawLongBits(values[slot * FIELDS + field]);
+                long xor = bits ^ previous[field];
+                previous[field] = bits;
+                if (xor == 0) {
+                    writer.writeBits(0, 1);
+                    continue;
+                }
+                int lz = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int tz = Long.numberOfTrailingZeros(xor);
+                if (leading[field] >= 0 && lz >= leading[field] && tz >= trailing[field]) {
+                    writer.writeBits(0b10, 2);
+                    writer.writeBits(xor >>> trailing[field], 64 - leading[field] - trailing[field]);
+                } else {
+                    int significant = 64 - lz - tz;
+                    writer.writeBits(0b11, 2);
+                    writer.writeBits(lz, 5);
+                    writer.writeBits(significant - 1, 6);
+                    writer.writeBits(xor >>> tz, significant);
+                    leading[field] = lz;
+                    trailing[field] = tz;
+                }
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * @param data содержимое файла блока с позиции 0
+     * @return Значения слотов подряд: open, high, low, close. Пустые слоты заполнены нулями
+     */
+    static double[] decode(ByteBuffer data) {
+        BitReader reader = new BitReader(data);
+        byte header = (byte) reader.readBits(8);
+        if (header != HEADER) {
+            throw new RuntimeException("Unexpected block header: " + Integer.toHexString(header & 0xFF));
+        }
+        int slots = (int) reader.readBits(32);
+        int bitmapSize = (slots + 7) >>> 3;
+        byte[] bitmap = new byte[bitmapSize];
+        for (int i = 0; i < bitmapSize; i++) {
+            bitmap[i] = (byte) reader.readBits(8);
+        }
+        double[] values = new double[slots * FIELDS];
+        long[] previous = new long[FIELDS];
+        int[] leading = new int[FIELDS];
+        int[] trailing = new int[FIELDS];
+        for (int slot = 0; slot < slots; slot++) {
+            if ((bitmap[slot >>> 3] & (0x80 >>> (slot & 7))) == 0) {
+                continue;
+            }
+            for (int field = 0; field < FIELDS; field++) {
+                if (reader.readBits(1) != 0) {
+                    if (reader.readBits(1) != 0) {
+                        leading[field] = (int) reader.readBits(5);
+                        int significant = (int) reader.readBits(6) + 1;
+                        trailing[field] = 64 - leading[field] - significant;
+                    }
+                    int significant = 64 - leading[field] - trailing[field];
+                    previous[field] ^= reader.readBits(significant) << trailing[field];
+                }
+                values[slot * FIELDS + field] = Double.longBitsToDouble(previous[field]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Запись бит от старшего к младшему
+     */
+    private static class BitWriter {
+        private byte[] buffer;
+        private long bitPosition;
+
+        BitWriter(int initialBytes) {
+            this.buffer = new byte[Math.max(initialBytes, 16)];
+        }
+
+        void writeBits(long value, int count) {
+            while (count > 0) {
+                int index = (int) (bitPosition >>> 3);
+                if (index >= buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length << 1);
+                }
+                int free = 8 - (int) (bitPosition & 7);
+                int take = Math.min(free, count);
+                int bits = (int) ((value >>> (count - take)) & ((1 << take) - 1));
+                buffer[index] |= (byte) (bits << (free - take));
+                bitPosition += take;
+                count -= take;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, (int) ((bitPosition + 7) >>> 3));
+        }
+    }
+
+    /**
+     * Чтение бит от старшего к младшему
+     */
+    private static class BitReader {
+        private final ByteBuffer buffer;
+        private long bitPosition;
+
+        BitReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        long readBits(int count) {
+            long result = 0;
+            while (count > 0) {
+                int current = buffer.get((int) (bitPosition >>> 3)) & 0xFF;
+                int available = 8 - (int) (bitPosition & 7);
+                int take = Math.min(available, count);
+                int bits = (current >>> (available - take)) & ((1 << take) - 1);
+                result = (result << take) | bits;
+                bitPosition += take;
+                count -= take;
+            }
+            return result;
+        }
+    }
+}
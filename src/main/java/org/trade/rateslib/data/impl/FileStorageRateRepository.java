@@ -2,59 +2,390 @@ package org.trade.rateslib.data.impl;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.slf4j.Logger;
+import org.trade.rateslib.data.RateConsumer;
 import org.trade.rateslib.data.RateEntity;
 import org.trade.rateslib.data.RateRepository;
+import org.trade.rateslib.model.RateSeries;
 import org.trade.rateslib.model.Timeframe;
 import org.trade.rateslib.utils.TimeUtils;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * Репозиторий котировок, хранящийся в файлах
+ * Репозиторий котировок, хранящийся в файлах.
+ * Если включен журнал упреждающей записи ({@link FileStorageSettings#isWalEnabled()}), изменения дописываются
+ * в файл {@code directory/stock/TF.wal} и видны при чтении поверх блоков, а в блоки переносятся пачкой
+ * при накоплении {@link FileStorageSettings#getWalCompactionRecords()} записей, при {@link #compact()} и {@link #close()}.
+ * Незавершенные записи журнала переносятся в блоки при следующем открытии репозитория
  *
  * @author Ivanov Andrey
  * @since 23.02.2024
  */
-public class FileStorageRateRepository implements RateRepository {
+public class FileStorageRateRepository implements RateRepository, Closeable {
+
+    /**
+     * Размер слота бара в файле блока: open, high, low, close
+     */
+    private static final int SLOT_BYTES = 4 * 8;
 
     private final Path directory;
     private final String stock;
     private final Timeframe timeframe;
     private final Logger log;
-    private final LoadingCache<StorageBlock, List<RateEntity>> cache;
+    private final FileStorageSettings settings;
+    /**
+     * Кеш прочитанных блоков. Хранит представления файлов ({@link RateBlock}), а не объекты баров:
+     * объекты создаются только для баров, которые возвращаются через методы со списками {@link RateEntity}
+     */
+    private final LoadingCache<StorageBlock, RateBlock> cache;
+    /**
+     * Бары из журнала, еще не перенесенные в блоки
+     */
+    private final NavigableMap<LocalDateTime, RateEntity> pending = new ConcurrentSkipListMap<>();
+    private final RateWriteAheadLog wal;
+    private final BlockIndex index;
+    private final BlockLayout layout;
+    private final BlockPrefetcher prefetcher;
+
+    public FileStorageRateRepository(Path directory,
+                                     String stock,
+                                     Timeframe timeframe,
+                                     Logger log) {
+        this(directory, stock, timeframe, FileStorageSettings.defaults(), log);
+    }
 
     public FileStorageRateRepository(Path directory,
                                      String stock,
                                      Timeframe timeframe,
+                                     FileStorageSettings settings,
                                      Logger log) {
         this.directory = directory;
         this.stock = stock;
         this.timeframe = timeframe;
+        this.settings = Objects.requireNonNull(settings, "settings is null");
         this.log = log;
-        this.cache = Caffeine.newBuilder()
-                .maximumSize(100)
-                .expireAfterWrite(1, TimeUnit.MINUTES)
-                .build(this::loadFile);
+        this.cache = buildCache(settings);
+        this.layout = settings.getBlockLayout(timeframe);
+        this.index = new BlockIndex(directory.resolve(stock).resolve(timeframe.getCode() + ".blocks"),
+                settings.getBlockIndexRefreshInterval(), log);
+        this.wal = settings.isWalEnabled() ? openWal() : null;
+        this.prefetcher = settings.getPrefetchBlocks() > 0
+                ? new BlockPrefetcher(cache, settings.getPrefetchThreads(), settings.getPrefetchExecutor(), log)
+                : null;
+    }
+
+    private RateWriteAheadLog openWal() {
+        RateWriteAheadLog result = new RateWriteAheadLog(
+                directory.resolve(stock).resolve(timeframe.getCode() + ".wal"),
+                settings.getWalSyncEveryRecords(),
+                log);
+        List<RateEntity> recovered = result.recover();
+        if (!recovered.isEmpty()) {
+            log.info("Recover write-ahead log: stock={}, timeframe={}, records={}", stock, timeframe, recovered.size());
+            recovered.forEach(rate -> pending.put(rate.getTime(), rate));
+            compact(result);
+        }
+        return result;
+    }
+
+    private LoadingCache<StorageBlock, RateBlock> buildCache(FileStorageSettings settings) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        if (settings.getCacheMaximumBars() != null) {
+            builder.maximumWeight(settings.getCacheMaximumBars())
+                    .weigher((StorageBlock block, RateBlock rateBlock) -> rateBlock.count() + 1);
+        } else {
+            builder.maximumSize(settings.getCacheMaximumBlocks());
+        }
+        if (settings.getCacheExpireAfterWrite() != null) {
+            builder.expireAfterWrite(settings.getCacheExpireAfterWrite().toNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (settings.getCacheExpireAfterAccess() != null) {
+            builder.expireAfterAccess(settings.getCacheExpireAfterAccess().toNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (settings.isCacheRecordStats()) {
+            builder.recordStats();
+        }
+        return builder.build(block -> readBlock(block)
+                .orElseGet(() -> new RateBlock(block.getStart(), timeframe, getSlots(block), DoubleBuffer.allocate(0))));
+    }
+
+    /**
+     * Возвращает статистику попаданий в кеш блоков
+     *
+     * @return
+     */
+    public CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Возвращает бары блока через кеш с учетом еще не перенесенных записей журнала. Результат нельзя изменять
+     *
+     * @param block
+     * @return
+     */
+    List<RateEntity> getRates(StorageBlock block) {
+        return getRates(block, block.getStart(), block.getEnd());
+    }
+
+    /**
+     * Возвращает бары блока в интервале [timeStart, timeEnd] в порядке возрастания времени.
+     * Объекты создаются только для баров из интервала
+     *
+     * @param block
+     * @param timeStart
+     * @param timeEnd
+     * @return
+     */
+    private List<RateEntity> getRates(StorageBlock block, LocalDateTime timeStart, LocalDateTime timeEnd) {
+        // Журнал копируется до чтения блока: compact сначала сохраняет блок и только потом очищает журнал,
+        // поэтому запись, пропавшая из журнала после копирования, уже есть в прочитанном блоке
+        NavigableMap<LocalDateTime, RateEntity> blockPending = pending.isEmpty()
+                ? Collections.emptyNavigableMap()
+                : new TreeMap<>(pending.subMap(
+                        timeStart.isAfter(block.getStart()) ? timeStart : block.getStart(), true,
+                        timeEnd.isBefore(block.getEnd()) ? timeEnd : block.getEnd(), true));
+        List<RateEntity> rates = toEntities(cache.get(block), timeStart, timeEnd);
+        if (blockPending.isEmpty()) {
+            return Collections.unmodifiableList(rates);
+        }
+        rates.forEach(r -> blockPending.putIfAbsent(r.getTime(), r));
+        return Collections.unmodifiableList(new ArrayList<>(blockPending.values()));
+    }
+
+    private static List<RateEntity> toEntities(RateBlock b, LocalDateTime timeStart, LocalDateTime timeEnd) {
+        long from = TimeUtils.toEpochMinutes(timeStart);
+        long to = TimeUtils.toEpochMinutes(timeEnd);
+        List<RateEntity> rates = new ArrayList<>();
+        for (int i = 0; i < b.size(); i++) {
+            long time = b.getEpochMinutes(i);
+            if (time < from || time > to || !b.isPresent(i)) {
+                continue;
+            }
+            rates.add(toEntity(b, i));
+        }
+        return rates;
+    }
+
+    private static RateEntity toEntity(RateBlock b, int slot) {
+        RateEntity rate = new RateEntity();
+        rate.setTime(b.getTime(slot));
+        rate.setOpen(b.getOpen(slot));
+        rate.setHigh(b.getHigh(slot));
+        rate.setLow(b.getLow(slot));
+        rate.setClose(b.getClose(slot));
+        return rate;
+    }
+
+    private NavigableMap<LocalDateTime, RateEntity> getPending(StorageBlock block) {
+        if (pending.isEmpty()) {
+            return Collections.emptyNavigableMap();
+        }
+        return pending.subMap(block.getStart(), true, block.getEnd(), true);
+    }
+
+    /**
+     * Проверяет, есть ли у блока данные в файле (по индексу блоков) или записи в журнале
+     */
+    private boolean exists(StorageBlock block) {
+        return getIndex().contains(getOrdinal(block)) || !getPending(block).isEmpty();
+    }
+
+    /**
+     * Возвращает индекс непустых блоков; если его файла нет, строит индекс обходом каталогов
+     */
+    private BlockIndex getIndex() {
+        if (!index.isLoaded()) {
+            rebuildIndex();
+        }
+        return index;
+    }
+
+    private void rebuildIndex() {
+        Path base = directory.resolve(stock).resolve(timeframe.getCode());
+        List<Long> ordinals = new ArrayList<>();
+        if (Files.isDirectory(base)) {
+            try (Stream<Path> files = Files.walk(base, layout.getDepth())) {
+                files.filter(f -> base.relativize(f).getNameCount() == layout.getDepth())
+                        .filter(f -> isBlockName(f.getFileName().toString()))
+                        .filter(f -> f.toFile().isFile() && f.toFile().length() > 0)
+                        .map(f -> StreamSupport.stream(base.relativize(f).spliterator(), false)
+                                .map(Path::toString)
+                                .collect(Collectors.toList()))
+                        .map(this::toBlock)
+                        .flatMap(Optional::stream)
+                        .forEach(block -> ordinals.add(getOrdinal(block)));
+            } catch (IOException e) {
+                log.warn("Error on walk blocks: base={}", base, e);
+                throw new RuntimeException(e);
+            }
+        }
+        log.debug("rebuildIndex(): stock={}, timeframe={}, blocks={}", stock, timeframe, ordinals.size());
+        index.reset(ordinals);
+    }
+
+    /**
+     * Проверяет, что имя файла - номер периода блока, а не временный файл записи
+     */
+    private static boolean isBlockName(String name) {
+        return !name.isEmpty() && name.chars().allMatch(Character::isDigit);
+    }
+
+    private long getOrdinal(StorageBlock block) {
+        return layout.getOrdinal(block.getStart());
+    }
+
+    /**
+     * Возвращает ближайший блок с данными (в файле или в журнале), начинающийся раньше заданного
+     *
+     * @param block
+     * @return
+     */
+    private Optional<StorageBlock> findBlockBefore(StorageBlock block) {
+        Optional<StorageBlock> result = Optional.empty();
+        OptionalLong ordinal = getIndex().previous(getOrdinal(block));
+        if (ordinal.isPresent()) {
+            result = Optional.of(layout.getBlock(getBase(), timeframe, ordinal.getAsLong()));
+        }
+        LocalDateTime pendingTime = pending.isEmpty() ? null : pending.lowerKey(block.getStart());
+        if (pendingTime != null) {
+            StorageBlock pendingBlock = getBlockByTime(pendingTime);
+            if (result.isEmpty() || pendingBlock.getStart().isAfter(result.get().getStart())) {
+                result = Optional.of(pendingBlock);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает ближайший блок с данными (в файле или в журнале), начинающийся позже заданного
+     *
+     * @param block
+     * @return
+     */
+    private Optional<StorageBlock> findBlockAfter(StorageBlock block) {
+        Optional<StorageBlock> result = Optional.empty();
+        OptionalLong ordinal = getIndex().next(getOrdinal(block));
+        if (ordinal.isPresent()) {
+            result = Optional.of(layout.getBlock(getBase(), timeframe, ordinal.getAsLong()));
+        }
+        LocalDateTime pendingTime = pending.isEmpty() ? null : pending.higherKey(block.getEnd());
+        if (pendingTime != null) {
+            StorageBlock pendingBlock = getBlockByTime(pendingTime);
+            if (result.isEmpty() || pendingBlock.getStart().isBefore(result.get().getStart())) {
+                result = Optional.of(pendingBlock);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Сбрасывает журнал на диск, не дожидаясь накопления пачки записей
+     */
+    public synchronized void flush() {
+        if (wal != null) {
+            wal.sync();
+        }
+    }
+
+    /**
+     * Переносит записи журнала в блоки и очищает журнал
+     */
+    public synchronized void compact() {
+        if (wal != null) {
+            compact(wal);
+        }
+    }
+
+    private void compact(RateWriteAheadLog wal) {
+        if (pending.isEmpty()) {
+            wal.reset();
+            return;
+        }
+        log.debug("compact(): stock={}, timeframe={}, records={}", stock, timeframe, pending.size());
+        Map<StorageBlock, List<RateEntity>> ratesByBlock = pending.values().stream().collect(Collectors.groupingBy(
+                r -> getBlockByTime(r.getTime()),
+                LinkedHashMap::new,
+                Collectors.toList()));
+        ratesByBlock.forEach((block, blockRates) -> saveFile(block, getRates(block)));
+        wal.reset();
+        pending.clear();
+    }
+
+    private void appendToWal(List<RateEntity> rates) {
+        wal.append(rates);
+        rates.forEach(rate -> pending.put(rate.getTime(), rate));
+        if (wal.size() >= settings.getWalCompactionRecords()) {
+            compact(wal);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
+        if (wal != null) {
+            compact(wal);
+            wal.close();
+        }
+    }
+
+    /**
+     * Ставит в очередь упреждающего чтения блоки перед заданным, которые понадобятся для оставшихся баров
+     *
+     * @param block         текущий блок сканирования
+     * @param remainingBars сколько баров еще нужно набрать
+     * @param maxGap        сколько пустых блоков подряд может пропустить сканирование; дальше пропуска
+     *                      блоки не читаются, так как сканирование до них не дойдет
+     */
+    private void prefetchBefore(StorageBlock block, int remainingBars, int maxGap) {
+        if (prefetcher == null || remainingBars <= 0) {
+            return;
+        }
+        int count = Math.min(settings.getPrefetchBlocks(), remainingBars / block.getSize() + 1);
+        List<StorageBlock> blocks = new ArrayList<>(count);
+        long ordinal = getOrdinal(block);
+        while (blocks.size() < count) {
+            OptionalLong previous = getIndex().previous(ordinal);
+            if (previous.isEmpty() || ordinal - previous.getAsLong() - 1 > maxGap) {
+                break;
+            }
+            ordinal = previous.getAsLong();
+            blocks.add(layout.getBlock(getBase(), timeframe, ordinal));
+        }
+        prefetcher.prefetch(blocks);
     }
 
     @Override
@@ -75,21 +406,23 @@ public class FileStorageRateRepository implements RateRepository {
 
     @Override
     public List<RateEntity> findAllByTimeBetween(LocalDateTime timeStart, LocalDateTime timeEnd) {
-        StorageBlock block = getBlockByTime(timeStart);
-        Set<RateEntity> result = loadFile(block).stream()
-                .filter(r -> !r.getTime().isBefore(timeStart))
-                .filter(r -> !r.getTime().isAfter(timeEnd))
-                .collect(Collectors.toSet());
-        LocalDateTime start = TimeUtils.plus(block.getEnd(), timeframe);
-        while (!start.isAfter(timeEnd)) {
-            block = getBlockByTime(start);
-            result.addAll(loadFile(block).stream()
-                    .filter(r -> !r.getTime().isAfter(timeEnd))
-                    .filter(r -> !r.getTime().isBefore(timeStart))
-                    .collect(Collectors.toSet()));
-            start = TimeUtils.plus(block.getEnd(), timeframe);
-        }
-        return result.stream().sorted(Comparator.comparing(RateEntity::getTime)).collect(Collectors.toList());
+        index.refresh();
+        StorageBlock first = getBlockByTime(timeStart);
+        List<RateEntity> result = new ArrayList<>();
+        Optional<StorageBlock> block = exists(first) ? Optional.of(first) : findBlockAfter(first);
+        while (block.isPresent() && !block.get().getStart().isAfter(timeEnd)) {
+            // Блоки не пересекаются и перебираются по возрастанию, поэтому результат уже упорядочен
+            result.addAll(getRates(block.get(), timeStart, timeEnd));
+            block = findBlockAfter(block.get());
+        }
+        return result;
+    }
+
+    @Override
+    public RateSeries getSeriesBetween(LocalDateTime timeStart, LocalDateTime timeEnd) {
+        RateSeries.Builder builder = RateSeries.builder();
+        scan(timeStart, timeEnd, builder);
+        return builder.build();
     }
 
     @Override
@@ -108,21 +441,35 @@ public class FileStorageRateRepository implements RateRepository {
     }
 
     @Override
-    public void insert(RateEntity rateEntity) {
+    public synchronized void insert(RateEntity rateEntity) {
         StorageBlock block = getBlockByTime(rateEntity.getTime());
-        List<RateEntity> rates = loadFile(block);
+        if (wal == null && writeSlot(block, rateEntity, true)) {
+            return;
+        }
+        List<RateEntity> rates = getRates(block);
         if (rates.stream().anyMatch(r -> r.getTime().equals(rateEntity.getTime()))) {
             throw new RuntimeException("Rate already exists: rate=" + rateEntity);
         }
+        if (wal != null) {
+            appendToWal(List.of(rateEntity));
+            return;
+        }
         List<RateEntity> result = new ArrayList<>(rates);
         result.add(rateEntity);
         saveFile(block, result);
     }
 
     @Override
-    public void update(RateEntity rateEntity) {
+    public synchronized void update(RateEntity rateEntity) {
+        if (wal != null) {
+            appendToWal(List.of(rateEntity));
+            return;
+        }
         StorageBlock block = getBlockByTime(rateEntity.getTime());
-        Map<LocalDateTime, RateEntity> rates = loadFile(block).stream().collect(Collectors.toMap(
+        if (writeSlot(block, rateEntity, false)) {
+            return;
+        }
+        Map<LocalDateTime, RateEntity> rates = getRates(block).stream().collect(Collectors.toMap(
              RateEntity::getTime,
              Function.identity()
         ));
@@ -132,13 +479,68 @@ public class FileStorageRateRepository implements RateRepository {
         saveFile(block, result);
     }
 
+    @Override
+    public synchronized void insertAll(Collection<RateEntity> rates) {
+        saveAll(rates, false);
+    }
+
+    @Override
+    public synchronized void upsertAll(Collection<RateEntity> rates) {
+        saveAll(rates, true);
+    }
+
+    /**
+     * Группирует бары по блокам и записывает каждый измененный блок один раз
+     *
+     * @param rates
+     * @param replace заменять ли существующие бары
+     */
+    private void saveAll(Collection<RateEntity> rates, boolean replace) {
+        Map<StorageBlock, List<RateEntity>> ratesByBlock = rates.stream().collect(Collectors.groupingBy(
+                r -> getBlockByTime(r.getTime()),
+                LinkedHashMap::new,
+                Collectors.toList()));
+        List<RateEntity> changedRates = new ArrayList<>();
+        ratesByBlock.forEach((block, blockRates) -> {
+            Map<LocalDateTime, RateEntity> merged = new HashMap<>();
+            getRates(block).forEach(r -> merged.put(r.getTime(), r));
+            List<RateEntity> blockChanged = new ArrayList<>();
+            for (RateEntity rate : blockRates) {
+                RateEntity existing = merged.get(rate.getTime());
+                if (existing == null || (replace && !existing.equals(rate))) {
+                    merged.put(rate.getTime(), rate);
+                    blockChanged.add(rate);
+                }
+            }
+            changedRates.addAll(blockChanged);
+            if (blockChanged.isEmpty() || wal != null) {
+                return;
+            }
+            if (blockChanged.size() > 1 || !writeSlot(block, blockChanged.get(0), false)) {
+                saveFile(block, new ArrayList<>(merged.values()));
+            }
+        });
+        if (wal != null && !changedRates.isEmpty()) {
+            appendToWal(changedRates);
+        }
+    }
+
     @Override
     public Optional<RateEntity> findById(LocalDateTime time) {
         StorageBlock block = getBlockByTime(time);
-        if (!block.getPath().toFile().exists()) {
+        if (!exists(block)) {
             return Optional.empty();
         }
-        return loadFile(block).stream().filter(r -> r.getTime().equals(time)).findFirst();
+        // Журнал читается до блока, см. getRates
+        RateEntity pendingRate = pending.isEmpty() ? null : pending.get(time);
+        if (pendingRate != null) {
+            return Optional.of(pendingRate);
+        }
+        RateBlock rateBlock = cache.get(block);
+        int slot = getSlot(block, time);
+        return slot < 0 || slot >= rateBlock.size() || !rateBlock.isPresent(slot)
+                ? Optional.empty()
+                : Optional.of(toEntity(rateBlock, slot));
     }
 
     @Override
@@ -153,18 +555,21 @@ public class FileStorageRateRepository implements RateRepository {
 
     @Override
     public List<RateEntity> getLatest(int count) {
+        index.refresh();
         Optional<StorageBlock> latestBlock = getLatestBlock();
         if (latestBlock.isEmpty()) {
             return Collections.emptyList();
         }
-        List<RateEntity> result = new ArrayList<>(loadFile(latestBlock.get()));
+        prefetchBefore(latestBlock.get(), count, 0);
+        List<RateEntity> result = new ArrayList<>(getRates(latestBlock.get()));
         LocalDateTime end = TimeUtils.minus(latestBlock.get().getStart(), timeframe);
         while (result.size() < count) {
             StorageBlock block = getBlockByTime(end);
-            if (!block.getPath().toFile().exists()) {
+            prefetchBefore(block, count - result.size(), 0);
+            if (!exists(block)) {
                 break;
             }
-            result.addAll(loadFile(block));
+            result.addAll(getRates(block));
             end = TimeUtils.minus(block.getStart(), timeframe);
         }
         return result.stream()
@@ -175,141 +580,82 @@ public class FileStorageRateRepository implements RateRepository {
     }
 
     StorageBlock getBlockByTime(LocalDateTime time) {
-        Path base = directory.resolve(stock).resolve(timeframe.getCode());
-        int year = time.getYear();
-        int month = time.getMonthValue();
-        int day = time.getDayOfMonth();
-        switch (timeframe) {
-            case MN1:
-                int startYear = (int) (time.getYear() / 10.) * 10;
-                int endYear = startYear + 9;
-                return new StorageBlock(
-                        base.resolve(String.format("%d", startYear)),
-                        LocalDateTime.of(startYear, 1, 1, 0, 0, 0),
-                        LocalDateTime.of(endYear, 12, 1, 0, 0, 0),
-                        120);
-            case W1:
-                return new StorageBlock(
-                        base.resolve(String.format("%d", year)),
-                        getFirstWeekDayOfYear(year),
-                        getFirstWeekDayOfYear(year + 1).minusWeeks(1),
-                        53);
-            case D1:
-                return new StorageBlock(
-                        base.resolve(String.format("%d", year)).resolve(String.format("%d", month)),
-                        LocalDateTime.of(year, month, 1, 0, 0, 0),
-                        LocalDateTime.of(year, month, 1, 0, 0, 0).plusMonths(1).minusDays(1),
-                        31);
-            case H1:
-                return new StorageBlock(
-                        base.resolve(String.format("%d", year)).resolve(String.format("%d", month)).resolve(String.format("%d", day)),
-                        LocalDateTime.of(year, month, day, 0, 0, 0),
-                        LocalDateTime.of(year, month, day, 0, 0, 0).plusDays(1).minusHours(1),
-                        24);
-            case M15:
-                return new StorageBlock(
-                        base.resolve(String.format("%d", year)).resolve(String.format("%d", month)).resolve(String.format("%d", day)),
-                        LocalDateTime.of(year, month, day, 0, 0, 0),
-                        LocalDateTime.of(year, month, day, 0, 0, 0).plusDays(1).minusMinutes(15),
-                        96);
-
-            default:
-                throw new RuntimeException("Unexpected timeframe: " + timeframe);
-        }
-    }
-
-    private LocalDateTime getFirstWeekDayOfYear(int year) {
-        LocalDateTime firstDayOfYear = LocalDateTime.of(year, 1, 1, 0, 0, 0);
-        if (firstDayOfYear.getDayOfWeek().getValue() == 1) {
-            return firstDayOfYear;
-        }
-        int weekDiff = 8 - firstDayOfYear.getDayOfWeek().getValue();
-        return firstDayOfYear.plusDays(weekDiff);
+        return layout.getBlock(getBase(), timeframe, time);
+    }
+
+    /**
+     * Возвращает каталог блоков таймфрейма
+     */
+    private Path getBase() {
+        return directory.resolve(stock).resolve(timeframe.getCode());
     }
 
     private Optional<StorageBlock> getLatestBlock() {
-        Path base = directory.resolve(stock).resolve(timeframe.getCode());
-        List<String> l = getLatestFileRecursive(base);
-        if (l.isEmpty()) {
-            return Optional.empty();
+        Optional<StorageBlock> fileBlock = getLatestFileBlock();
+        if (pending.isEmpty()) {
+            return fileBlock;
         }
-        if (l.size() == 1) {
-            StorageBlock block1 = getBlockByTime(LocalDateTime.of(Integer.parseInt(l.get(0)), 1, 1, 0, 0));
-            return Optional.of(block1.getPath().toFile().length() == 0
-                    ? getBlockBefore(block1)
-                    : block1);
-        } else if (l.size() == 2) {
-            StorageBlock block2 = getBlockByTime(LocalDateTime.of(Integer.parseInt(l.get(0)), Integer.parseInt(l.get(1)), 1, 0, 0));
-            return Optional.of(block2.getPath().toFile().length() == 0
-                    ? getBlockBefore(block2)
-                    : block2);
-        } else if (l.size() == 3) {
-            StorageBlock block3 = getBlockByTime(LocalDateTime.of(Integer.parseInt(l.get(0)), Integer.parseInt(l.get(1)), Integer.parseInt(l.get(2)), 0, 0));
-            return Optional.of(block3.getPath().toFile().length() == 0
-                    ? getBlockBefore(block3)
-                    : block3);
+        StorageBlock pendingBlock = getBlockByTime(pending.lastKey());
+        if (fileBlock.isEmpty() || pendingBlock.getStart().isAfter(fileBlock.get().getStart())) {
+            return Optional.of(pendingBlock);
         }
-        return Optional.empty();
+        return fileBlock;
     }
 
-    private StorageBlock getBlockBefore(StorageBlock block) {
-        return getBlockByTime(TimeUtils.minus(block.getStart(), timeframe));
+    private Optional<StorageBlock> getLatestFileBlock() {
+        return getEdgeFileBlock(true);
     }
 
-    private List<String> getLatestFileRecursive(Path base) {
-        List<String> result = new ArrayList<>();
-        Path dir = base;
-        for (int i = 0; i < 10; i++) {
-            Optional<File> f = getLatestFile(dir);
-            if (f.isEmpty()) {
-                break;
-            }
-            result.add(f.get().getName());
-            if (f.get().isFile()) {
-                break;
-            }
-            dir = dir.resolve(f.get().getName());
-        }
-        return result;
+    private Optional<StorageBlock> getFirstFileBlock() {
+        return getEdgeFileBlock(false);
     }
 
-    private Optional<File> getLatestFile(Path base) {
-        File[] files = base.toFile().listFiles();
-        if (files == null) {
+    /**
+     * Возвращает крайний непустой блок по индексу блоков без обращения к файловой системе
+     *
+     * @param latest
+     * @return
+     */
+    private Optional<StorageBlock> getEdgeFileBlock(boolean latest) {
+        OptionalLong ordinal = latest ? getIndex().last() : getIndex().first();
+        if (ordinal.isEmpty()) {
             return Optional.empty();
         }
-        return Stream.of(files)
-                .map(File::getName)
-                .map(Integer::parseInt)
-                .max(Integer::compare)
-                .map(i -> base.resolve(i.toString()))
-                .map(Path::toFile);
+        return Optional.of(layout.getBlock(getBase(), timeframe, ordinal.getAsLong()));
     }
 
+    private Optional<StorageBlock> toBlock(List<String> l) {
+        if (l.size() == 1) {
+            return Optional.of(getBlockByTime(LocalDateTime.of(Integer.parseInt(l.get(0)), 1, 1, 0, 0)));
+        } else if (l.size() == 2) {
+            return Optional.of(getBlockByTime(LocalDateTime.of(Integer.parseInt(l.get(0)), Integer.parseInt(l.get(1)), 1, 0, 0)));
+        } else if (l.size() == 3) {
+            return Optional.of(getBlockByTime(LocalDateTime.of(Integer.parseInt(l.get(0)), Integer.parseInt(l.get(1)), Integer.parseInt(l.get(2)), 0, 0)));
+        }
+        return Optional.empty();
+    }
 
     @Override
     public List<RateEntity> getLatest(LocalDateTime beforeTime, int limit) {
+        index.refresh();
         StorageBlock block = getBlockByTime(beforeTime);
-        List<RateEntity> result = loadFile(block).stream().filter(r -> r.getTime().isBefore(beforeTime))
-                .collect(Collectors.toList());
-        int emptyBlocksCount = 0;
+        prefetchBefore(block, limit, 100);
+        List<RateEntity> result = exists(block)
+                ? getRates(block).stream().filter(r -> r.getTime().isBefore(beforeTime)).collect(Collectors.toList())
+                : new ArrayList<>();
         while (result.size() < limit) {
-            block = getBlockBefore(block);
-            if (!block.getPath().toFile().exists()) {
-                emptyBlocksCount++;
-                if (result.isEmpty() && emptyBlocksCount <= 100) {
-                    continue;
-                } else if (emptyBlocksCount <= 7) {
-                    continue;
-                } else {
-                    break;
-                }
+            // Пропуск пустых блоков ограничен: до 100 подряд, пока ничего не найдено, и до 7 после
+            Optional<StorageBlock> previous = findBlockBefore(block);
+            if (previous.isEmpty()
+                    || getOrdinal(block) - getOrdinal(previous.get()) - 1 > (result.isEmpty() ? 100 : 7)) {
+                break;
             }
-            List<RateEntity> loadedRates = loadFile(block);
+            block = previous.get();
+            prefetchBefore(block, limit - result.size(), result.isEmpty() ? 100 : 7);
+            List<RateEntity> loadedRates = getRates(block);
             if (loadedRates.isEmpty()) {
                 break;
             }
-            emptyBlocksCount = 0;
             result.addAll(loadedRates.stream().filter(r -> r.getTime().isBefore(beforeTime)).toList());
         }
         return result.stream()
@@ -321,54 +667,32 @@ public class FileStorageRateRepository implements RateRepository {
 
     @Override
     public Optional<RateEntity> getFirstRate() {
-        Path base = directory.resolve(stock).resolve(timeframe.getCode());
-        switch (timeframe) {
-            case MN1:
-                var path0 = findFirstFile(base);
-                if (path0.isEmpty()) return Optional.empty();
-                LocalDateTime time0 = getFirstWeekDayOfYear(Integer.parseInt(path0.get().getFileName().toString()));
-                return loadFile(getBlockByTime(time0)).stream().min(Comparator.comparing(RateEntity::getTime)).stream().findFirst();
-            case W1:
-                var path1 = findFirstFile(base);
-                if (path1.isEmpty()) return Optional.empty();
-                LocalDateTime time1 = LocalDateTime.of(Integer.parseInt(path1.get().getFileName().toString()), 1, 1, 0, 0);
-                return loadFile(getBlockByTime(time1)).stream().min(Comparator.comparing(RateEntity::getTime)).stream().findFirst();
-            case D1:
-                var path2 = findFirstFile(base);
-                if (path2.isEmpty()) return Optional.empty();
-                var path3 = findFirstFile(path2.get());
-                if (path3.isEmpty()) return Optional.empty();
-                LocalDateTime time2 = LocalDateTime.of(
-                        Integer.parseInt(path2.get().getFileName().toString()),
-                        Integer.parseInt(path3.get().getFileName().toString()), 1, 0, 0);
-                return loadFile(getBlockByTime(time2)).stream().min(Comparator.comparing(RateEntity::getTime)).stream().findFirst();
-            case H1:
-            case M15:
-                var path4 = findFirstFile(base);
-                if (path4.isEmpty()) return Optional.empty();
-                var path5 = findFirstFile(path4.get());
-                if (path5.isEmpty()) return Optional.empty();
-                var path6 = findFirstFile(path5.get());
-                if (path6.isEmpty()) return Optional.empty();
-                LocalDateTime time3 = LocalDateTime.of(
-                        Integer.parseInt(path4.get().getFileName().toString()),
-                        Integer.parseInt(path5.get().getFileName().toString()),
-                        Integer.parseInt(path6.get().getFileName().toString()), 0, 0);
-                return loadFile(getBlockByTime(time3)).stream().min(Comparator.comparing(RateEntity::getTime)).stream().findFirst();
-
-            default:
-                throw new RuntimeException("Unexpected timeframe: " + timeframe);
-
-        }
-    }
-
-    private Optional<Path> findFirstFile(Path path) {
-        try (var stream = Files.list(path)) {
-            return stream.sorted().findFirst();
-        } catch (IOException e) {
-            log.warn("Error on list directory: path={}", path);
-            return Optional.empty();
+        index.refresh();
+        Optional<RateEntity> fileRate = getFirstFileRate();
+        if (pending.isEmpty()) {
+            return fileRate;
+        }
+        RateEntity pendingRate = pending.firstEntry().getValue();
+        if (fileRate.isEmpty() || pendingRate.getTime().isBefore(fileRate.get().getTime())) {
+            return Optional.of(pendingRate);
+        }
+        return fileRate;
+    }
+
+    private Optional<RateEntity> getFirstFileRate() {
+        Optional<StorageBlock> block = getFirstFileBlock();
+        while (block.isPresent()) {
+            Optional<RateEntity> rate = getRates(block.get()).stream().min(Comparator.comparing(RateEntity::getTime));
+            if (rate.isPresent()) {
+                return rate;
+            }
+            // Файла блока не оказалось - берется следующий по индексу
+            OptionalLong next = getIndex().next(getOrdinal(block.get()));
+            block = next.isPresent()
+                    ? Optional.of(layout.getBlock(getBase(), timeframe, next.getAsLong()))
+                    : Optional.empty();
         }
+        return Optional.empty();
     }
 
     static class StorageBlock {
@@ -429,67 +753,229 @@ public class FileStorageRateRepository implements RateRepository {
 
     List<RateEntity> loadFile(StorageBlock block) {
         log.debug("loadFile(): block={}", block);
+        return readBlock(block)
+                .map(b -> toEntities(b, block.getStart(), block.getEnd()))
+                .orElse(Collections.emptyList());
+    }
+
+    /**
+     * Читает блок с диска, минуя кеш, без создания объектов на каждый бар.
+     * В режиме {@link FileStorageSettings.ReadMode#MAPPED} значения берутся напрямую из отображенного в память файла
+     *
+     * @param block
+     * @return Пустой результат, если файла блока нет
+     */
+    Optional<RateBlock> readBlock(StorageBlock block) {
         if (!block.getPath().toFile().exists()) {
-            return Collections.emptyList();
+            // Файл удален не через репозиторий: блок убирается из индекса, чтобы поиск соседних блоков его пропускал
+            if (index.isLoaded() && index.contains(getOrdinal(block))) {
+                log.warn("Block file is missing: block={}", block);
+                index.set(getOrdinal(block), false);
+            }
+            return Optional.empty();
         }
-        List<RateEntity> rates = new ArrayList<>();
         try {
-            byte[] bytes = Files.readAllBytes(block.getPath());
-            DoubleBuffer doubleBuffer = ByteBuffer.wrap(bytes).asDoubleBuffer();
-            int limit = doubleBuffer.limit() >> 2;
-            LocalDateTime time = block.getStart();
-            for (int i = 0; i < limit; i++) {
-                RateEntity rate = new RateEntity();
-                rate.setTime(time);
-                rate.setOpen(doubleBuffer.get());
-                rate.setHigh(doubleBuffer.get());
-                rate.setLow(doubleBuffer.get());
-                rate.setClose(doubleBuffer.get());
-                if (Double.compare(rate.getOpen(), 0) > 0) {
-                    rates.add(rate);
+            ByteBuffer data;
+            if (settings.getReadMode() == FileStorageSettings.ReadMode.MAPPED) {
+                try (FileChannel channel = FileChannel.open(block.getPath(), StandardOpenOption.READ)) {
+                    data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
                 }
-                time = time.plus(timeframe.getDuration().getPeriod()).plus(timeframe.getDuration().getDuration());
+            } else {
+                data = ByteBuffer.wrap(Files.readAllBytes(block.getPath()));
+            }
+            DoubleBuffer doubleBuffer;
+            if (TicksBlockCodec.isTicks(data)) {
+                doubleBuffer = DoubleBuffer.wrap(TicksBlockCodec.decode(data));
+            } else if (CompressedBlockCodec.isCompressed(data)) {
+                doubleBuffer = DoubleBuffer.wrap(CompressedBlockCodec.decode(data));
+            } else {
+                doubleBuffer = data.asDoubleBuffer();
             }
-            return rates;
+            return Optional.of(new RateBlock(block.getStart(), timeframe, getSlots(block), doubleBuffer));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Передает получателю все бары в интервале [timeStart, timeEnd] в порядке возрастания времени.
+     * В отличие от {@link #findAllByTimeBetween} не создает объектов на каждый бар
+     *
+     * @param timeStart
+     * @param timeEnd
+     * @param consumer
+     */
+    public void scan(LocalDateTime timeStart, LocalDateTime timeEnd, RateConsumer consumer) {
+        long from = TimeUtils.toEpochMinutes(timeStart);
+        long to = TimeUtils.toEpochMinutes(timeEnd);
+        index.refresh();
+        Optional<StorageBlock> next = Optional.of(getBlockByTime(timeStart));
+        while (next.isPresent() && !next.get().getStart().isAfter(timeEnd)) {
+            StorageBlock block = next.get();
+            next = findBlockAfter(block);
+            if (!exists(block)) {
+                continue;
+            }
+            if (!getPending(block).isEmpty()) {
+                for (RateEntity rate : getRates(block)) {
+                    long time = TimeUtils.toEpochMinutes(rate.getTime());
+                    if (time >= from && time <= to) {
+                        consumer.accept(time, rate.getOpen(), rate.getHigh(), rate.getLow(), rate.getClose());
+                    }
+                }
+                continue;
+            }
+            RateBlock b = cache.get(block);
+            for (int i = 0; i < b.size(); i++) {
+                if (!b.isPresent(i)) {
+                    continue;
+                }
+                long time = b.getEpochMinutes(i);
+                if (time < from || time > to) {
+                    continue;
+                }
+                consumer.accept(time, b.getOpen(i), b.getHigh(i), b.getLow(i), b.getClose(i));
+            }
+        }
+    }
+
+    /**
+     * Возвращает номер слота бара в блоке
+     *
+     * @param block
+     * @param time
+     * @return -1, если время не совпадает ни с одним слотом блока
+     */
+    int getSlot(StorageBlock block, LocalDateTime time) {
+        return getSlots(block).getSlot(time);
+    }
+
+    SlotCalculator getSlots(StorageBlock block) {
+        return new SlotCalculator(block.getStart(), block.getEnd(), timeframe, block.getSize());
+    }
+
+    /**
+     * Записывает один бар на его место в существующем файле блока, не трогая остальные слоты
+     *
+     * @param block
+     * @param rate
+     * @param insert если true, занятый слот считается ошибкой
+     * @return false, если файла блока нет, он другого размера или время бара не попадает в слот
+     */
+    private boolean writeSlot(StorageBlock block, RateEntity rate, boolean insert) {
+        int slot = getSlot(block, rate.getTime());
+        if (slot < 0 || !block.getPath().toFile().exists()) {
+            return false;
+        }
+        long position = (long) slot * SLOT_BYTES;
+        try (FileChannel channel = FileChannel.open(block.getPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() != (long) block.getSize() * SLOT_BYTES) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(1);
+            channel.read(header, 0);
+            if (CompressedBlockCodec.isCompressed(header)) {
+                return false;
+            }
+            if (insert) {
+                ByteBuffer open = ByteBuffer.allocate(8);
+                channel.read(open, position);
+                if (Double.compare(open.getDouble(0), 0) > 0) {
+                    throw new RuntimeException("Rate already exists: rate=" + rate);
+                }
+            }
+            getIndex().set(getOrdinal(block), true);
+            ByteBuffer bb = ByteBuffer.allocate(SLOT_BYTES)
+                    .putDouble(rate.getOpen())
+                    .putDouble(rate.getHigh())
+                    .putDouble(rate.getLow())
+                    .putDouble(rate.getClose())
+                    .flip();
+            while (bb.hasRemaining()) {
+                channel.write(bb, position + bb.position());
+            }
+        } catch (IOException e) {
+            log.warn("Error on write slot: block={}, slot={}", block, slot, e);
+            throw new RuntimeException(e);
+        } finally {
+            cache.invalidate(block);
+        }
+        return true;
+    }
+
+    /**
+     * Записывает блок целиком во временный файл и атомарно подменяет им файл блока.
+     * Формат файла задается {@link FileStorageSettings#getPriceCodec()} и {@link FileStorageSettings#isCompressionEnabled()}
+     *
+     * @param block
+     * @param rates
+     */
     void saveFile(StorageBlock block, List<RateEntity> rates) {
-        cache.invalidate(block);
         log.debug("saveFile(): block={}, rates.size={}", block, rates.size());
-        Map<LocalDateTime, RateEntity> ratesToSave = rates.stream().collect(Collectors.toMap(
-                RateEntity::getTime,
-                Function.identity()));
-        if (!block.getPath().toFile().exists()) {
-            try {
-                Files.createDirectories(block.getPath().getParent());
-                block.getPath().toFile().createNewFile();
-            } catch (IOException e) {
-                log.warn("Error on create file: block={}", block, e);
-                throw new RuntimeException(e);
+        SlotCalculator slots = getSlots(block);
+        double[] values = new double[block.getSize() * 4];
+        boolean present = false;
+        for (RateEntity r : rates) {
+            int slot = slots.getSlot(r.getTime());
+            if (slot < 0) {
+                continue;
             }
+            present = true;
+            int i = slot * 4;
+            values[i] = r.getOpen();
+            values[i + 1] = r.getHigh();
+            values[i + 2] = r.getLow();
+            values[i + 3] = r.getClose();
+        }
+        ByteBuffer bb;
+        byte[] ticks = settings.getPriceCodec() != null
+                ? TicksBlockCodec.encode(values, block.getSize(), settings.getPriceCodec())
+                : null;
+        if (ticks != null) {
+            bb = ByteBuffer.wrap(ticks);
+        } else if (settings.isCompressionEnabled()) {
+            bb = ByteBuffer.wrap(CompressedBlockCodec.encode(values, block.getSize()));
+        } else {
+            bb = ByteBuffer.allocate(block.getSize() * SLOT_BYTES);
+            bb.asDoubleBuffer().put(values);
         }
-        try (FileOutputStream fos = new FileOutputStream(block.getPath().toFile())) {
-            ByteBuffer bb = ByteBuffer.allocate(block.getSize() * 4 * 8);
-            for (LocalDateTime start = block.getStart(); !start.isAfter(block.getEnd()); start = TimeUtils.plus(start, timeframe)) {
-                if (ratesToSave.containsKey(start)) {
-                    RateEntity r = ratesToSave.get(start);
-                    bb.putDouble(r.getOpen());
-                    bb.putDouble(r.getHigh());
-                    bb.putDouble(r.getLow());
-                    bb.putDouble(r.getClose());
-                } else {
-                    bb.putDouble(0);
-                    bb.putDouble(0);
-                    bb.putDouble(0);
-                    bb.putDouble(0);
+        // У каждой записи свой временный файл рядом с файлом блока: атомарная подмена остается в пределах каталога,
+        // а параллельные записи разных блоков не пишут в один файл. При обходе каталогов такие файлы пропускаются
+        Path tmp = null;
+        try {
+            Files.createDirectories(block.getPath().getParent());
+            // Индекс обновляется до записи блока: при сбое он может указывать на отсутствующий блок,
+            // такой индекс перестраивается при следующем обращении к крайним блокам
+            getIndex().set(getOrdinal(block), present);
+            tmp = Files.createTempFile(block.getPath().getParent(), block.getPath().getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (bb.hasRemaining()) {
+                    channel.write(bb);
                 }
+                channel.force(false);
             }
-            fos.write(bb.array());
-        } catch (Exception e) {
+            try {
+                Files.move(tmp, block.getPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, block.getPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
             log.warn("Error on write file: block={}", block, e);
+            deleteQuietly(tmp);
+            throw new RuntimeException(e);
+        } finally {
+            cache.invalidate(block);
+        }
+    }
+
+    private void deleteQuietly(Path tmp) {
+        if (tmp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            log.warn("Error on delete temporary file: path={}", tmp, e);
         }
     }
 }
@@ -0,0 +1,359 @@
+package org.trade.rateslib.data.impl;
+
+import org.trade.rateslib.model.PriceCodec;
+import org.trade.rateslib.model.Timeframe;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Настройки файлового репозитория котировок
+ *
+ * @author javonavi
+ */
+public class FileStorageSettings {
+
+    private final ReadMode readMode;
+    private final long cacheMaximumBlocks;
+    private final Long cacheMaximumBars;
+    private final Duration cacheExpireAfterWrite;
+    private final Duration cacheExpireAfterAccess;
+    private final boolean cacheRecordStats;
+    private final boolean walEnabled;
+    private final int walSyncEveryRecords;
+    private final int walCompactionRecords;
+    private final Map<Timeframe, BlockLayout> blockLayouts;
+    private final boolean compressionEnabled;
+    private final PriceCodec priceCodec;
+    private final int prefetchBlocks;
+    private final int prefetchThreads;
+    private final Executor prefetchExecutor;
+    private final Duration blockIndexRefreshInterval;
+
+    private FileStorageSettings(ReadMode readMode,
+                                long cacheMaximumBlocks,
+                                Long cacheMaximumBars,
+                                Duration cacheExpireAfterWrite,
+                                Duration cacheExpireAfterAccess,
+                                boolean cacheRecordStats,
+                                boolean walEnabled,
+                                int walSyncEveryRecords,
+                                int walCompactionRecords,
+                                Map<Timeframe, BlockLayout> blockLayouts,
+                                boolean compressionEnabled,
+                                PriceCodec priceCodec,
+                                int prefetchBlocks,
+                                int prefetchThreads,
+                                Executor prefetchExecutor,
+                                Duration blockIndexRefreshInterval) {
+        this.readMode = Objects.requireNonNull(readMode, "readMode is null");
+        this.cacheMaximumBlocks = cacheMaximumBlocks;
+        this.cacheMaximumBars = cacheMaximumBars;
+        this.cacheExpireAfterWrite = cacheExpireAfterWrite;
+        this.cacheExpireAfterAccess = cacheExpireAfterAccess;
+        this.cacheRecordStats = cacheRecordStats;
+        this.walEnabled = walEnabled;
+        this.walSyncEveryRecords = walSyncEveryRecords;
+        this.walCompactionRecords = walCompactionRecords;
+        this.blockLayouts = Collections.unmodifiableMap(new EnumMap<>(blockLayouts));
+        this.compressionEnabled = compressionEnabled;
+        this.priceCodec = priceCodec;
+        this.prefetchBlocks = prefetchBlocks;
+        this.prefetchThreads = prefetchThreads;
+        this.prefetchExecutor = prefetchExecutor;
+        this.blockIndexRefreshInterval = blockIndexRefreshInterval;
+    }
+
+    public static FileStorageSettings defaults() {
+        return builder().build();
+    }
+
+    public ReadMode getReadMode() {
+        return readMode;
+    }
+
+    /**
+     * Максимальное количество блоков в кеше. Не используется, если задано {@link #getCacheMaximumBars()}
+     */
+    public long getCacheMaximumBlocks() {
+        return cacheMaximumBlocks;
+    }
+
+    /**
+     * Максимальное суммарное количество баров в закешированных блоках
+     */
+    public Long getCacheMaximumBars() {
+        return cacheMaximumBars;
+    }
+
+    public Duration getCacheExpireAfterWrite() {
+        return cacheExpireAfterWrite;
+    }
+
+    public Duration getCacheExpireAfterAccess() {
+        return cacheExpireAfterAccess;
+    }
+
+    public boolean isCacheRecordStats() {
+        return cacheRecordStats;
+    }
+
+    /**
+     * Записывать ли изменения через журнал упреждающей записи вместо перезаписи блоков
+     */
+    public boolean isWalEnabled() {
+        return walEnabled;
+    }
+
+    /**
+     * Через сколько записей журнала сбрасывать его на диск
+     */
+    public int getWalSyncEveryRecords() {
+        return walSyncEveryRecords;
+    }
+
+    /**
+     * При каком количестве записей журнала переносить их в блоки
+     */
+    public int getWalCompactionRecords() {
+        return walCompactionRecords;
+    }
+
+    /**
+     * Возвращает разбиение таймфрейма на блоки. Если не задано, используется {@link BlockLayout#defaultFor}.
+     * Разбиение нельзя менять для уже записанных данных
+     *
+     * @param timeframe
+     * @return
+     */
+    public BlockLayout getBlockLayout(Timeframe timeframe) {
+        BlockLayout layout = blockLayouts.get(timeframe);
+        return layout != null ? layout : BlockLayout.defaultFor(timeframe);
+    }
+
+    /**
+     * Записывать ли блоки в сжатом формате (см. {@link CompressedBlockCodec}).
+     * Чтение определяет формат по заголовку файла, поэтому сжатые и несжатые блоки могут храниться вперемешку
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Шаг цены инструмента. Если задан, блоки записываются с ценами в тиках (см. {@link TicksBlockCodec}),
+     * это имеет приоритет над {@link #isCompressionEnabled()}. Блок с ценой, не кратной шагу, записывается
+     * в обычном формате, чтобы не потерять точность
+     */
+    public PriceCodec getPriceCodec() {
+        return priceCodec;
+    }
+
+    /**
+     * Сколько блоков вперед по направлению обратного сканирования читать в кеш параллельно.
+     * 0 - упреждающее чтение выключено (по умолчанию)
+     */
+    public int getPrefetchBlocks() {
+        return prefetchBlocks;
+    }
+
+    /**
+     * Количество потоков собственного пула упреждающего чтения.
+     * По умолчанию - {@link #getPrefetchBlocks()}, но не больше числа процессоров
+     */
+    public int getPrefetchThreads() {
+        if (prefetchThreads > 0) {
+            return prefetchThreads;
+        }
+        return Math.max(1, Math.min(prefetchBlocks, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Пул для упреждающего чтения. Если не задан, репозиторий создает свой пул из {@link #getPrefetchThreads()}
+     * потоков и закрывает его в {@link FileStorageRateRepository#close()}
+     */
+    public Executor getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    /**
+     * Как часто чтение проверяет, не изменил ли индекс блоков другой экземпляр репозитория (например, в другом процессе).
+     * null - не проверять (по умолчанию): индекс в памяти считается актуальным, чтение не обращается к его файлу
+     */
+    public Duration getBlockIndexRefreshInterval() {
+        return blockIndexRefreshInterval;
+    }
+
+    @Override
+    public String toString() {
+        return "FileStorageSettings{" +
+                "readMode=" + readMode +
+                ", cacheMaximumBlocks=" + cacheMaximumBlocks +
+                ", cacheMaximumBars=" + cacheMaximumBars +
+                ", cacheExpireAfterWrite=" + cacheExpireAfterWrite +
+                ", cacheExpireAfterAccess=" + cacheExpireAfterAccess +
+                ", cacheRecordStats=" + cacheRecordStats +
+                ", walEnabled=" + walEnabled +
+                ", walSyncEveryRecords=" + walSyncEveryRecords +
+                ", walCompactionRecords=" + walCompactionRecords +
+                ", blockLayouts=" + blockLayouts +
+                ", compressionEnabled=" + compressionEnabled +
+                ", priceCodec=" + priceCodec +
+                ", prefetchBlocks=" + prefetchBlocks +
+                ", prefetchThreads=" + prefetchThreads +
+                ", prefetchExecutor=" + prefetchExecutor +
+                ", blockIndexRefreshInterval=" + blockIndexRefreshInterval +
+                '}';
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Способ чтения блоков с диска
+     */
+    public enum ReadMode {
+        /**
+         * Файл блока целиком читается в массив в куче
+         */
+        HEAP,
+        /**
+         * Файл блока отображается в память через {@link java.nio.channels.FileChannel#map}, значения читаются из страничного кеша
+         */
+        MAPPED
+    }
+
+    public static class Builder {
+        private ReadMode readMode = ReadMode.HEAP;
+        private long cacheMaximumBlocks = 100;
+        private Long cacheMaximumBars;
+        private Duration cacheExpireAfterWrite = Duration.ofMinutes(1);
+        private Duration cacheExpireAfterAccess;
+        private boolean cacheRecordStats = true;
+        private boolean walEnabled;
+        private int walSyncEveryRecords = 64;
+        private int walCompactionRecords = 8192;
+        private final Map<Timeframe, BlockLayout> blockLayouts = new EnumMap<>(Timeframe.class);
+        private boolean compressionEnabled;
+        private PriceCodec priceCodec;
+        private int prefetchBlocks;
+        private int prefetchThreads;
+        private Executor prefetchExecutor;
+        private Duration blockIndexRefreshInterval;
+
+        private Builder() {
+        }
+
+        public Builder withReadMode(ReadMode readMode) {
+            this.readMode = readMode;
+            return this;
+        }
+
+        public Builder withCacheMaximumBlocks(long cacheMaximumBlocks) {
+            this.cacheMaximumBlocks = cacheMaximumBlocks;
+            return this;
+        }
+
+        public Builder withCacheMaximumBars(Long cacheMaximumBars) {
+            this.cacheMaximumBars = cacheMaximumBars;
+            return this;
+        }
+
+        public Builder withCacheExpireAfterWrite(Duration cacheExpireAfterWrite) {
+            this.cacheExpireAfterWrite = cacheExpireAfterWrite;
+            return this;
+        }
+
+        public Builder withCacheExpireAfterAccess(Duration cacheExpireAfterAccess) {
+            this.cacheExpireAfterAccess = cacheExpireAfterAccess;
+            return this;
+        }
+
+        public Builder withCacheRecordStats(boolean cacheRecordStats) {
+            this.cacheRecordStats = cacheRecordStats;
+            return this;
+        }
+
+        public Builder withWalEnabled(boolean walEnabled) {
+            this.walEnabled = walEnabled;
+            return this;
+        }
+
+        public Builder withWalSyncEveryRecords(int walSyncEveryRecords) {
+            this.walSyncEveryRecords = walSyncEveryRecords;
+            return this;
+        }
+
+        public Builder withWalCompactionRecords(int walCompactionRecords) {
+            this.walCompactionRecords = walCompactionRecords;
+            return this;
+        }
+
+        public Builder withBlockLayout(Timeframe timeframe, BlockLayout blockLayout) {
+            blockLayout.getCapacity(timeframe);
+            this.blockLayouts.put(timeframe, blockLayout);
+            return this;
+        }
+
+        public Builder withCompressionEnabled(boolean compressionEnabled) {
+            this.compressionEnabled = compressionEnabled;
+            return this;
+        }
+
+        public Builder withPriceCodec(PriceCodec priceCodec) {
+            this.priceCodec = priceCodec;
+            return this;
+        }
+
+        public Builder withPrefetchBlocks(int prefetchBlocks) {
+            if (prefetchBlocks < 0) {
+                throw new IllegalArgumentException("Prefetch blocks must not be negative: " + prefetchBlocks);
+            }
+            this.prefetchBlocks = prefetchBlocks;
+            return this;
+        }
+
+        public Builder withPrefetchThreads(int prefetchThreads) {
+            if (prefetchThreads < 0) {
+                throw new IllegalArgumentException("Prefetch threads must not be negative: " + prefetchThreads);
+            }
+            this.prefetchThreads = prefetchThreads;
+            return this;
+        }
+
+        public Builder withPrefetchExecutor(Executor prefetchExecutor) {
+            this.prefetchExecutor = prefetchExecutor;
+            return this;
+        }
+
+        public Builder withBlockIndexRefreshInterval(Duration blockIndexRefreshInterval) {
+            this.blockIndexRefreshInterval = blockIndexRefreshInterval;
+            return this;
+        }
+
+        public FileStorageSettings build() {
+            return new FileStorageSettings(
+                    readMode,
+                    cacheMaximumBlocks,
+                    cacheMaximumBars,
+                    cacheExpireAfterWrite,
+                    cacheExpireAfterAccess,
+                    cacheRecordStats,
+                    walEnabled,
+                    walSyncEveryRecords,
+                    walCompactionRecords,
+                    blockLayouts,
+                    compressionEnabled,
+                    priceCodec,
+                    prefetchBlocks,
+                    prefetchThreads,
+                    prefetchExecutor,
+                    blockIndexRefreshInterval
+            );
+        }
+    }
+}
@@ -2,12 +2,12 @@ package org.trade.rateslib.data.impl;
 
 import org.trade.rateslib.data.RateEntity;
 import org.trade.rateslib.data.RateRepository;
+import org.trade.rateslib.model.PriceCodec;
+import org.trade.rateslib.utils.RangeExtremumIndex;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -23,18 +23,40 @@ public class InMemoryRateRepository implements RateRepository {
 
     private final TreeMap<LocalDateTime, RateEntity> tree = new TreeMap<>();
     /**
-     * Включает режим генерации кешированной последовательности индексов
-     * Она используется для ускорения работы некоторых методов сервиса
+     * Бары в порядке возрастания времени, синхронизированы с {@link #tree}.
+     * Используются для доступа по индексу и бинарного поиска позиции по времени
      */
-    private final boolean createIndexCashedCollection;
-    private final Map<LocalDateTime, Integer> indexCashedCollection = new HashMap<>();
+    private final List<RateEntity> index = new ArrayList<>();
+    /**
+     * Максимумы и минимумы баров по позициям {@link #index}
+     */
+    private final RangeExtremumIndex highs = RangeExtremumIndex.forMaximum();
+    private final RangeExtremumIndex lows = RangeExtremumIndex.forMinimum();
+    private PriceCodec priceCodec;
 
     public InMemoryRateRepository() {
-        this(false);
     }
 
+    /**
+     * @deprecated индекс по позиции поддерживается всегда, параметр ни на что не влияет
+     */
+    @Deprecated
     public InMemoryRateRepository(boolean createIndexCashedCollection) {
-        this.createIndexCashedCollection = createIndexCashedCollection;
+        this();
+    }
+
+    /**
+     * Задает шаг цены: {@link #getHighestRate} и {@link #getLowestRate} сравнивают цены, округленные до шага.
+     * Сами бары хранятся как есть
+     *
+     * @param priceCodec null - цены сравниваются как есть (по умолчанию)
+     */
+    public void setPriceCodec(PriceCodec priceCodec) {
+        this.priceCodec = priceCodec;
+        for (int i = 0; i < index.size(); i++) {
+            highs.set(i, high(index.get(i)));
+            lows.set(i, low(index.get(i)));
+        }
     }
 
     @Override
@@ -48,24 +70,16 @@ public class InMemoryRateRepository implements RateRepository {
 
     @Override
     public int countByTimeGreaterThanEqual(LocalDateTime time) {
-        try {
-            return findAllByTimeBetween(time, tree.lastKey()).size();
-        } catch (NoSuchElementException e) {
-            return 0;
-        }
+        return index.size() - lowerBound(time);
     }
 
     @Override
     public RateEntity getByIndex(int index) {
-        List<RateEntity> list = new ArrayList<>(tree.values());
-        if (list.isEmpty()) {
+        int preparedIndex = this.index.size() - index - 1;
+        if (preparedIndex >= this.index.size() || preparedIndex < 0) {
             return null;
         }
-        int preparedIndex = list.size() - index - 1;
-        if (preparedIndex >= list.size() || preparedIndex < 0) {
-            return null;
-        }
-        return list.get(list.size() - index - 1);
+        return this.index.get(preparedIndex);
     }
 
     @Override
@@ -81,11 +95,13 @@ public class InMemoryRateRepository implements RateRepository {
 
     @Override
     public int countByTimeBetween(LocalDateTime timeStart, LocalDateTime timeEnd) {
-        if (createIndexCashedCollection) {
-            //System.out.println(timeStart + " - " + timeEnd);
-            return indexCashedCollection.get(timeEnd) - indexCashedCollection.get(timeStart) + 1;
+        if (timeStart.minusSeconds(timeStart.getSecond()).equals(timeEnd.minusSeconds(timeEnd.getSecond()))) {
+            return 1;
         }
-        return findAllByTimeBetween(timeStart, timeEnd).size();
+        if (!timeStart.isBefore(timeEnd)) {
+            throw new RuntimeException("End must be greaten than start: timeStart=" + timeStart + "; timeEnd=" + timeEnd);
+        }
+        return upperBound(timeEnd) - lowerBound(timeStart);
     }
 
     @Override
@@ -108,15 +124,12 @@ public class InMemoryRateRepository implements RateRepository {
 
     @Override
     public void insert(RateEntity rateEntity) {
-        tree.put(rateEntity.getTime(), rateEntity);
-        if (createIndexCashedCollection) {
-            indexCashedCollection.put(rateEntity.getTime(), tree.size());
-        }
+        put(rateEntity);
     }
 
     @Override
     public void update(RateEntity rateEntity) {
-        tree.put(rateEntity.getTime(), rateEntity);
+        put(rateEntity);
     }
 
     @Override
@@ -132,26 +145,47 @@ public class InMemoryRateRepository implements RateRepository {
     @Override
     public void deleteAll() {
         tree.clear();
+        index.clear();
+        highs.clear();
+        lows.clear();
+    }
+
+    /**
+     * Удаляет бары с временем меньше заданного
+     *
+     * @param time
+     * @return Количество удаленных баров
+     */
+    public int deleteByTimeLessThan(LocalDateTime time) {
+        int count = lowerBound(time);
+        if (count == 0) {
+            return 0;
+        }
+        tree.headMap(time, false).clear();
+        index.subList(0, count).clear();
+        highs.removeFirst(count);
+        lows.removeFirst(count);
+        return count;
     }
 
     @Override
     public List<RateEntity> getLatest(int count) {
-        List<RateEntity> list = new ArrayList<>(tree.values());
-        List<RateEntity> result = list.subList(max(list.size() - count - 1, 0), list.size() - 1);
+        if (index.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<RateEntity> result = new ArrayList<>(index.subList(max(index.size() - count - 1, 0), index.size() - 1));
         Collections.reverse(result);
         return result;
     }
 
     @Override
     public List<RateEntity> getLatest(LocalDateTime beforeTime, int count) {
-        List<RateEntity> list = new ArrayList<>(tree.values());
-        int i2 = list.size();
-        while (--i2 >= 0 && !list.get(i2).getTime().isBefore(beforeTime)) ;
+        int i2 = lowerBound(beforeTime) - 1;
         int i1 = i2 - count + 1;
         if (i1 < 0) {
             i1 = 0;
         }
-        List<RateEntity> result = list.subList(i1, i2 + 1);
+        List<RateEntity> result = new ArrayList<>(index.subList(i1, i2 + 1));
         Collections.reverse(result);
         return result;
     }
@@ -161,14 +195,14 @@ public class InMemoryRateRepository implements RateRepository {
         return Optional.ofNullable(tree.firstEntry()).map(Map.Entry::getValue);
     }
 
+    @Override
     public Optional<RateEntity> getHighestRate(LocalDateTime fromTime, LocalDateTime toTime) {
-        return findAllByTimeBetween(fromTime, toTime)
-                .stream().max(Comparator.comparing(RateEntity::getHigh));
+        return getExtremumRate(highs, fromTime, toTime);
     }
 
+    @Override
     public Optional<RateEntity> getLowestRate(LocalDateTime fromTime, LocalDateTime toTime) {
-        return findAllByTimeBetween(fromTime, toTime)
-                .stream().min(Comparator.comparing(RateEntity::getLow));
+        return getExtremumRate(lows, fromTime, toTime);
     }
 
     public int getShift(LocalDateTime time) {
@@ -183,4 +217,86 @@ public class InMemoryRateRepository implements RateRepository {
         return getRate(0);
     }
 
+    private Optional<RateEntity> getExtremumRate(RangeExtremumIndex extremumIndex,
+                                                 LocalDateTime fromTime,
+                                                 LocalDateTime toTime) {
+        if (fromTime.minusSeconds(fromTime.getSecond()).equals(toTime.minusSeconds(toTime.getSecond()))) {
+            return Optional.ofNullable(tree.get(fromTime));
+        }
+        if (!fromTime.isBefore(toTime)) {
+            throw new RuntimeException("End must be greaten than start: timeStart=" + fromTime + "; timeEnd=" + toTime);
+        }
+        int position = extremumIndex.query(lowerBound(fromTime), upperBound(toTime) - 1);
+        return position < 0 ? Optional.empty() : Optional.of(index.get(position));
+    }
+
+    private void put(RateEntity rateEntity) {
+        LocalDateTime time = rateEntity.getTime();
+        double high = high(rateEntity);
+        double low = low(rateEntity);
+        if (tree.put(time, rateEntity) != null) {
+            int position = lowerBound(time);
+            index.set(position, rateEntity);
+            highs.set(position, high);
+            lows.set(position, low);
+        } else if (index.isEmpty() || index.get(index.size() - 1).getTime().isBefore(time)) {
+            index.add(rateEntity);
+            highs.add(high);
+            lows.add(low);
+        } else {
+            int position = lowerBound(time);
+            index.add(position, rateEntity);
+            highs.insert(position, high);
+            lows.insert(position, low);
+        }
+    }
+
+    private double high(RateEntity rateEntity) {
+        if (rateEntity.getHigh() == null) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return priceCodec == null ? rateEntity.getHigh() : priceCodec.round(rateEntity.getHigh());
+    }
+
+    private double low(RateEntity rateEntity) {
+        if (rateEntity.getLow() == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return priceCodec == null ? rateEntity.getLow() : priceCodec.round(rateEntity.getLow());
+    }
+
+    /**
+     * Возвращает позицию первого бара с временем не меньше заданного
+     */
+    private int lowerBound(LocalDateTime time) {
+        int low = 0;
+        int high = index.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index.get(mid).getTime().isBefore(time)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Возвращает позицию первого бара с временем больше заданного
+     */
+    private int upperBound(LocalDateTime time) {
+        int low = 0;
+        int high = index.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index.get(mid).getTime().isAfter(time)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
 }
@@ -0,0 +1,96 @@
+package org.trade.rateslib.data.impl;
+
+import org.trade.rateslib.model.Timeframe;
+
+import java.nio.DoubleBuffer;
+import java.time.LocalDateTime;
+
+/**
+ * Блок котировок, значения которого читаются напрямую из буфера файла.
+ * Буфер может быть как в куче, так и отображенным в память (см. {@link FileStorageSettings.ReadMode}).
+ * Каждый слот занимает 4 значения: open, high, low, close
+ *
+ * @author javonavi
+ */
+public class RateBlock {
+
+    private static final int FIELDS = 4;
+
+    private final LocalDateTime start;
+    private final Timeframe timeframe;
+    private final DoubleBuffer buffer;
+    private final int size;
+    private final SlotCalculator slots;
+
+    RateBlock(LocalDateTime start,
+              Timeframe timeframe,
+              SlotCalculator slots,
+              DoubleBuffer buffer) {
+        this.start = start;
+        this.timeframe = timeframe;
+        this.slots = slots;
+        this.buffer = buffer;
+        this.size = Math.min(buffer.limit() / FIELDS, slots.size());
+    }
+
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Возвращает количество занятых слотов. Перебирает все слоты
+     */
+    public int count() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (isPresent(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Возвращает признак наличия бара в слоте (пустые слоты заполнены нулями)
+     */
+    public boolean isPresent(int slot) {
+        return Double.compare(getOpen(slot), 0) > 0;
+    }
+
+    public double getOpen(int slot) {
+        return buffer.get(slot * FIELDS);
+    }
+
+    public double getHigh(int slot) {
+        return buffer.get(slot * FIELDS + 1);
+    }
+
+    public double getLow(int slot) {
+        return buffer.get(slot * FIELDS + 2);
+    }
+
+    public double getClose(int slot) {
+        return buffer.get(slot * FIELDS + 3);
+    }
+
+    public long getEpochMinutes(int slot) {
+        return slots.getEpochMinutes(slot);
+    }
+
+    public LocalDateTime getTime(int slot) {
+        return slots.getTime(slot);
+    }
+
+    @Override
+    public String toString() {
+        return "RateBlock{" +
+                "start=" + start +
+                ", timeframe=" + timeframe +
+                ", size=" + size +
+                '}';
+    }
+}
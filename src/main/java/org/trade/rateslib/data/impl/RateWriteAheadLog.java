@@ -0,0 +1,199 @@
+package org.trade.rateslib.data.impl;
+
+import org.slf4j.Logger;
+import org.trade.rateslib.data.RateEntity;
+import org.trade.rateslib.utils.TimeUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал упреждающей записи баров одного товара и таймфрейма.
+ * Каждая запись имеет фиксированный размер {@link #RECORD_SIZE} байт: время в минутах от начала эпохи,
+ * open, high, low, close и CRC32 первых 40 байт. Записи только дописываются в конец файла,
+ * {@link FileChannel#force} вызывается раз в syncEveryRecords записей или явно через {@link #sync()}.
+ * При открытии журнал читается до первой неполной или поврежденной записи, хвост после нее отрезается
+ *
+ * @author javonavi
+ */
+class RateWriteAheadLog implements Closeable {
+
+    static final int RECORD_SIZE = 44;
+    private static final int PAYLOAD_SIZE = 40;
+
+    private final Path path;
+    private final int syncEveryRecords;
+    private final Logger log;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private int records;
+    private int unsyncedRecords;
+
+    /**
+     * @param path
+     * @param syncEveryRecords через сколько записей вызывать {@link FileChannel#force}
+     * @param log
+     */
+    RateWriteAheadLog(Path path,
+                      int syncEveryRecords,
+                      Logger log) {
+        this.path = path;
+        this.syncEveryRecords = Math.max(syncEveryRecords, 1);
+        this.log = log;
+        try {
+            Files.createDirectories(path.getParent());
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Возвращает количество записей в журнале
+     */
+    int size() {
+        return records;
+    }
+
+    /**
+     * Читает все целые записи журнала и отрезает поврежденный хвост
+     *
+     * @return Бары в порядке записи
+     */
+    List<RateEntity> recover() {
+        try {
+            long fileSize = channel.size();
+            List<RateEntity> result = new ArrayList<>((int) (fileSize / RECORD_SIZE));
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+            long position = 0;
+            while (position + RECORD_SIZE <= fileSize) {
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                if (buffer.remaining() < RECORD_SIZE || checksum(buffer) != buffer.getInt(PAYLOAD_SIZE)) {
+                    break;
+                }
+                RateEntity rate = new RateEntity();
+                rate.setTime(TimeUtils.fromEpochMinutes(buffer.getLong(0)));
+                rate.setOpen(buffer.getDouble(8));
+                rate.setHigh(buffer.getDouble(16));
+                rate.setLow(buffer.getDouble(24));
+                rate.setClose(buffer.getDouble(32));
+                result.add(rate);
+                position += RECORD_SIZE;
+            }
+            if (position < fileSize) {
+                log.warn("Truncate write-ahead log: path={}, size={}, validSize={}", path, fileSize, position);
+                channel.truncate(position);
+                channel.force(false);
+            }
+            channel.position(position);
+            records = result.size();
+            unsyncedRecords = 0;
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Дописывает бары одной операцией записи
+     *
+     * @param rates
+     */
+    void append(Collection<RateEntity> rates) {
+        if (rates.isEmpty()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(rates.size() * RECORD_SIZE);
+        for (RateEntity rate : rates) {
+            int start = buffer.position();
+            buffer.putLong(TimeUtils.toEpochMinutes(rate.getTime()));
+            buffer.putDouble(rate.getOpen());
+            buffer.putDouble(rate.getHigh());
+            buffer.putDouble(rate.getLow());
+            buffer.putDouble(rate.getClose());
+            buffer.putInt(checksum(buffer.duplicate().position(start).slice()));
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            records += rates.size();
+            unsyncedRecords += rates.size();
+            if (unsyncedRecords >= syncEveryRecords) {
+                sync();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Сбрасывает записанные данные на диск
+     */
+    void sync() {
+        if (unsyncedRecords == 0) {
+            return;
+        }
+        try {
+            channel.force(false);
+            unsyncedRecords = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Очищает журнал после переноса записей в блоки
+     */
+    void reset() {
+        try {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(false);
+            records = 0;
+            unsyncedRecords = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            sync();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error on close write-ahead log: path={}", path, e);
+            }
+        }
+    }
+
+    private int checksum(ByteBuffer payload) {
+        crc.reset();
+        crc.update(payload.duplicate().position(0).limit(PAYLOAD_SIZE));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,641 @@
+package org.trade.rateslib.data.impl;
+
+import org.slf4j.Logger;
+import org.trade.rateslib.data.RateEntity;
+import org.trade.rateslib.data.RateRepository;
+import org.trade.rateslib.model.RateSeries;
+import org.trade.rateslib.model.Timeframe;
+import org.trade.rateslib.utils.TimeUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Репозиторий котировок, хранящий историю одного инструмента и таймфрейма в сегментах по годам.
+ * <p>
+ * Сегмент - один файл {@code stock/timeframe/yyyy.seg}, в котором время и цены лежат отдельными колонками
+ * примитивов фиксированной емкости, а в заголовке хранится количество баров по месяцам.
+ * Бары дописываются в конец, поэтому чтение интервала - это поиск по индексу месяца и непрерывное чтение колонок.
+ *
+ * @author javonavi
+ */
+public class SegmentRateRepository implements RateRepository, Closeable {
+
+    private static final int MAGIC = 0x52534547;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 128;
+    private static final int COLUMNS = 5;
+    private static final int TIME = 0;
+    private static final int OPEN = 1;
+    private static final int HIGH = 2;
+    private static final int LOW = 3;
+    private static final int CLOSE = 4;
+    private static final String EXTENSION = ".seg";
+    private static final Pattern FILE_NAME = Pattern.compile("(\\d+)\\.seg");
+
+    private final Path base;
+    private final Timeframe timeframe;
+    private final Logger log;
+    private final int capacity;
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    public SegmentRateRepository(Path directory,
+                                 String stock,
+                                 Timeframe timeframe,
+                                 Logger log) {
+        this.base = directory.resolve(stock).resolve(timeframe.getCode());
+        this.timeframe = timeframe;
+        this.log = log;
+        this.capacity = getCapacity(timeframe);
+        File[] files = base.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getName());
+                if (matcher.matches()) {
+                    int year = Integer.parseInt(matcher.group(1));
+                    segments.put(year, openSegment(year));
+                }
+            }
+        }
+    }
+
+    /**
+     * Максимальное количество баров таймфрейма за год
+     */
+    static int getCapacity(Timeframe timeframe) {
+        Timeframe.TimeframeDuration duration = timeframe.getDuration();
+        int months = duration.getPeriod().getYears() * 12 + duration.getPeriod().getMonths();
+        if (months > 0) {
+            return (12 + months - 1) / months;
+        }
+        long stepMinutes = duration.getPeriod().getDays() * 1440L + duration.getDuration().toMinutes();
+        return (int) ((366L * 1440L + stepMinutes - 1) / stepMinutes);
+    }
+
+    @Override
+    public synchronized RateEntity findFirstByOrderByTimeDesc() {
+        for (Segment segment : segments.descendingMap().values()) {
+            if (segment.count > 0) {
+                return segment.readRate(segment.count - 1);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized int countByTimeGreaterThanEqual(LocalDateTime time) {
+        long t = TimeUtils.toEpochMinutes(time);
+        int result = 0;
+        for (Segment segment : segments.tailMap(time.getYear(), true).values()) {
+            result += segment.count - segment.lowerBound(t, time);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized RateEntity getByIndex(int index) {
+        int rest = index;
+        for (Segment segment : segments.descendingMap().values()) {
+            if (rest < segment.count) {
+                return segment.readRate(segment.count - rest - 1);
+            }
+            rest -= segment.count;
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized List<RateEntity> findAllByTimeBetween(LocalDateTime timeStart, LocalDateTime timeEnd) {
+        if (timeEnd.isBefore(timeStart)) {
+            return Collections.emptyList();
+        }
+        long start = TimeUtils.toEpochMinutes(timeStart);
+        long end = TimeUtils.toEpochMinutes(timeEnd);
+        List<RateEntity> result = new ArrayList<>();
+        for (Segment segment : segments.subMap(timeStart.getYear(), true, timeEnd.getYear(), true).values()) {
+            int from = segment.lowerBound(start, timeStart);
+            int to = segment.upperBound(end, timeEnd);
+            if (from < to) {
+                result.addAll(segment.readRates(from, to));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized RateSeries getSeriesBetween(LocalDateTime timeStart, LocalDateTime timeEnd) {
+        if (timeEnd.isBefore(timeStart)) {
+            return RateSeries.empty();
+        }
+        long start = TimeUtils.toEpochMinutes(timeStart);
+        long end = TimeUtils.toEpochMinutes(timeEnd);
+        List<RateSeries> parts = new ArrayList<>();
+        for (Segment segment : segments.subMap(timeStart.getYear(), true, timeEnd.getYear(), true).values()) {
+            int from = segment.lowerBound(start, timeStart);
+            int to = segment.upperBound(end, timeEnd);
+            if (from < to) {
+                parts.add(segment.readSeries(from, to));
+            }
+        }
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        RateSeries.Builder builder = RateSeries.builder(parts.stream().mapToInt(RateSeries::size).sum());
+        for (RateSeries part : parts) {
+            for (int i = 0; i < part.size(); i++) {
+                builder.accept(part.getEpochMinutes(i), part.getOpen(i), part.getHigh(i), part.getLow(i), part.getClose(i));
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public synchronized int countByTimeBetween(LocalDateTime timeStart, LocalDateTime timeEnd) {
+        if (timeEnd.isBefore(timeStart)) {
+            return 0;
+        }
+        long start = TimeUtils.toEpochMinutes(timeStart);
+        long end = TimeUtils.toEpochMinutes(timeEnd);
+        int result = 0;
+        for (Segment segment : segments.subMap(timeStart.getYear(), true, timeEnd.getYear(), true).values()) {
+            result += Math.max(0, segment.upperBound(end, timeEnd) - segment.lowerBound(start, timeStart));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized RateEntity findFirstByTimeLessThanOrderByTimeDesc(LocalDateTime time) {
+        long t = TimeUtils.toEpochMinutes(time);
+        for (Segment segment : segments.headMap(time.getYear(), true).descendingMap().values()) {
+            int index = segment.lowerBound(t, time) - 1;
+            if (index >= 0) {
+                return segment.readRate(index);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized List<RateEntity> findAllByTimeGreaterThanEqualOrderByTimeAsc(LocalDateTime time) {
+        if (segments.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return findAllByTimeBetween(time, LocalDateTime.of(segments.lastKey(), 12, 31, 23, 59));
+    }
+
+    @Override
+    public synchronized void insert(RateEntity rateEntity) {
+        Segment segment = getOrCreateSegment(rateEntity.getTime().getYear());
+        long t = TimeUtils.toEpochMinutes(rateEntity.getTime());
+        int index = segment.lowerBound(t, rateEntity.getTime());
+        if (index < segment.count && segment.readTime(index) == t) {
+            throw new RuntimeException("Rate already exists: rate=" + rateEntity);
+        }
+        segment.insert(index, rateEntity);
+    }
+
+    @Override
+    public synchronized void update(RateEntity rateEntity) {
+        Segment segment = getOrCreateSegment(rateEntity.getTime().getYear());
+        long t = TimeUtils.toEpochMinutes(rateEntity.getTime());
+        int index = segment.lowerBound(t, rateEntity.getTime());
+        if (index < segment.count && segment.readTime(index) == t) {
+            segment.write(index, rateEntity);
+        } else {
+            segment.insert(index, rateEntity);
+        }
+    }
+
+    @Override
+    public synchronized void insertAll(Collection<RateEntity> rates) {
+        saveAll(rates, false);
+    }
+
+    @Override
+    public synchronized void upsertAll(Collection<RateEntity> rates) {
+        saveAll(rates, true);
+    }
+
+    /**
+     * Бары новее последнего бара сегмента дописываются одной записью на колонку,
+     * остальные вставляются или заменяются по одному
+     *
+     * @param rates
+     * @param replace заменять ли существующие бары
+     */
+    private void saveAll(Collection<RateEntity> rates, boolean replace) {
+        TreeMap<LocalDateTime, RateEntity> sorted = new TreeMap<>();
+        for (RateEntity rate : rates) {
+            if (replace) {
+                sorted.put(rate.getTime(), rate);
+            } else {
+                sorted.putIfAbsent(rate.getTime(), rate);
+            }
+        }
+        Map<Integer, List<RateEntity>> ratesByYear = sorted.values().stream().collect(Collectors.groupingBy(
+                r -> r.getTime().getYear(),
+                TreeMap::new,
+                Collectors.toList()));
+        ratesByYear.forEach((year, yearRates) -> {
+            Segment segment = getOrCreateSegment(year);
+            long last = segment.count > 0 ? segment.readTime(segment.count - 1) : Long.MIN_VALUE;
+            List<RateEntity> tail = new ArrayList<>();
+            for (RateEntity rate : yearRates) {
+                if (TimeUtils.toEpochMinutes(rate.getTime()) > last) {
+                    tail.add(rate);
+                } else if (replace) {
+                    update(rate);
+                } else if (findById(rate.getTime()).isEmpty()) {
+                    insert(rate);
+                }
+            }
+            if (!tail.isEmpty()) {
+                segment.append(tail);
+            }
+        });
+    }
+
+    @Override
+    public synchronized Optional<RateEntity> findById(LocalDateTime time) {
+        Segment segment = segments.get(time.getYear());
+        if (segment == null) {
+            return Optional.empty();
+        }
+        long t = TimeUtils.toEpochMinutes(time);
+        int index = segment.lowerBound(t, time);
+        if (index < segment.count && segment.readTime(index) == t) {
+            return Optional.of(segment.readRate(index));
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized int count() {
+        return segments.values().stream().mapToInt(s -> s.count).sum();
+    }
+
+    @Override
+    public synchronized void deleteAll() {
+        for (Segment segment : segments.values()) {
+            segment.close();
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                log.warn("Error on delete segment: path={}", segment.path, e);
+                throw new RuntimeException(e);
+            }
+        }
+        segments.clear();
+    }
+
+    @Override
+    public synchronized List<RateEntity> getLatest(int count) {
+        List<List<RateEntity>> parts = new ArrayList<>();
+        int rest = count;
+        for (Segment segment : segments.descendingMap().values()) {
+            if (rest <= 0) {
+                break;
+            }
+            int from = Math.max(0, segment.count - rest);
+            parts.add(segment.readRates(from, segment.count));
+            rest -= segment.count - from;
+        }
+        Collections.reverse(parts);
+        List<RateEntity> result = new ArrayList<>(count - Math.max(rest, 0));
+        parts.forEach(result::addAll);
+        return result;
+    }
+
+    @Override
+    public synchronized List<RateEntity> getLatest(LocalDateTime beforeTime, int limit) {
+        long t = TimeUtils.toEpochMinutes(beforeTime);
+        List<List<RateEntity>> parts = new ArrayList<>();
+        int rest = limit;
+        for (Segment segment : segments.headMap(beforeTime.getYear(), true).descendingMap().values()) {
+            if (rest <= 0) {
+                break;
+            }
+            int to = segment.lowerBound(t, beforeTime);
+            int from = Math.max(0, to - rest);
+            parts.add(segment.readRates(from, to));
+            rest -= to - from;
+        }
+        Collections.reverse(parts);
+        List<RateEntity> result = new ArrayList<>(limit - Math.max(rest, 0));
+        parts.forEach(result::addAll);
+        return result;
+    }
+
+    @Override
+    public synchronized Optional<RateEntity> getFirstRate() {
+        for (Segment segment : segments.values()) {
+            if (segment.count > 0) {
+                return Optional.of(segment.readRate(0));
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized void close() {
+        segments.values().forEach(Segment::close);
+    }
+
+    private Segment getOrCreateSegment(int year) {
+        Segment segment = segments.get(year);
+        if (segment == null) {
+            segment = openSegment(year);
+            segments.put(year, segment);
+        }
+        return segment;
+    }
+
+    private Segment openSegment(int year) {
+        Path path = base.resolve(year + EXTENSION);
+        try {
+            Files.createDirectories(base);
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(year, path, channel, capacity, timeframe.getValue());
+            if (channel.size() == 0) {
+                segment.writeHeader();
+            } else {
+                segment.readHeader();
+            }
+            return segment;
+        } catch (IOException e) {
+            log.warn("Error on open segment: path={}", path, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Сегмент за один год.
+     * Заголовок: magic, версия, таймфрейм (в минутах), емкость, количество баров, количество баров по месяцам.
+     * Далее колонки time (минуты от начала эпохи), open, high, low, close по {@code capacity} значений каждая
+     */
+    static class Segment implements Closeable {
+        private final int year;
+        private final Path path;
+        private final FileChannel channel;
+        private final int capacity;
+        private final int timeframeValue;
+        private final int[] monthCounts = new int[12];
+        private int count;
+
+        Segment(int year, Path path, FileChannel channel, int capacity, int timeframeValue) {
+            this.year = year;
+            this.path = path;
+            this.channel = channel;
+            this.capacity = capacity;
+            this.timeframeValue = timeframeValue;
+        }
+
+        /**
+         * Индекс первого бара с временем не меньше заданного
+         */
+        int lowerBound(long epochMinutes, LocalDateTime time) {
+            if (time.getYear() < year) {
+                return 0;
+            }
+            if (time.getYear() > year) {
+                return count;
+            }
+            // Двоичный поиск внутри месяца чтением отдельных значений колонки time, без копирования всего месяца
+            int low = monthStart(time.getMonthValue());
+            int high = low + monthCounts[time.getMonthValue() - 1];
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (readTime(mid) < epochMinutes) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Индекс, следующий за последним баром с временем не больше заданного
+         */
+        int upperBound(long epochMinutes, LocalDateTime time) {
+            int index = lowerBound(epochMinutes, time);
+            if (index < count && time.getYear() == year && readTime(index) == epochMinutes) {
+                return index + 1;
+            }
+            return index;
+        }
+
+        private int monthStart(int month) {
+            int result = 0;
+            for (int i = 0; i < month - 1; i++) {
+                result += monthCounts[i];
+            }
+            return result;
+        }
+
+        long readTime(int row) {
+            return read(TIME, row, row + 1).getLong(0);
+        }
+
+        long[] readTimes(int from, int to) {
+            long[] result = new long[to - from];
+            read(TIME, from, to).asLongBuffer().get(result);
+            return result;
+        }
+
+        RateEntity readRate(int row) {
+            return readRates(row, row + 1).get(0);
+        }
+
+        List<RateEntity> readRates(int from, int to) {
+            RateSeries series = readSeries(from, to);
+            List<RateEntity> result = new ArrayList<>(series.size());
+            for (int i = 0; i < series.size(); i++) {
+                result.add(series.toEntity(i));
+            }
+            return result;
+        }
+
+        RateSeries readSeries(int from, int to) {
+            int size = to - from;
+            long[] times = readTimes(from, to);
+            double[] open = new double[size];
+            double[] high = new double[size];
+            double[] low = new double[size];
+            double[] close = new double[size];
+            read(OPEN, from, to).asDoubleBuffer().get(open);
+            read(HIGH, from, to).asDoubleBuffer().get(high);
+            read(LOW, from, to).asDoubleBuffer().get(low);
+            read(CLOSE, from, to).asDoubleBuffer().get(close);
+            return RateSeries.of(times, open, high, low, close);
+        }
+
+        void write(int row, RateEntity rate) {
+            writeLong(TIME, row, TimeUtils.toEpochMinutes(rate.getTime()));
+            writeDouble(OPEN, row, rate.getOpen());
+            writeDouble(HIGH, row, rate.getHigh());
+            writeDouble(LOW, row, rate.getLow());
+            writeDouble(CLOSE, row, rate.getClose());
+        }
+
+        /**
+         * Вставляет бар в позицию row. Вставка в конец - запись одной строки и заголовка,
+         * вставка в середину сдвигает хвост колонок
+         */
+        void insert(int row, RateEntity rate) {
+            if (count >= capacity) {
+                throw new RuntimeException("Segment is full: path=" + path + ", capacity=" + capacity);
+            }
+            if (row < count) {
+                for (int column = 0; column < COLUMNS; column++) {
+                    ByteBuffer tail = read(column, row, count);
+                    writeFully(tail, offset(column, row + 1));
+                }
+            }
+            write(row, rate);
+            count++;
+            monthCounts[rate.getTime().getMonthValue() - 1]++;
+            writeHeader();
+        }
+
+        /**
+         * Дописывает отсортированные бары, которые новее последнего бара сегмента
+         */
+        void append(List<RateEntity> rates) {
+            int size = rates.size();
+            if (count + size > capacity) {
+                throw new RuntimeException("Segment is full: path=" + path + ", capacity=" + capacity);
+            }
+            ByteBuffer[] columns = new ByteBuffer[COLUMNS];
+            for (int column = 0; column < COLUMNS; column++) {
+                columns[column] = ByteBuffer.allocate(size * 8);
+            }
+            for (RateEntity rate : rates) {
+                columns[TIME].putLong(TimeUtils.toEpochMinutes(rate.getTime()));
+                columns[OPEN].putDouble(rate.getOpen());
+                columns[HIGH].putDouble(rate.getHigh());
+                columns[LOW].putDouble(rate.getLow());
+                columns[CLOSE].putDouble(rate.getClose());
+                monthCounts[rate.getTime().getMonthValue() - 1]++;
+            }
+            for (int column = 0; column < COLUMNS; column++) {
+                columns[column].flip();
+                writeFully(columns[column], offset(column, count));
+            }
+            count += size;
+            writeHeader();
+        }
+
+        void readHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Wrong segment format: path=" + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported segment version: path=" + path + ", version=" + version);
+            }
+            int storedTimeframe = header.getInt();
+            if (storedTimeframe != timeframeValue) {
+                throw new IOException("Segment timeframe mismatch: path=" + path + ", timeframe=" + storedTimeframe);
+            }
+            int storedCapacity = header.getInt();
+            if (storedCapacity != capacity) {
+                throw new IOException("Segment capacity mismatch: path=" + path + ", capacity=" + storedCapacity);
+            }
+            count = header.getInt();
+            for (int i = 0; i < 12; i++) {
+                monthCounts[i] = header.getInt();
+            }
+        }
+
+        void writeHeader() {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(timeframeValue);
+            header.putInt(capacity);
+            header.putInt(count);
+            for (int i = 0; i < 12; i++) {
+                header.putInt(monthCounts[i]);
+            }
+            header.clear();
+            writeFully(header, 0);
+        }
+
+        private long offset(int column, int row) {
+            return HEADER_SIZE + ((long) column * capacity + row) * 8L;
+        }
+
+        private ByteBuffer read(int column, int from, int to) {
+            ByteBuffer buffer = ByteBuffer.allocate((to - from) * 8);
+            try {
+                readFully(buffer, offset(column, from));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        private void writeLong(int column, int row, long value) {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            buffer.putLong(0, value);
+            writeFully(buffer, offset(column, row));
+        }
+
+        private void writeDouble(int column, int row, double value) {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            buffer.putDouble(0, value);
+            writeFully(buffer, offset(column, row));
+        }
+
+        private void readFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    throw new IOException("Unexpected end of segment: path=" + path);
+                }
+            }
+        }
+
+        private void writeFully(ByteBuffer buffer, long position) {
+            try {
+                long pos = position;
+                while (buffer.hasRemaining()) {
+                    pos += channel.write(buffer, pos);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.trade.rateslib.data.impl;
+
+import org.trade.rateslib.model.Timeframe;
+import org.trade.rateslib.utils.TimeUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Перевод времени в номер слота блока и обратно через минуты от начала эпохи.
+ * Для таймфреймов с постоянной длиной бара используется умножение и деление на шаг,
+ * для месячных и более длинных - заранее вычисленная таблица времен слотов с двоичным поиском
+ *
+ * @author javonavi
+ */
+public class SlotCalculator {
+
+    private final int size;
+    private final long startEpochMinutes;
+    private final long stepMinutes;
+    /**
+     * Времена слотов для таймфреймов без постоянного шага, иначе null
+     */
+    private final long[] slotEpochMinutes;
+
+    /**
+     * @param start     время первого слота
+     * @param end       время последнего слота
+     * @param timeframe
+     * @param capacity  максимальное количество слотов
+     */
+    public SlotCalculator(LocalDateTime start,
+                          LocalDateTime end,
+                          Timeframe timeframe,
+                          int capacity) {
+        this.startEpochMinutes = TimeUtils.toEpochMinutes(start);
+        long endEpochMinutes = TimeUtils.toEpochMinutes(end);
+        Timeframe.TimeframeDuration duration = timeframe.getDuration();
+        if (duration.getPeriod().getMonths() == 0 && duration.getPeriod().getYears() == 0) {
+            this.stepMinutes = duration.getPeriod().getDays() * 1440L + duration.getDuration().toMinutes();
+            this.slotEpochMinutes = null;
+            this.size = (int) Math.max(0, Math.min(capacity, (endEpochMinutes - startEpochMinutes) / stepMinutes + 1));
+        } else {
+            this.stepMinutes = 0;
+            long[] table = new long[capacity];
+            int count = 0;
+            while (count < capacity) {
+                long time = TimeUtils.toEpochMinutes(start.plus(timeframe.getDuration(count).getPeriod()));
+                if (time > endEpochMinutes) {
+                    break;
+                }
+                table[count++] = time;
+            }
+            this.slotEpochMinutes = Arrays.copyOf(table, count);
+            this.size = count;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getEpochMinutes(int slot) {
+        if (slotEpochMinutes == null) {
+            return startEpochMinutes + slot * stepMinutes;
+        }
+        return slotEpochMinutes[slot];
+    }
+
+    public LocalDateTime getTime(int slot) {
+        return TimeUtils.fromEpochMinutes(getEpochMinutes(slot));
+    }
+
+    /**
+     * @param epochMinutes
+     * @return -1, если время не совпадает ни с одним слотом
+     */
+    public int getSlot(long epochMinutes) {
+        if (slotEpochMinutes != null) {
+            int slot = Arrays.binarySearch(slotEpochMinutes, epochMinutes);
+            return slot < 0 ? -1 : slot;
+        }
+        long offset = epochMinutes - startEpochMinutes;
+        if (offset < 0 || offset % stepMinutes != 0 || offset / stepMinutes >= size) {
+            return -1;
+        }
+        return (int) (offset / stepMinutes);
+    }
+
+    /**
+     * @param time
+     * @return -1, если время не совпадает ни с одним слотом
+     */
+    public int getSlot(LocalDateTime time) {
+        if (time.getSecond() != 0 || time.getNano() != 0) {
+            return -1;
+        }
+        return getSlot(TimeUtils.toEpochMinutes(time));
+    }
+}
@@ -0,0 +1,139 @@
+package org.trade.rateslib.data.impl;
+
+import org.trade.rateslib.model.PriceCodec;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Формат файла блока с ценами в тиках (см. {@link PriceCodec}).
+ * Файл начинается с байта заголовка с установленным старшим битом (как у {@link CompressedBlockCodec}),
+ * затем идут количество слотов, шаг цены (масштаб и немасштабированное значение), битовая карта занятых слотов
+ * и значения занятых слотов в тиках: open относительно close предыдущего занятого слота, close относительно open,
+ * high относительно большего из open и close, low относительно меньшего. Разности записываются в zigzag varint
+ *
+ * @author javonavi
+ */
+final class TicksBlockCodec {
+
+    static final byte HEADER = (byte) 0x82;
+    private static final int FIELDS = 4;
+
+    private TicksBlockCodec() {
+    }
+
+    /**
+     * @param data содержимое файла блока с позиции 0
+     * @return
+     */
+    static boolean isTicks(ByteBuffer data) {
+        return data.limit() > 0 && data.get(0) == HEADER;
+    }
+
+    /**
+     * @param values значения слотов подряд: open, high, low, close. Пустые слоты заполнены нулями
+     * @param slots  количество слотов
+     * @param codec
+     * @return null, если какая-то цена не кратна шагу и не может быть записана без потерь
+     */
+    static byte[] encode(double[] values, int slots, PriceCodec codec) {
+        int bitmapSize = (slots + 7) >>> 3;
+        byte[] bitmap = new byte[bitmapSize];
+        for (int slot = 0; slot < slots; slot++) {
+            if (Double.compare(values[slot * FIELDS], 0) > 0) {
+                bitmap[slot >>> 3] |= (byte) (0x80 >>> (slot & 7));
+            }
+        }
+        BigDecimal tickSize = codec.getTickSize();
+        byte[] unscaled = tickSize.unscaledValue().toByteArray();
+        ByteBuffer out = ByteBuffer.allocate(10 + unscaled.length + bitmapSize + slots * FIELDS * 10);
+        out.put(HEADER)
+                .putInt(slots)
+                .putInt(tickSize.scale())
+                .put((byte) unscaled.length)
+                .put(unscaled)
+                .put(bitmap);
+        long previousClose = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if ((bitmap[slot >>> 3] & (0x80 >>> (slot & 7))) == 0) {
+                continue;
+            }
+            int i = slot * FIELDS;
+            if (!codec.isExact(values[i]) || !codec.isExact(values[i + 1])
+                    || !codec.isExact(values[i + 2]) || !codec.isExact(values[i + 3])) {
+                return null;
+            }
+            long open = codec.toTicks(values[i]);
+            long high = codec.toTicks(values[i + 1]);
+            long low = codec.toTicks(values[i + 2]);
+            long close = codec.toTicks(values[i + 3]);
+            writeVarLong(out, open - previousClose);
+            writeVarLong(out, close - open);
+            writeVarLong(out, high - Math.max(open, close));
+            writeVarLong(out, Math.min(open, close) - low);
+            previousClose = close;
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * @param data содержимое файла блока с позиции 0
+     * @return Значения слотов подряд: open, high, low, close. Пустые слоты заполнены нулями
+     */
+    static double[] decode(ByteBuffer data) {
+        ByteBuffer in = data.duplicate();
+        in.position(0);
+        byte header = in.get();
+        if (header != HEADER) {
+            throw new RuntimeException("Unexpected block header: " + Integer.toHexString(header & 0xFF));
+        }
+        int slots = in.getInt();
+        int scale = in.getInt();
+        byte[] unscaled = new byte[in.get()];
+        in.get(unscaled);
+        PriceCodec codec = PriceCodec.of(new BigDecimal(new BigInteger(unscaled), scale));
+        byte[] bitmap = new byte[(slots + 7) >>> 3];
+        in.get(bitmap);
+        double[] values = new double[slots * FIELDS];
+        long previousClose = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if ((bitmap[slot >>> 3] & (0x80 >>> (slot & 7))) == 0) {
+                continue;
+            }
+            long open = previousClose + readVarLong(in);
+            long close = open + readVarLong(in);
+            long high = Math.max(open, close) + readVarLong(in);
+            long low = Math.min(open, close) - readVarLong(in);
+            int i = slot * FIELDS;
+            values[i] = codec.toPrice(open);
+            values[i + 1] = codec.toPrice(high);
+            values[i + 2] = codec.toPrice(low);
+            values[i + 3] = codec.toPrice(close);
+            previousClose = close;
+        }
+        return values;
+    }
+
+    private static void writeVarLong(ByteBuffer out, long value) {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -1,9 +1,11 @@
 package org.trade.rateslib.indicator;
 
 import org.trade.rateslib.model.Rate;
+import org.trade.rateslib.model.RateSeries;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.max;
@@ -29,8 +31,42 @@ public class Atr {
     public List<Double> calc(List<Rate> rates,
                              int length) {
         List<Double> result = new ArrayList<>();
-        for (int i = 0; i < rates.size() - length; i++) {
-            result.add(calc(rates, i, i + length - 1));
+        for (double value : calc(RateSeries.fromRates(rates), length)) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    /**
+     * Расчет ATR по последовательности баров. Сумма TR считается с компенсацией ошибки округления (Кэхэн),
+     * как {@link java.util.stream.DoubleStream#sum()} в {@link #calc(List, int, int)}
+     *
+     * @param rates
+     * @param fromIndex
+     * @param toIndex
+     * @return
+     */
+    public double calc(RateSeries rates,
+                       int fromIndex,
+                       int toIndex) {
+        double n = toIndex - fromIndex - 1.;
+        double trSum = 0;
+        double compensation = 0;
+        for (int i = fromIndex + 1; i < toIndex; i++) {
+            double y = calcTr(rates, i) - compensation;
+            double t = trSum + y;
+            compensation = (t - trSum) - y;
+            trSum = t;
+        }
+        trSum /= n;
+        return (trSum * (n - 1) + calcTr(rates, toIndex)) / n;
+    }
+
+    public double[] calc(RateSeries rates,
+                         int length) {
+        double[] result = new double[Math.max(rates.size() - length, 0)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = calc(rates, i, i + length - 1);
         }
         return result;
     }
@@ -44,4 +80,74 @@ public class Atr {
                 max(abs(cur.getHigh().doubleValue() - prevDayClose),
                         abs(cur.getLow().doubleValue() - prevDayClose)));
     }
+
+    private double calcTr(RateSeries rates,
+                          int i) {
+        double prevDayClose = rates.getClose(i - 1);
+        double high = rates.getHigh(i);
+        double low = rates.getLow(i);
+        return max(
+                abs(high - low),
+                max(abs(high - prevDayClose),
+                        abs(low - prevDayClose)));
+    }
+
+    /**
+     * Потоковый расчет ATR: одно значение на каждый новый бар за O(1).
+     * Значение совпадает с {@link #calc(List, int, int)} по последним length барам
+     */
+    public static class AtrCalculator {
+        private final double[] trs;
+        private final double n;
+        private int count;
+        private int position;
+        private double trSum;
+        private double prevClose = Double.NaN;
+
+        public AtrCalculator(int length) {
+            if (length < 3) {
+                throw new IllegalArgumentException("Length must be at least 3: " + length);
+            }
+            this.trs = new double[length - 2];
+            this.n = length - 2;
+        }
+
+        public Optional<Double> calc(Rate rate) {
+            return calc(rate.getHigh().doubleValue(), rate.getLow().doubleValue(), rate.getClose().doubleValue());
+        }
+
+        public Optional<Double> calc(double high,
+                                     double low,
+                                     double close) {
+            double prevDayClose = prevClose;
+            prevClose = close;
+            if (Double.isNaN(prevDayClose)) {
+                return Optional.empty();
+            }
+            double tr = max(
+                    abs(high - low),
+                    max(abs(high - prevDayClose),
+                            abs(low - prevDayClose)));
+            Optional<Double> result = count == trs.length
+                    ? Optional.of((trSum / n * (n - 1) + tr) / n)
+                    : Optional.empty();
+            if (count == trs.length) {
+                trSum -= trs[position];
+            } else {
+                count++;
+            }
+            trs[position] = tr;
+            trSum += tr;
+            position++;
+            if (position == trs.length) {
+                position = 0;
+                // пересчет суммы раз в length баров, чтобы не копилась ошибка округления
+                trSum = 0;
+                for (double v : trs) {
+                    trSum += v;
+                }
+            }
+            return result;
+        }
+    }
 }
@@ -1,9 +1,11 @@
 package org.trade.rateslib.indicator;
 
 import org.trade.rateslib.model.Rate;
+import org.trade.rateslib.model.RateSeries;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 public class BollingerBands {
 
@@ -27,6 +29,30 @@ public class BollingerBands {
 
     public List<BollingerBandsResult> calc(List<Rate> rates,
                                            int length) {
+        return calc(RateSeries.fromRates(rates), length);
+    }
+
+    public BollingerBandsResult calc(RateSeries rates,
+                                     int fromIndex,
+                                     int toIndex) {
+        double n = (double)(toIndex - fromIndex) + 1.0;
+        double center = 0.;
+        for (int i = fromIndex; i <= toIndex; i++) {
+            center += rates.getClose(i);
+        }
+        center /= n;
+        double sd = 0.;
+        for (int i = fromIndex; i <= toIndex; i++) {
+            double diff = rates.getClose(i) - center;
+            sd += diff * diff;
+        }
+        sd /= n;
+        sd = Math.sqrt(sd);
+        return new BollingerBands.BollingerBandsResult(center + 2.0 * sd, center, center - 2.0 * sd);
+    }
+
+    public List<BollingerBandsResult> calc(RateSeries rates,
+                                           int length) {
         List<BollingerBandsResult> result = new ArrayList<>();
         for (int i = 0; i < rates.size() - length; i++) {
             result.add(calc(rates, i, i + length - 1));
@@ -34,6 +60,63 @@ public class BollingerBands {
         return result;
     }
 
+    /**
+     * Потоковый расчет полос Боллинджера: одно значение на каждый новый бар за O(1).
+     * Среднее и дисперсия по последним length ценам закрытия поддерживаются скользящим алгоритмом Уэлфорда
+     */
+    public static class BollingerBandsCalculator {
+        private final double[] closes;
+        private int count;
+        private int position;
+        private double mean;
+        private double m2;
+
+        public BollingerBandsCalculator(int length) {
+            if (length <= 0) {
+                throw new IllegalArgumentException("Length must be positive: " + length);
+            }
+            this.closes = new double[length];
+        }
+
+        public Optional<BollingerBandsResult> calc(Rate rate) {
+            return calc(rate.getClose().doubleValue());
+        }
+
+        public Optional<BollingerBandsResult> calc(double close) {
+            if (count < closes.length) {
+                count++;
+                double delta = close - mean;
+                mean += delta / count;
+                m2 += delta * (close - mean);
+            } else {
+                double removed = closes[position];
+                double prevMean = mean;
+                mean += (close - removed) / count;
+                m2 += (close - removed) * (close - mean + removed - prevMean);
+            }
+            closes[position] = close;
+            position++;
+            if (position == closes.length) {
+                position = 0;
+                // пересчет среднего и суммы квадратов отклонений раз в length баров, чтобы не копилась ошибка округления
+                mean = 0;
+                for (double v : closes) {
+                    mean += v;
+                }
+                mean /= closes.length;
+                m2 = 0;
+                for (double v : closes) {
+                    m2 += (v - mean) * (v - mean);
+                }
+            }
+            if (count < closes.length) {
+                return Optional.empty();
+            }
+            double sd = Math.sqrt(Math.max(m2, 0.) / count);
+            return Optional.of(new BollingerBandsResult(mean + 2.0 * sd, mean, mean - 2.0 * sd));
+        }
+    }
+
     public static class BollingerBandsResult {
         private final double upper;
         private final double center;
@@ -2,24 +2,56 @@ package org.trade.rateslib.indicator;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 public class MovingAverage {
 
+    /**
+     * Значение средней на баре toIndex с длиной toIndex - fromIndex + 1.
+     * EMA считается так же, как {@link EmaCalculator}: от SMA первых length значений списка до toIndex,
+     * поэтому совпадает с соответствующим элементом {@link #calc(List, int, MovingAverageType)}
+     *
+     * @param values
+     * @param fromIndex
+     * @param toIndex
+     * @param type
+     * @return
+     */
     public double calc(List<Double> values,
                        int fromIndex,
                        int toIndex,
                        MovingAverageType type) {
-        double sum = 0;
-        for (int i = fromIndex; i <= toIndex; i++) {
-            sum += values.get(i);
+        switch (type) {
+            case SMA: {
+                double sum = 0;
+                for (int i = fromIndex; i <= toIndex; i++) {
+                    sum += values.get(i);
+                }
+                return sum / (toIndex - fromIndex + 1);
+            }
+            case EMA: {
+                EmaCalculator calculator = new EmaCalculator(toIndex - fromIndex + 1);
+                double ema = Double.NaN;
+                for (int i = 0; i <= toIndex; i++) {
+                    ema = calculator.calc(values.get(i)).orElse(Double.NaN);
+                }
+                return ema;
+            }
+
+            default:
+                throw new RuntimeException("Unexpected moving average type: " + type);
         }
-        return sum / (toIndex - fromIndex + 1);
     }
 
     public List<Double> calc(List<Double> values,
                              int length,
                              MovingAverageType type) {
         List<Double> result = new ArrayList<>();
+        if (type == MovingAverageType.EMA) {
+            MovingAverageCalculator calculator = MovingAverageCalculator.create(type, length);
+            values.forEach(value -> calculator.calc(value).ifPresent(result::add));
+            return result;
+        }
         for (int i = 0; i < values.size() - length + 1; i++) {
             result.add(calc(values, i, i + length - 1, type));
         }
@@ -28,8 +60,105 @@ public class MovingAverage {
 
     public enum MovingAverageType {
         SMA,
+        EMA,
 
         ;
     }
 
+    /**
+     * Потоковый расчет скользящей средней: одно значение на каждое новое входное значение за O(1)
+     */
+    public interface MovingAverageCalculator {
+
+        /**
+         * @param value
+         * @return Пусто, пока не накоплено length значений
+         */
+        Optional<Double> calc(double value);
+
+        static MovingAverageCalculator create(MovingAverageType type,
+                                              int length) {
+            switch (type) {
+                case SMA:
+                    return new SmaCalculator(length);
+                case EMA:
+                    return new EmaCalculator(length);
+
+                default:
+                    throw new RuntimeException("Unexpected moving average type: " + type);
+            }
+        }
+    }
+
+    public static class SmaCalculator implements MovingAverageCalculator {
+        private final double[] values;
+        private int count;
+        private int position;
+        private double sum;
+
+        public SmaCalculator(int length) {
+            if (length <= 0) {
+                throw new IllegalArgumentException("Length must be positive: " + length);
+            }
+            this.values = new double[length];
+        }
+
+        @Override
+        public Optional<Double> calc(double value) {
+            if (count == values.length) {
+                sum -= values[position];
+            } else {
+                count++;
+            }
+            values[position] = value;
+            sum += value;
+            position++;
+            if (position == values.length) {
+                position = 0;
+                // пересчет суммы раз в length значений, чтобы не копилась ошибка округления
+                sum = 0;
+                for (double v : values) {
+                    sum += v;
+                }
+            }
+            if (count < values.length) {
+                return Optional.empty();
+            }
+            return Optional.of(sum / values.length);
+        }
+    }
+
+    /**
+     * Экспоненциальная средняя с коэффициентом 2 / (length + 1). Начальное значение - SMA первых length значений
+     */
+    public static class EmaCalculator implements MovingAverageCalculator {
+        private final int length;
+        private final double alpha;
+        private int count;
+        private double ema;
+
+        public EmaCalculator(int length) {
+            if (length <= 0) {
+                throw new IllegalArgumentException("Length must be positive: " + length);
+            }
+            this.length = length;
+            this.alpha = 2. / (length + 1);
+        }
+
+        @Override
+        public Optional<Double> calc(double value) {
+            if (count < length) {
+                ema += value;
+                count++;
+                if (count < length) {
+                    return Optional.empty();
+                }
+                ema /= length;
+                return Optional.of(ema);
+            }
+            ema += alpha * (value - ema);
+            return Optional.of(ema);
+        }
+    }
+
 }
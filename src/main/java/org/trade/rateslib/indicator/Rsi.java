@@ -2,6 +2,7 @@ package org.trade.rateslib.indicator;
 
 import org.trade.rateslib.model.PriceType;
 import org.trade.rateslib.model.Rate;
+import org.trade.rateslib.model.RateSeries;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -26,6 +27,22 @@ public class Rsi {
         return result;
     }
 
+    /**
+     * Рассчитывает RSI по последовательности баров
+     *
+     * @return Значения по индексам баров, {@link Double#NaN} - для баров, на которых индикатор еще не рассчитан
+     */
+    public double[] calc(RateSeries rates,
+                         int period,
+                         PriceType priceType) {
+        double[] result = new double[rates.size()];
+        RsiCalculator rsiCalculator = new RsiCalculator(period);
+        for (int i = 0; i < rates.size(); i++) {
+            result[i] = rsiCalculator.calc(rates.getPrice(i, priceType)).orElse(Double.NaN);
+        }
+        return result;
+    }
+
     private double getPrice(Rate rate,
                             PriceType priceType) {
         return switch (priceType) {
@@ -0,0 +1,123 @@
+package org.trade.rateslib.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Objects;
+
+/**
+ * Представление цен инструмента целым числом шагов цены (тиков).
+ * Цена {@code p} хранится как {@code round(p / tickSize)}, обратный перевод дает ближайший к
+ * {@code ticks * tickSize} double, поэтому цены, кратные шагу, переводятся туда и обратно без потерь,
+ * а сравнение тиков совпадает со сравнением цен
+ *
+ * @author javonavi
+ */
+public class PriceCodec {
+
+    private final BigDecimal tickSize;
+    private final double tickSizeValue;
+    /**
+     * Количество тиков в единице цены, если оно целое (шаг вида 0.01, 0.00001), иначе 0
+     */
+    private final long ticksPerUnit;
+
+    private PriceCodec(BigDecimal tickSize) {
+        Objects.requireNonNull(tickSize, "tickSize is null");
+        if (tickSize.signum() <= 0) {
+            throw new RuntimeException("Unexpected tick size: " + tickSize);
+        }
+        this.tickSize = tickSize.stripTrailingZeros();
+        this.tickSizeValue = this.tickSize.doubleValue();
+        BigDecimal perUnit = BigDecimal.ONE.divide(this.tickSize, 0, RoundingMode.DOWN);
+        this.ticksPerUnit = perUnit.multiply(this.tickSize).compareTo(BigDecimal.ONE) == 0 ? perUnit.longValueExact() : 0;
+    }
+
+    public static PriceCodec of(BigDecimal tickSize) {
+        return new PriceCodec(tickSize);
+    }
+
+    public static PriceCodec of(String tickSize) {
+        return new PriceCodec(new BigDecimal(tickSize));
+    }
+
+    public BigDecimal getTickSize() {
+        return tickSize;
+    }
+
+    /**
+     * Переводит цену в тики с округлением до ближайшего
+     *
+     * @param price
+     * @return
+     */
+    public long toTicks(double price) {
+        if (ticksPerUnit > 0) {
+            return Math.round(price * ticksPerUnit);
+        }
+        return Math.round(price / tickSizeValue);
+    }
+
+    /**
+     * Переводит цену в тики с округлением до ближайшего
+     *
+     * @param price
+     * @return
+     */
+    public long toTicks(BigDecimal price) {
+        return price.divide(tickSize, 0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    /**
+     * @param ticks
+     * @return Ближайший к {@code ticks * tickSize} double
+     */
+    public double toPrice(long ticks) {
+        if (ticksPerUnit > 0) {
+            return ticks / (double) ticksPerUnit;
+        }
+        return toBigDecimal(ticks).doubleValue();
+    }
+
+    public BigDecimal toBigDecimal(long ticks) {
+        return tickSize.multiply(BigDecimal.valueOf(ticks));
+    }
+
+    /**
+     * Округляет цену до ближайшей кратной шагу
+     *
+     * @param price
+     * @return
+     */
+    public double round(double price) {
+        return toPrice(toTicks(price));
+    }
+
+    /**
+     * Проверяет, что цена кратна шагу и переводится в тики без потерь
+     *
+     * @param price
+     * @return
+     */
+    public boolean isExact(double price) {
+        return Double.compare(round(price), price) == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return tickSize.equals(((PriceCodec) o).tickSize);
+    }
+
+    @Override
+    public int hashCode() {
+        return tickSize.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "PriceCodec{" +
+                "tickSize=" + tickSize.toPlainString() +
+                '}';
+    }
+}
@@ -0,0 +1,261 @@
+package org.trade.rateslib.model;
+
+import org.trade.rateslib.data.RateConsumer;
+import org.trade.rateslib.data.RateEntity;
+import org.trade.rateslib.utils.TimeUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Последовательность баров в виде массивов примитивов (структура массивов).
+ * Время хранится в минутах от начала эпохи (см. {@link TimeUtils#toEpochMinutes}), бары отсортированы по времени.
+ * Срезы ({@link #slice}) не копируют данные, а ссылаются на те же массивы
+ *
+ * @author javonavi
+ */
+public class RateSeries {
+
+    private static final RateSeries EMPTY = new RateSeries(new long[0], new double[0], new double[0], new double[0], new double[0], 0, 0);
+
+    private final long[] epochMinutes;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final int offset;
+    private final int size;
+
+    private RateSeries(long[] epochMinutes,
+                       double[] open,
+                       double[] high,
+                       double[] low,
+                       double[] close,
+                       int offset,
+                       int size) {
+        this.epochMinutes = epochMinutes;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public static RateSeries empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Создает последовательность поверх переданных массивов без копирования
+     */
+    public static RateSeries of(long[] epochMinutes,
+                                double[] open,
+                                double[] high,
+                                double[] low,
+                                double[] close) {
+        int size = epochMinutes.length;
+        if (open.length != size || high.length != size || low.length != size || close.length != size) {
+            throw new IllegalArgumentException("Columns must have the same length");
+        }
+        return new RateSeries(epochMinutes, open, high, low, close, 0, size);
+    }
+
+    public static RateSeries fromEntities(Collection<RateEntity> rates) {
+        Builder builder = builder(rates.size());
+        rates.forEach(builder::add);
+        return builder.build();
+    }
+
+    public static RateSeries fromRates(Collection<Rate> rates) {
+        Builder builder = builder(rates.size());
+        rates.forEach(builder::add);
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getEpochMinutes(int index) {
+        return epochMinutes[offset + checkIndex(index)];
+    }
+
+    public LocalDateTime getTime(int index) {
+        return TimeUtils.fromEpochMinutes(getEpochMinutes(index));
+    }
+
+    public double getOpen(int index) {
+        return open[offset + checkIndex(index)];
+    }
+
+    public double getHigh(int index) {
+        return high[offset + checkIndex(index)];
+    }
+
+    public double getLow(int index) {
+        return low[offset + checkIndex(index)];
+    }
+
+    public double getClose(int index) {
+        return close[offset + checkIndex(index)];
+    }
+
+    public double getPrice(int index, PriceType priceType) {
+        switch (priceType) {
+            case OPEN:
+                return getOpen(index);
+            case HIGH:
+                return getHigh(index);
+            case LOW:
+                return getLow(index);
+            case CLOSE:
+                return getClose(index);
+            case HLC3:
+                return (getClose(index) + getHigh(index) + getLow(index)) / 3.;
+
+            default:
+                throw new RuntimeException("Unexpected price type: " + priceType);
+        }
+    }
+
+    /**
+     * Возвращает срез [fromIndex, toIndex) без копирования данных
+     */
+    public RateSeries slice(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size);
+        return new RateSeries(epochMinutes, open, high, low, close, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * Возвращает срез баров с временем в интервале [timeStart, timeEnd]
+     */
+    public RateSeries slice(LocalDateTime timeStart, LocalDateTime timeEnd) {
+        int from = indexOf(timeStart);
+        int to = indexOf(TimeUtils.fromEpochMinutes(TimeUtils.toEpochMinutes(timeEnd) + 1));
+        return slice(from, Math.max(from, to));
+    }
+
+    /**
+     * Возвращает индекс первого бара с временем не меньше заданного
+     *
+     * @param time
+     * @return Если такого бара нет, возвращает {@link #size()}
+     */
+    public int indexOf(LocalDateTime time) {
+        long key = TimeUtils.toEpochMinutes(time);
+        int pos = Arrays.binarySearch(epochMinutes, offset, offset + size, key);
+        return (pos >= 0 ? pos : -pos - 1) - offset;
+    }
+
+    public RateEntity toEntity(int index) {
+        RateEntity entity = new RateEntity();
+        entity.setTime(getTime(index));
+        entity.setOpen(getOpen(index));
+        entity.setHigh(getHigh(index));
+        entity.setLow(getLow(index));
+        entity.setClose(getClose(index));
+        return entity;
+    }
+
+    private int checkIndex(int index) {
+        return Objects.checkIndex(index, size);
+    }
+
+    @Override
+    public String toString() {
+        return "RateSeries{" +
+                "size=" + size +
+                (size > 0 ? ", from=" + getTime(0) + ", to=" + getTime(size - 1) : "") +
+                '}';
+    }
+
+    public static Builder builder() {
+        return builder(16);
+    }
+
+    public static Builder builder(int initialCapacity) {
+        return new Builder(initialCapacity);
+    }
+
+    /**
+     * Накапливает бары в растущих массивах. Бары должны добавляться в порядке возрастания времени
+     */
+    public static class Builder implements RateConsumer {
+        private long[] epochMinutes;
+        private double[] open;
+        private double[] high;
+        private double[] low;
+        private double[] close;
+        private int size;
+
+        private Builder(int initialCapacity) {
+            int capacity = Math.max(initialCapacity, 1);
+            this.epochMinutes = new long[capacity];
+            this.open = new double[capacity];
+            this.high = new double[capacity];
+            this.low = new double[capacity];
+            this.close = new double[capacity];
+        }
+
+        @Override
+        public void accept(long epochMinutes, double open, double high, double low, double close) {
+            if (size == this.epochMinutes.length) {
+                grow();
+            }
+            this.epochMinutes[size] = epochMinutes;
+            this.open[size] = open;
+            this.high[size] = high;
+            this.low[size] = low;
+            this.close[size] = close;
+            size++;
+        }
+
+        public Builder add(RateEntity rate) {
+            accept(TimeUtils.toEpochMinutes(rate.getTime()), rate.getOpen(), rate.getHigh(), rate.getLow(), rate.getClose());
+            return this;
+        }
+
+        public Builder add(Rate rate) {
+            accept(TimeUtils.toEpochMinutes(rate.getTime()),
+                    rate.getOpen().doubleValue(),
+                    rate.getHigh().doubleValue(),
+                    rate.getLow().doubleValue(),
+                    rate.getClose().doubleValue());
+            return this;
+        }
+
+        public Builder addAll(List<RateEntity> rates) {
+            rates.forEach(this::add);
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private void grow() {
+            int capacity = epochMinutes.length << 1;
+            epochMinutes = Arrays.copyOf(epochMinutes, capacity);
+            open = Arrays.copyOf(open, capacity);
+            high = Arrays.copyOf(high, capacity);
+            low = Arrays.copyOf(low, capacity);
+            close = Arrays.copyOf(close, capacity);
+        }
+
+        /**
+         * Создает последовательность поверх накопленных массивов без копирования.
+         * Бары, добавленные позже, в созданную последовательность не попадают
+         */
+        public RateSeries build() {
+            return new RateSeries(epochMinutes, open, high, low, close, 0, size);
+        }
+    }
+}
@@ -1,36 +1,187 @@
 package org.trade.rateslib.model;
 
-import java.util.Comparator;
-import java.util.LinkedList;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
 
+/**
+ * Скользящее окно из последних size баров.
+ * Бары хранятся в кольцевом буфере, экстремумы поддерживаются двумя монотонными деками,
+ * поэтому {@link #highest()} и {@link #lowest()} работают за амортизированное O(1).
+ * При равенстве значений возвращается более ранний бар.
+ * Цены сравниваются как целые ключи ({@link #toKey}): тики, если задан {@link PriceCodec},
+ * иначе биты double, упорядоченные как сами значения
+ */
 class RatesCollection {
-    private final LinkedList<Rate> rates = new LinkedList<>();
     private final int size;
+    private final PriceCodec priceCodec;
+    private final Rate[] rates;
+    private final long[] highs;
+    private final long[] lows;
+    /**
+     * Порядковые номера баров-кандидатов в максимумы (high убывает от головы к хвосту)
+     */
+    private final SequenceDeque highestDeque;
+    /**
+     * Порядковые номера баров-кандидатов в минимумы (low возрастает от головы к хвосту)
+     */
+    private final SequenceDeque lowestDeque;
+    /**
+     * Количество добавленных баров за все время, он же порядковый номер следующего бара
+     */
+    private long added;
 
     public RatesCollection(int size) {
+        this(size, null);
+    }
+
+    public RatesCollection(int size, PriceCodec priceCodec) {
         this.size = size;
+        this.priceCodec = priceCodec;
+        int capacity = Math.max(size, 1);
+        this.rates = new Rate[capacity];
+        this.highs = new long[capacity];
+        this.lows = new long[capacity];
+        this.highestDeque = new SequenceDeque(capacity);
+        this.lowestDeque = new SequenceDeque(capacity);
     }
 
     public int size() {
-        return rates.size();
+        return (int) Math.min(added, size);
     }
 
     public void add(Rate rate) {
-        rates.add(rate);
-        if (rates.size() > size) {
-            rates.removeFirst();
+        if (size <= 0) {
+            return;
+        }
+        long seq = added++;
+        int slot = slot(seq);
+        rates[slot] = rate;
+        highs[slot] = toKey(rate.getHigh());
+        lows[slot] = toKey(rate.getLow());
+
+        long oldest = added - size;
+        highestDeque.removeFirstBefore(oldest);
+        lowestDeque.removeFirstBefore(oldest);
+        while (!highestDeque.isEmpty() && highs[slot(highestDeque.peekLast())] < highs[slot]) {
+            highestDeque.removeLast();
+        }
+        highestDeque.addLast(seq);
+        while (!lowestDeque.isEmpty() && lows[slot(lowestDeque.peekLast())] > lows[slot]) {
+            lowestDeque.removeLast();
         }
+        lowestDeque.addLast(seq);
     }
 
     public Rate lowest() {
-        return rates.stream()
-                .min(Comparator.comparing(Rate::getLow))
-                .orElseThrow();
+        if (lowestDeque.isEmpty()) {
+            throw new NoSuchElementException("No value present");
+        }
+        return rates[slot(lowestDeque.peekFirst())];
     }
 
     public Rate highest() {
-        return rates.stream()
-                .max(Comparator.comparing(Rate::getHigh))
-                .orElseThrow();
+        if (highestDeque.isEmpty()) {
+            throw new NoSuchElementException("No value present");
+        }
+        return rates[slot(highestDeque.peekFirst())];
+    }
+
+    /**
+     * Возвращает ключ high бара {@link #highest()}
+     */
+    public long highestKey() {
+        highest();
+        return highs[slot(highestDeque.peekFirst())];
+    }
+
+    /**
+     * Возвращает ключ low бара {@link #lowest()}
+     */
+    public long lowestKey() {
+        lowest();
+        return lows[slot(lowestDeque.peekFirst())];
+    }
+
+    /**
+     * Переводит цену в целый ключ, сравнение ключей совпадает со сравнением цен
+     *
+     * @param price
+     * @return
+     */
+    public long toKey(BigDecimal price) {
+        return toKey(price.doubleValue());
+    }
+
+    /**
+     * Переводит цену в целый ключ, сравнение ключей совпадает со сравнением цен
+     *
+     * @param price
+     * @return
+     */
+    public long toKey(double price) {
+        if (priceCodec != null) {
+            return priceCodec.toTicks(price);
+        }
+        long bits = Double.doubleToLongBits(price + 0.0);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Возвращает бары окна от старого к новому
+     */
+    public List<Rate> toList() {
+        int count = size();
+        List<Rate> result = new ArrayList<>(count);
+        for (long seq = added - count; seq < added; seq++) {
+            result.add(rates[slot(seq)]);
+        }
+        return result;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % rates.length);
+    }
+
+    /**
+     * Дек порядковых номеров на кольцевом буфере фиксированной емкости
+     */
+    private static class SequenceDeque {
+        private final long[] values;
+        private int head;
+        private int count;
+
+        SequenceDeque(int capacity) {
+            this.values = new long[capacity];
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        long peekFirst() {
+            return values[head];
+        }
+
+        long peekLast() {
+            return values[(head + count - 1) % values.length];
+        }
+
+        void addLast(long value) {
+            values[(head + count) % values.length] = value;
+            count++;
+        }
+
+        void removeLast() {
+            count--;
+        }
+
+        void removeFirstBefore(long seq) {
+            while (count > 0 && values[head] < seq) {
+                head = (head + 1) % values.length;
+                count--;
+            }
+        }
     }
 }
@@ -1,5 +1,7 @@
 package org.trade.rateslib.model;
 
+import java.util.Objects;
+
 public class StockTimeframe {
 
     private final String stock;
@@ -26,6 +28,23 @@ public class StockTimeframe {
         return timeframe.getCode();
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        StockTimeframe that = (StockTimeframe) o;
+        return stock.equals(that.stock) && timeframe == that.timeframe;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(stock, timeframe);
+    }
+
     @Override
     public String toString() {
         return "StockTimeframe{" +
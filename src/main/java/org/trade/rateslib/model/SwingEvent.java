@@ -0,0 +1,175 @@
+package org.trade.rateslib.model;
+
+import org.trade.rateslib.data.SwingHandlerContextEntity;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Событие обработки бара {@link SwingsHandler}: подтвержденный свинг или изменение контекста
+ *
+ * @author javonavi
+ */
+public class SwingEvent {
+    private final Type type;
+    private final String stock;
+    private final String timeframe;
+    private final LocalDateTime time;
+    private final SwingPoint swingPoint;
+    private final String cause;
+    private final LocalDateTime newLastWorkingPoint;
+    private final SwingHandlerContextEntity context;
+
+    private SwingEvent(Type type,
+                       String stock,
+                       String timeframe,
+                       LocalDateTime time,
+                       SwingPoint swingPoint,
+                       String cause,
+                       LocalDateTime newLastWorkingPoint,
+                       SwingHandlerContextEntity context) {
+        this.type = Objects.requireNonNull(type, "type is null");
+        this.stock = Objects.requireNonNull(stock, "stock is null");
+        this.timeframe = Objects.requireNonNull(timeframe, "timeframe is null");
+        this.time = Objects.requireNonNull(time, "time is null");
+        this.swingPoint = swingPoint;
+        this.cause = cause;
+        this.newLastWorkingPoint = newLastWorkingPoint;
+        this.context = context;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getStock() {
+        return stock;
+    }
+
+    public String getTimeframe() {
+        return timeframe;
+    }
+
+    /**
+     * Возвращает время бара, на котором возникло событие
+     */
+    public LocalDateTime getTime() {
+        return time;
+    }
+
+    /**
+     * Возвращает подтвержденный свинг, только для {@link Type#SWING}
+     */
+    public SwingPoint getSwingPoint() {
+        return swingPoint;
+    }
+
+    /**
+     * Возвращает причину разворота, только для {@link Type#SWING}
+     */
+    public String getCause() {
+        return cause;
+    }
+
+    public LocalDateTime getNewLastWorkingPoint() {
+        return newLastWorkingPoint;
+    }
+
+    /**
+     * Возвращает копию контекста после обработки бара, только для {@link Type#CONTEXT}
+     */
+    public SwingHandlerContextEntity getContext() {
+        return context;
+    }
+
+    @Override
+    public String toString() {
+        return "SwingEvent{" +
+                "type=" + type +
+                ", stock=" + stock +
+                ", timeframe=" + timeframe +
+                ", time=" + time +
+                ", swingPoint=" + swingPoint +
+                ", cause='" + cause + '\'' +
+                ", newLastWorkingPoint=" + newLastWorkingPoint +
+                '}';
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public enum Type {
+        /**
+         * Подтвержден новый свинг
+         */
+        SWING,
+        /**
+         * Изменилось состояние контекста обработчика
+         */
+        CONTEXT
+    }
+
+    public static class Builder {
+        private Type type;
+        private String stock;
+        private String timeframe;
+        private LocalDateTime time;
+        private SwingPoint swingPoint;
+        private String cause;
+        private LocalDateTime newLastWorkingPoint;
+        private SwingHandlerContextEntity context;
+
+        public Builder withType(Type type) {
+            this.type = type;
+            return this;
+        }
+
+        public Builder withStock(String stock) {
+            this.stock = stock;
+            return this;
+        }
+
+        public Builder withTimeframe(String timeframe) {
+            this.timeframe = timeframe;
+            return this;
+        }
+
+        public Builder withTime(LocalDateTime time) {
+            this.time = time;
+            return this;
+        }
+
+        public Builder withSwingPoint(SwingPoint swingPoint) {
+            this.swingPoint = swingPoint;
+            return this;
+        }
+
+        public Builder withCause(String cause) {
+            this.cause = cause;
+            return this;
+        }
+
+        public Builder withNewLastWorkingPoint(LocalDateTime newLastWorkingPoint) {
+            this.newLastWorkingPoint = newLastWorkingPoint;
+            return this;
+        }
+
+        public Builder withContext(SwingHandlerContextEntity context) {
+            this.context = context;
+            return this;
+        }
+
+        public SwingEvent build() {
+            return new SwingEvent(
+                    type,
+                    stock,
+                    timeframe,
+                    time,
+                    swingPoint,
+                    cause,
+                    newLastWorkingPoint,
+                    context);
+        }
+    }
+}
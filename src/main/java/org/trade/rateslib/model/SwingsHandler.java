@@ -9,6 +9,7 @@ import org.trade.rateslib.data.impl.InMemoryRateRepository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -35,7 +36,9 @@ public class SwingsHandler {
     private final SwingsService swingsStorage;
     private final Logger log;
     private final Map<LocalDateTime, RateEntity> ratesCache = new HashMap<>();
-    private final RatesCollection ratesCollection;
+    private RatesCollection ratesCollection;
+    private Integer retentionMarginBars;
+    private PriceCodec priceCodec;
 
     public SwingsHandler(int reverseBarsCount,
                          String timeframe,
@@ -66,6 +69,130 @@ public class SwingsHandler {
         return context;
     }
 
+    /**
+     * Создает бинарный снимок состояния обработчика для последующего {@link #restore}.
+     * В снимок попадает контекст, окно баров для {@link #addRate(Rate)} и бары, начиная с более раннего из
+     * последней рабочей точки и последнего свинга (но не менее {@code 2 * reverseBarsCount + 12} последних баров).
+     * Более старые бары обработчик не запрашивает, поэтому восстановленный обработчик дает те же свинги
+     *
+     * @return
+     */
+    public synchronized byte[] snapshot() {
+        int barsCount = getRequiredBarsCount();
+        List<RateEntity> rates = new ArrayList<>(barsCount);
+        for (int i = barsCount - 1; i >= 0; i--) {
+            rates.add(inMemoryRateRepository.getByIndex(i));
+        }
+        return new SwingsHandlerCheckpoint(reverseBarsCount, timeframe, stock, context.clone(), ratesCollection.toList(), rates)
+                .toBytes();
+    }
+
+    /**
+     * Возвращает количество последних баров, к которым еще может обратиться обработчик:
+     * начиная с более раннего из последней рабочей точки и последнего свинга, но не менее
+     * {@code 2 * reverseBarsCount + 12}
+     */
+    private int getRequiredBarsCount() {
+        LocalDateTime windowStart = context.getLastWorkingPoint();
+        List<SwingEntity> latest = swingsStorage.getLatest(stock, timeframe, 1);
+        if (!latest.isEmpty() && (windowStart == null || latest.get(0).getTime().isBefore(windowStart))) {
+            windowStart = latest.get(0).getTime();
+        }
+        int barsCount = Math.min(inMemoryRateRepository.count(), reverseBarsCount * 2 + 12);
+        if (windowStart != null) {
+            barsCount = max(barsCount, inMemoryRateRepository.countByTimeGreaterThanEqual(windowStart));
+        }
+        return barsCount;
+    }
+
+    /**
+     * Включает удаление старых баров из внутренней истории обработчика.
+     * Хранятся бары, нужные для поиска разворота (см. {@link #snapshot()}), плюс retentionMarginBars баров запаса.
+     * Удаление выполняется пачками, когда история вырастает вдвое, поэтому в среднем стоит O(1) на бар
+     *
+     * @param retentionMarginBars запас баров; null - история не ограничивается (по умолчанию)
+     */
+    public synchronized void setRetentionMarginBars(Integer retentionMarginBars) {
+        if (retentionMarginBars != null && retentionMarginBars < 0) {
+            throw new IllegalArgumentException("Retention margin must not be negative: " + retentionMarginBars);
+        }
+        this.retentionMarginBars = retentionMarginBars;
+    }
+
+    public Integer getRetentionMarginBars() {
+        return retentionMarginBars;
+    }
+
+    /**
+     * Задает шаг цены инструмента. Цены сравниваются в тиках: окно {@link #addRate(Rate)} хранит high и low
+     * целыми числами, а {@link #addRate(RateEntity)} переводит цены бара в тики один раз и сравнивает их как long,
+     * в контекст и свинги попадают цены, округленные до шага. Для цен, уже кратных шагу, свинги не меняются.
+     * Шаг не входит в {@link #snapshot()} и задается заново после {@link #restore}
+     *
+     * @param priceCodec null - цены сравниваются как есть (по умолчанию)
+     */
+    public synchronized void setPriceCodec(PriceCodec priceCodec) {
+        RatesCollection window = new RatesCollection(reverseBarsCount, priceCodec);
+        ratesCollection.toList().forEach(window::add);
+        this.ratesCollection = window;
+        this.priceCodec = priceCodec;
+        inMemoryRateRepository.setPriceCodec(priceCodec);
+    }
+
+    public PriceCodec getPriceCodec() {
+        return priceCodec;
+    }
+
+    /**
+     * Возвращает количество баров во внутренней истории обработчика
+     */
+    int getHistorySize() {
+        return inMemoryRateRepository.count();
+    }
+
+    private void evictOldRates() {
+        if (retentionMarginBars == null) {
+            return;
+        }
+        int count = inMemoryRateRepository.count();
+        if (count < 2 * (reverseBarsCount * 2 + 12 + retentionMarginBars)) {
+            return;
+        }
+        int retainedCount = getRequiredBarsCount() + retentionMarginBars;
+        if (count < 2 * retainedCount) {
+            return;
+        }
+        LocalDateTime keepFrom = inMemoryRateRepository.getByIndex(retainedCount - 1).getTime();
+        int deleted = inMemoryRateRepository.deleteByTimeLessThan(keepFrom);
+        ratesCache.keySet().removeIf(time -> time.isBefore(keepFrom));
+        log.debug("Evicted old rates: count={}, keepFrom={}", deleted, keepFrom);
+    }
+
+    /**
+     * Восстанавливает обработчик из снимка {@link #snapshot()}.
+     * Свинги обработчик читает из swingsStorage, они должны быть сохранены к моменту снимка
+     *
+     * @param checkpoint
+     * @param swingsStorage
+     * @param logger
+     * @return
+     */
+    public static SwingsHandler restore(byte[] checkpoint,
+                                        SwingsService swingsStorage,
+                                        Logger logger) {
+        SwingsHandlerCheckpoint data = SwingsHandlerCheckpoint.fromBytes(checkpoint);
+        Integer contextReverseBarsCount = data.context.getReverseBarsCount();
+        SwingsHandler handler = new SwingsHandler(data.reverseBarsCount, data.timeframe, data.stock, data.context,
+                swingsStorage, logger);
+        data.context.setReverseBarsCount(contextReverseBarsCount);
+        data.window.forEach(handler.ratesCollection::add);
+        for (RateEntity rate : data.rates) {
+            handler.inMemoryRateRepository.insert(rate);
+            handler.ratesCache.put(rate.getTime(), rate);
+        }
+        return handler;
+    }
+
     public synchronized Optional<SwingPointWithData> addRate(Rate rate) {
         if (ratesCollection.size() < reverseBarsCount) {
             ratesCollection.add(rate);
@@ -73,33 +200,35 @@ public class SwingsHandler {
         }
         Rate highRate = ratesCollection.highest();
         Rate lowRate = ratesCollection.lowest();
-        double high = highRate.getHigh().doubleValue();
-        double low = lowRate.getLow().doubleValue();
+        long high = ratesCollection.highestKey();
+        long low = ratesCollection.lowestKey();
 
         ratesCollection.add(rate);
+        long rateHigh = ratesCollection.toKey(rate.getHigh());
+        long rateLow = ratesCollection.toKey(rate.getLow());
 
         if (context.getLastSwing() == null) {
-            if (rate.getHigh().doubleValue() > high) {
+            if (rateHigh > high) {
                 SwingPoint swing = compileSwing(lowRate, SwingDirection.UP);
                 context.setHighRate(rate);
                 return Optional.of(new SwingPointWithData(swing, "", swing.getTime()));
-            } else if (rate.getLow().doubleValue() < low) {
+            } else if (rateLow < low) {
                 SwingPoint swing = compileSwing(highRate, SwingDirection.DOWN);
                 context.setLowRate(rate);
                 return Optional.of(new SwingPointWithData(swing, "", swing.getTime()));
             }
         } else if (context.getLastSwing().getDirection() == SwingDirection.UP) {
-            if (rate.getHigh().doubleValue() > context.getHighRate().getHigh().doubleValue()) {
+            if (rateHigh > ratesCollection.toKey(context.getHighRate().getHigh())) {
                 context.setHighRate(rate);
-            } else if (rate.getLow().doubleValue() < low) {
+            } else if (rateLow < low) {
                 SwingPoint swing = compileSwing(context.getHighRate(), SwingDirection.DOWN);
                 context.setLowRate(rate);
                 return Optional.of(new SwingPointWithData(swing, "", swing.getTime()));
             }
         } else {
-            if (rate.getLow().doubleValue() < context.getLowRate().getLow().doubleValue()) {
+            if (rateLow < ratesCollection.toKey(context.getLowRate().getLow())) {
                 context.setLowRate(rate);
-            } else if (rate.getHigh().doubleValue() > high) {
+            } else if (rateHigh > high) {
                 SwingPoint swing = compileSwing(context.getLowRate(), SwingDirection.UP);
                 context.setHighRate(rate);
                 return Optional.of(new SwingPointWithData(swing, "", swing.getTime()));
@@ -109,6 +238,20 @@ public class SwingsHandler {
         return Optional.empty();
     }
 
+    /**
+     * Переводит цену в целый ключ для сравнения: тики, если задан шаг цены
+     */
+    private long key(double price) {
+        return ratesCollection.toKey(price);
+    }
+
+    /**
+     * Округляет цену до шага, если он задан
+     */
+    private double round(double price) {
+        return priceCodec == null ? price : priceCodec.round(price);
+    }
+
     private SwingPoint compileSwing(Rate rate,
                                     SwingDirection direction) {
         SwingPoint swing = SwingPoint.builder()
@@ -127,6 +270,7 @@ public class SwingsHandler {
         log.debug("Add rate: rate={}", rate);
         inMemoryRateRepository.insert(rate);
         ratesCache.put(rate.getTime(), rate);
+        evictOldRates();
 
         boolean debug = false;//LocalDateTime.parse("2021-01-08T06:00").equals(rate.getTime());
 
@@ -136,13 +280,20 @@ public class SwingsHandler {
 
         Optional<SwingPointWithData> result = Optional.empty();
 
+        long highKey = key(rate.getHigh());
+        long lowKey = key(rate.getLow());
+        long openKey = key(rate.getOpen());
+        long closeKey = key(rate.getClose());
+        double high = priceCodec == null ? rate.getHigh() : priceCodec.toPrice(highKey);
+        double low = priceCodec == null ? rate.getLow() : priceCodec.toPrice(lowKey);
+
         if (context.getLocalHigh() == null) {
-            context.setLocalHigh(rate.getHigh());
-            context.setCurrentHigh(rate.getHigh());
+            context.setLocalHigh(high);
+            context.setCurrentHigh(high);
         }
         if (context.getLocalLow() == null) {
-            context.setLocalLow(rate.getLow());
-            context.setCurrentLow(rate.getLow());
+            context.setLocalLow(low);
+            context.setCurrentLow(low);
         }
 
         log.trace("Latest: workingPoint={}, workingPrice={}", context.getLastWorkingPoint(), context.getLastWorkingPrice());
@@ -152,8 +303,8 @@ public class SwingsHandler {
         if (context.getLastDownSwing() != null && context.getLastUpSwing() != null) {
             List<SwingEntity> latest = swingsStorage.getLatest(stock, timeframe, 1);
             if (UP == context.getCurrentDirection()
-                    && Double.compare(rate.getLow(), context.getLastDownSwing()) < 0
-                    && Double.compare(rate.getHigh(), context.getLastUpSwing()) < 0) {
+                    && lowKey < key(context.getLastDownSwing())
+                    && highKey < key(context.getLastUpSwing())) {
                 correctNewLastWorkingPoint(DOWN, rate);
                 if (latest.isEmpty() || !latest.get(0).getTime().isEqual(context.getLastWorkingPoint())) {
                     result = reverse(rate.getTime(), DOWN, "byLastSwing DOWN", inMemoryRateRepository);
@@ -161,11 +312,11 @@ public class SwingsHandler {
                     log.debug("Skip reverse by swing: swingTime={}, lastWorkingPoint={}", latest.get(0).getTime(), context.getLastWorkingPoint());
                 }
                 context.setLastWorkingPoint(rate.getTime());
-                context.setCurrentLow(rate.getLow());
+                context.setCurrentLow(low);
                 alreadyReverse = true;
             } else if (DOWN == context.getCurrentDirection()
-                    && Double.compare(rate.getHigh(), context.getLastUpSwing()) > 0
-                    && Double.compare(rate.getLow(), context.getLastDownSwing()) > 0) {
+                    && highKey > key(context.getLastUpSwing())
+                    && lowKey > key(context.getLastDownSwing())) {
                 correctNewLastWorkingPoint(UP, rate);
                 if (latest.isEmpty() || !latest.get(0).getTime().isEqual(context.getLastWorkingPoint())) {
                     result = reverse(rate.getTime(), UP, "byLastSwing UP", inMemoryRateRepository);
@@ -173,46 +324,46 @@ public class SwingsHandler {
                     log.debug("Skip reverse by swing: swingTime={}, lastWorkingPoint={}", latest.get(0).getTime(), context.getLastWorkingPoint());
                 }
                 context.setLastWorkingPoint(rate.getTime());
-                context.setCurrentHigh(rate.getHigh());
+                context.setCurrentHigh(high);
                 alreadyReverse = true;
             }
         }
 
         // Обновили оба максимума
-        if (!alreadyReverse && Double.compare(rate.getHigh(), context.getLocalHigh()) > 0 &&
-                Double.compare(rate.getLow(), context.getLocalLow()) < 0 && context.getCurrentDirection() != null) {
+        if (!alreadyReverse && highKey > key(context.getLocalHigh()) &&
+                lowKey < key(context.getLocalLow()) && context.getCurrentDirection() != null) {
             log.trace("Update extremums: context={}", context);
-            if ((UP == context.getCurrentDirection() && context.getCurrentHigh().compareTo(rate.getHigh()) < 0 ||
-                    (DOWN == context.getCurrentDirection() && context.getCurrentLow().compareTo(rate.getLow()) > 0))) {
+            if ((UP == context.getCurrentDirection() && key(context.getCurrentHigh()) < highKey ||
+                    (DOWN == context.getCurrentDirection() && key(context.getCurrentLow()) > lowKey))) {
                 context.setLastWorkingPoint(rate.getTime());
                 log.trace("Set last working point: type=1.1, time={}", rate.getTime());
             }
 
-            if (UP == context.getCurrentDirection() && Double.compare(context.getCurrentHigh(), rate.getHigh()) < 0) {
-                if (!(context.getGlobalLow().compareTo(rate.getLow()) > 0 && rate.getClose().compareTo(rate.getOpen()) < 0) &&
-                        context.getCurrentHigh().compareTo(rate.getHigh()) < 0) {
-                    if (context.getLastWorkingPrice() == null || Double.compare(rate.getHigh(), context.getLastWorkingPrice()) > 0) {
+            if (UP == context.getCurrentDirection() && key(context.getCurrentHigh()) < highKey) {
+                if (!(key(context.getGlobalLow()) > lowKey && closeKey < openKey) &&
+                        key(context.getCurrentHigh()) < highKey) {
+                    if (context.getLastWorkingPrice() == null || highKey > key(context.getLastWorkingPrice())) {
                         context.setLastWorkingPoint(rate.getTime());
-                        context.setLastWorkingPrice(rate.getHigh());
+                        context.setLastWorkingPrice(high);
                         log.trace("Set last working point: type=1.2, time={}", rate.getTime());
                     }
-                    context.setCurrentHigh(rate.getHigh());
+                    context.setCurrentHigh(high);
                 }
-            } else if (DOWN == context.getCurrentDirection() && Double.compare(context.getCurrentLow(), rate.getLow()) > 0) {
+            } else if (DOWN == context.getCurrentDirection() && key(context.getCurrentLow()) > lowKey) {
                 if (context.getGlobalHigh() != null &&
-                        !(context.getGlobalHigh().compareTo(rate.getHigh()) < 0 &&
-                                rate.getClose().compareTo(rate.getOpen()) > 0) &&
-                        context.getCurrentLow().compareTo(rate.getLow()) > 0) {
-                    if (context.getLastWorkingPrice() == null || Double.compare(rate.getLow(), context.getLastWorkingPrice()) < 0) {
+                        !(key(context.getGlobalHigh()) < highKey &&
+                                closeKey > openKey) &&
+                        key(context.getCurrentLow()) > lowKey) {
+                    if (context.getLastWorkingPrice() == null || lowKey < key(context.getLastWorkingPrice())) {
                         context.setLastWorkingPoint(rate.getTime());
-                        context.setLastWorkingPrice(rate.getLow());
+                        context.setLastWorkingPrice(low);
                         log.trace("Set last working point: type=1.3, time={}", rate.getTime());
                     }
-                    context.setCurrentLow(rate.getLow());
+                    context.setCurrentLow(low);
                 }
-            } else if ((UP == context.getCurrentDirection() && context.getCurrentHigh().compareTo(rate.getHigh()) < 0) ||
-                    (DOWN == context.getCurrentDirection() && context.getCurrentLow().compareTo(rate.getLow()) > 0)) {
-                setLastWorkingPrice(rate);
+            } else if ((UP == context.getCurrentDirection() && key(context.getCurrentHigh()) < highKey) ||
+                    (DOWN == context.getCurrentDirection() && key(context.getCurrentLow()) > lowKey)) {
+                setLastWorkingPrice(high, low);
                 context.setLastWorkingPoint(rate.getTime());
                 log.trace("Set last working point: type=1.4, time={}", rate.getTime());
             }
@@ -220,8 +371,8 @@ public class SwingsHandler {
             context.setWaitingReverseCount(context.getReverseBarsCount() + 1);
 
             if (context.getReverseBarsCount() >= reverseBarsCount) {
-                if ((UP == context.getCurrentDirection() && !(context.getGlobalHigh().compareTo(rate.getHigh()) > 0)) ||
-                        (DOWN == context.getCurrentDirection() && !(context.getGlobalLow().compareTo(rate.getLow()) < 0))) {
+                if ((UP == context.getCurrentDirection() && !(key(context.getGlobalHigh()) > highKey)) ||
+                        (DOWN == context.getCurrentDirection() && !(key(context.getGlobalLow()) < lowKey))) {
                     log.trace("lastWorkingPoint={}, currentDirection={}", context.getLastWorkingPoint(), context.getCurrentDirection());
                     boolean updateWorkingPoint = true;
                     List<SwingEntity> latest = swingsStorage.getLatest(stock, timeframe, 1);
@@ -239,61 +390,61 @@ public class SwingsHandler {
                         }
                     }
                     if (updateWorkingPoint) {
-                        setLastWorkingPrice(rate);
+                        setLastWorkingPrice(high, low);
                         context.setLastWorkingPoint(rate.getTime());
                         log.trace("Set last working point: type=1.5, time={}", rate.getTime());
                     }
                 }
             }
 
-            if (UP == context.getCurrentDirection() && rate.getClose().compareTo(rate.getOpen()) < 0 &&
-                    context.getCurrentHigh().compareTo(rate.getHigh()) < 0) {
-                setLastWorkingPrice(rate);
+            if (UP == context.getCurrentDirection() && closeKey < openKey &&
+                    key(context.getCurrentHigh()) < highKey) {
+                setLastWorkingPrice(high, low);
                 context.setLastWorkingPoint(rate.getTime());
                 log.trace("Set last working point: type=1.6, time={}", rate.getTime());
-                context.setCurrentHigh(rate.getHigh());
-            } else if (DOWN == context.getCurrentDirection() && rate.getClose().compareTo(rate.getOpen()) > 0 &&
-                    context.getCurrentLow().compareTo(rate.getLow()) > 0) {
-                setLastWorkingPrice(rate);
+                context.setCurrentHigh(high);
+            } else if (DOWN == context.getCurrentDirection() && closeKey > openKey &&
+                    key(context.getCurrentLow()) > lowKey) {
+                setLastWorkingPrice(high, low);
                 context.setLastWorkingPoint(rate.getTime());
                 log.trace("Set last working point: type=1.7, time={}", rate.getTime());
-                context.setCurrentLow(rate.getLow());
+                context.setCurrentLow(low);
             }
 
-            context.setCurrentHigh(max(rate.getHigh(), context.getCurrentHigh()));
-            context.setCurrentLow(max(rate.getLow(), context.getCurrentLow()));
+            context.setCurrentHigh(max(high, context.getCurrentHigh()));
+            context.setCurrentLow(max(low, context.getCurrentLow()));
         }
         // Обновили глобальный максимум
-        else if (!alreadyReverse && context.getGlobalHigh() != null && Double.compare(rate.getHigh(), context.getGlobalHigh()) > 0 &&
-                DOWN == context.getCurrentDirection() && !(context.getCurrentLow().compareTo(rate.getLow()) > 0)) {
+        else if (!alreadyReverse && context.getGlobalHigh() != null && highKey > key(context.getGlobalHigh()) &&
+                DOWN == context.getCurrentDirection() && !(key(context.getCurrentLow()) > lowKey)) {
             log.trace("Update globalHigh");
             context.setLastWorkingPoint(rate.getTime());
             log.trace("Set last working point: type=2.1, time={}", rate.getTime());
             alreadyReverse = true;
-            context.setCurrentHigh(rate.getHigh());
+            context.setCurrentHigh(high);
             result = reverse(rate.getTime(), UP, "Update global MAX", inMemoryRateRepository);
         }
         // Обновили глобальный минимум
-        else if (!alreadyReverse && context.getGlobalLow() != null && Double.compare(rate.getLow(), context.getGlobalLow()) < 0 &&
-                UP == context.getCurrentDirection() && !(context.getCurrentHigh().compareTo(rate.getHigh()) < 0)) {
+        else if (!alreadyReverse && context.getGlobalLow() != null && lowKey < key(context.getGlobalLow()) &&
+                UP == context.getCurrentDirection() && !(key(context.getCurrentHigh()) < highKey)) {
             log.trace("Update globalLow");
             context.setLastWorkingPoint(rate.getTime());
             log.trace("Set last working point: type=3.1, time={}", rate.getTime());
             alreadyReverse = true;
-            context.setCurrentLow(rate.getLow());
+            context.setCurrentLow(low);
             result = reverse(rate.getTime(), DOWN, "Update global MIN", inMemoryRateRepository);
         }
         // Обновили только локальный максимум
-        else if (!alreadyReverse && Double.compare(rate.getHigh(), context.getLocalHigh()) > 0 &&
-                !(Double.compare(rate.getLow(), context.getLocalLow()) < 0)) {
+        else if (!alreadyReverse && highKey > key(context.getLocalHigh()) &&
+                !(lowKey < key(context.getLocalLow()))) {
             log.trace("Update LocalHigh: currentDirection={}", context.getCurrentDirection());
 
             if (UP == context.getCurrentDirection()) {
-                if (Double.compare(rate.getHigh(), context.getCurrentHigh()) > 0) {
+                if (highKey > key(context.getCurrentHigh())) {
                     context.setWaitingReverseCount(0);
-                    setLastWorkingPrice(rate);
+                    setLastWorkingPrice(high, low);
                     context.setLastWorkingPoint(rate.getTime());
-                    context.setCurrentHigh(rate.getHigh());
+                    context.setCurrentHigh(high);
                     log.trace("Set last working point: type=4.1, time={}, newCurrentHigh={}", rate.getTime(), context.getCurrentHigh());
                 }
             } else if (DOWN == context.getCurrentDirection()) {
@@ -305,7 +456,7 @@ public class SwingsHandler {
                     alreadyReverse = true;
                 } else if (context.getLastWorkingPrice() != null && context.getLastDownSwing() != null &&
                         (context.getLastDownSwing() - context.getLastWorkingPrice()) * 0.5
-                                <= rate.getHigh() - context.getLastWorkingPrice()
+                                <= high - context.getLastWorkingPrice()
                         && context.getWaitingReverseCount() >= reverseBarsCount - 1) {
                     int movingSize = inMemoryRateRepository.getShift(context.getLastWorkingPoint()) -
                             inMemoryRateRepository.getShift(rate.getTime());
@@ -315,7 +466,7 @@ public class SwingsHandler {
                         Optional<SwingEntity> swing2 = swingsStorage.getSwing(stock, timeframe, swingsCount - 2);
                         if (swing1.isPresent() && swing2.isPresent()) {
                             double swingSize = abs(swing1.get().getPrice() - context.getLastWorkingPrice());
-                            double diff = abs(rate.getLow() - swing2.get().getPrice());
+                            double diff = abs(low - swing2.get().getPrice());
                             if (swingSize > 0 && diff / swingSize < 0.2) {
                                 result = reverse(rate.getTime(), UP, "fastMoving UP", inMemoryRateRepository);
                                 alreadyReverse = true;
@@ -328,16 +479,16 @@ public class SwingsHandler {
             }
         }
         // Обновили только локальный минимум
-        else if (!alreadyReverse && !(Double.compare(rate.getHigh(), context.getLocalHigh()) > 0) &&
-                Double.compare(rate.getLow(), context.getLocalLow()) < 0) {
+        else if (!alreadyReverse && !(highKey > key(context.getLocalHigh())) &&
+                lowKey < key(context.getLocalLow())) {
             log.trace("Update LocalLow: currentDirection={}", context.getCurrentDirection());
 
             if (DOWN == context.getCurrentDirection()) {
-                if (Double.compare(rate.getLow(), context.getCurrentLow()) < 0) {
+                if (lowKey < key(context.getCurrentLow())) {
                     context.setWaitingReverseCount(0);
-                    setLastWorkingPrice(rate);
+                    setLastWorkingPrice(high, low);
                     context.setLastWorkingPoint(rate.getTime());
-                    context.setCurrentLow(rate.getLow());
+                    context.setCurrentLow(low);
                     log.trace("Set last working point: type=5.1, time={}, newCurrentLow={}", rate.getTime(), context.getCurrentLow());
                 }
             } else if (UP == context.getCurrentDirection()) {
@@ -349,7 +500,7 @@ public class SwingsHandler {
                     alreadyReverse = true;
                 } else if (context.getLastWorkingPrice() != null && context.getLastUpSwing() != null &&
                         (context.getLastWorkingPrice() - context.getLastUpSwing()) * 0.5
-                                <= context.getLastWorkingPrice() - rate.getLow()
+                                <= context.getLastWorkingPrice() - low
                         && context.getWaitingReverseCount() >= reverseBarsCount - 1) {
                     int movingSize = inMemoryRateRepository.getShift(context.getLastWorkingPoint()) -
                             inMemoryRateRepository.getShift(rate.getTime());
@@ -359,7 +510,7 @@ public class SwingsHandler {
                         Optional<SwingEntity> swing2 = swingsStorage.getSwing(stock, timeframe, swingsCount - 2);
                         if (swing1.isPresent() && swing2.isPresent()) {
                             double swingSize = abs(swing1.get().getPrice() - context.getLastWorkingPrice());
-                            double diff = abs(rate.getLow() - swing2.get().getPrice());
+                            double diff = abs(low - swing2.get().getPrice());
                             if (swingSize > 0 && diff / swingSize < 0.2) {
                                 result = reverse(rate.getTime(), DOWN, "fastMoving DOWN", inMemoryRateRepository);
                                 alreadyReverse = true;
@@ -373,7 +524,7 @@ public class SwingsHandler {
         }
 
         if (!alreadyReverse && DOWN == context.getCurrentDirection()
-                && Double.compare(rate.getHigh(), context.getLocalHigh()) > 0) {
+                && highKey > key(context.getLocalHigh())) {
             Optional<RateEntity> prevRate = inMemoryRateRepository.getRate(reverseBarsCount);
             if (prevRate.isPresent()
                     && inMemoryRateRepository.getHighestRate(prevRate.get().getTime(), rate.getTime()).filter(r -> r.getTime().equals(rate.getTime())).isPresent()
@@ -384,7 +535,7 @@ public class SwingsHandler {
         }
 
         if (!alreadyReverse && UP == context.getCurrentDirection()
-                && Double.compare(rate.getLow(), context.getLocalLow()) < 0) {
+                && lowKey < key(context.getLocalLow())) {
             Optional<RateEntity> prevRate = inMemoryRateRepository.getRate(reverseBarsCount);
             if (prevRate.isPresent()
                     && inMemoryRateRepository.getLowestRate(prevRate.get().getTime(), rate.getTime()).filter(r -> r.getTime().equals(rate.getTime())).isPresent()
@@ -394,8 +545,8 @@ public class SwingsHandler {
             }
         }
 
-        context.setLocalHigh(rate.getHigh());
-        context.setLocalLow(rate.getLow());
+        context.setLocalHigh(high);
+        context.setLocalLow(low);
 
         if (!alreadyReverse
                 && context.getCurrentDirection() != null
@@ -459,14 +610,14 @@ public class SwingsHandler {
                 if (latestRates.size() > reverseBarsCount) {
                     for (int i = 0; i < latestRates.size() - 1; i++) {
                         RateEntity checkedRate = latestRates.get(i);
-                        if (last.getHigh() - last.getLow() < (checkedRate.getHigh() - checkedRate.getLow()) * 2) {
+                        if (round(last.getHigh()) - round(last.getLow()) < (round(checkedRate.getHigh()) - round(checkedRate.getLow())) * 2) {
                             isReverse = false;
                             break;
                         }
-                        if (UP == context.getCurrentDirection() && last.getLow() >= checkedRate.getLow()) {
+                        if (UP == context.getCurrentDirection() && key(last.getLow()) >= key(checkedRate.getLow())) {
                             isReverse = false;
                             break;
-                        } else if (DOWN == context.getCurrentDirection() && last.getHigh() <= checkedRate.getHigh()) {
+                        } else if (DOWN == context.getCurrentDirection() && key(last.getHigh()) <= key(checkedRate.getHigh())) {
                             isReverse = false;
                             break;
                         }
@@ -479,7 +630,7 @@ public class SwingsHandler {
                             alreadyReverse = true;
                         }
 
-                        context.setLastWorkingPrice(newDirection == UP ? rate.getLow() : rate.getHigh());
+                        context.setLastWorkingPrice(newDirection == UP ? low : high);
                         context.setLastWorkingPoint(rate.getTime());
                     }
                 }
@@ -499,17 +650,19 @@ public class SwingsHandler {
         if (latest.get(0).getDirection() == UP) {
             Optional<RateEntity> re = inMemoryRateRepository.getHighestRate(latest.get(0).getTime().plusMinutes(10), lastRateTime);
             if (re.isPresent()) {
-                log.debug("correctionLocalHigh: newHigh={}", re.get().getHigh());
-                context.setLocalHigh(re.get().getHigh());
-                context.setLastWorkingPrice(re.get().getHigh());
+                double high = round(re.get().getHigh());
+                log.debug("correctionLocalHigh: newHigh={}", high);
+                context.setLocalHigh(high);
+                context.setLastWorkingPrice(high);
                 context.setLastWorkingPoint(re.get().getTime());
             }
         } else {
             Optional<RateEntity> re = inMemoryRateRepository.getLowestRate(latest.get(0).getTime().plusMinutes(10), lastRateTime);
             if (re.isPresent()) {
-                log.debug("correctionLocalLow: newLow={}", re.get().getLow());
-                context.setLocalLow(re.get().getLow());
-                context.setLastWorkingPrice(re.get().getLow());
+                double low = round(re.get().getLow());
+                log.debug("correctionLocalLow: newLow={}", low);
+                context.setLocalLow(low);
+                context.setLastWorkingPrice(low);
                 context.setLastWorkingPoint(re.get().getTime());
             }
         }
@@ -527,9 +680,9 @@ public class SwingsHandler {
         extremumRate.ifPresent(rt -> {
             context.setLastWorkingPoint(rt.getTime());
             if (direction == UP) {
-                context.setLastWorkingPrice(rt.getLow());
+                context.setLastWorkingPrice(round(rt.getLow()));
             } else {
-                context.setLastWorkingPrice(rt.getHigh());
+                context.setLastWorkingPrice(round(rt.getHigh()));
             }
         });
     }
@@ -541,16 +694,16 @@ public class SwingsHandler {
 
         RateEntity checkedRate = inMemoryRateRepository.getRate(reverseBarsCount)
                 .orElseThrow();
-        double high = checkedRate.getHigh();
-        double low = checkedRate.getLow();
-        double lowest = low;
+        long high = key(checkedRate.getHigh());
+        long low = key(checkedRate.getLow());
+        long lowest = low;
         LocalDateTime time = checkedRate.getTime();
 
         for (int i = 0; i < reverseBarsCount; i++) {
             RateEntity curRate = inMemoryRateRepository.getRate(i)
                     .orElseThrow();
-            double curLow = curRate.getLow();
-            double curHigh = curRate.getHigh();
+            long curLow = key(curRate.getLow());
+            long curHigh = key(curRate.getHigh());
             if (curLow > low || high < curHigh) {
                 return Optional.empty();
             }
@@ -570,16 +723,16 @@ public class SwingsHandler {
 
         RateEntity checkedRate = inMemoryRateRepository.getRate(reverseBarsCount)
                 .orElseThrow();
-        double high = checkedRate.getHigh();
-        double low = checkedRate.getLow();
-        double highest = high;
+        long high = key(checkedRate.getHigh());
+        long low = key(checkedRate.getLow());
+        long highest = high;
         LocalDateTime time = checkedRate.getTime();
 
         for (int i = 0; i < reverseBarsCount; i++) {
             RateEntity curRate = inMemoryRateRepository.getRate(i)
                     .orElseThrow();
-            double curHigh = curRate.getHigh();
-            double curLow = curRate.getLow();
+            long curHigh = key(curRate.getHigh());
+            long curLow = key(curRate.getLow());
             if (curHigh > high || low > curLow) {
                 return Optional.empty();
             }
@@ -592,17 +745,18 @@ public class SwingsHandler {
         return Optional.of(time);
     }
 
-    private void setLastWorkingPrice(RateEntity rate) {
+    private void setLastWorkingPrice(double high,
+                                     double low) {
         if (context.getLastWorkingPrice() == null) {
-            double price = context.getCurrentDirection() == UP ? rate.getHigh() : rate.getLow();
+            double price = context.getCurrentDirection() == UP ? high : low;
             context.setLastWorkingPrice(price);
             log.debug("Set last working price: {}", price);
-        } else if (context.getCurrentDirection() == UP && Double.compare(rate.getHigh(), context.getLastWorkingPrice()) > 0) {
-            context.setLastWorkingPrice(rate.getHigh());
-            log.debug("Set last working price: {}", rate.getHigh());
-        } else if (context.getCurrentDirection() == DOWN && Double.compare(rate.getLow(), context.getLastWorkingPrice()) < 0) {
-            context.setLastWorkingPrice(rate.getLow());
-            log.debug("Set last working price: {}", rate.getLow());
+        } else if (context.getCurrentDirection() == UP && key(high) > key(context.getLastWorkingPrice())) {
+            context.setLastWorkingPrice(high);
+            log.debug("Set last working price: {}", high);
+        } else if (context.getCurrentDirection() == DOWN && key(low) < key(context.getLastWorkingPrice())) {
+            context.setLastWorkingPrice(low);
+            log.debug("Set last working price: {}", low);
         }
     }
 
@@ -611,26 +765,26 @@ public class SwingsHandler {
         if (barsCount <= reverseBarsCount * 2 + 10) return Optional.empty();
         RateEntity bar = inMemoryRateRepository.getRate(0)
                 .orElseThrow();
-        double high = bar.getHigh();
-        double low = bar.getLow();
-        double min = bar.getLow();
+        long high = key(bar.getHigh());
+        long low = key(bar.getLow());
+        long min = low;
         LocalDateTime workingPoint = bar.getTime();
 
         for (int i = 1; i <= reverseBarsCount; i++) {
             RateEntity prevBar = inMemoryRateRepository.getRate(i)
                     .orElseThrow();
-            if (bar.getHigh() < prevBar.getHigh()) return Optional.empty();
-            if (min > prevBar.getLow()) {
-                min = prevBar.getLow();
+            if (key(bar.getHigh()) < key(prevBar.getHigh())) return Optional.empty();
+            if (min > key(prevBar.getLow())) {
+                min = key(prevBar.getLow());
                 workingPoint = prevBar.getTime();
             }
             bar = prevBar;
         }
-        if (bar.getLow() >= low) return Optional.empty();
+        if (key(bar.getLow()) >= low) return Optional.empty();
         for (int i = reverseBarsCount + 1; i < reverseBarsCount * 2 && i < barsCount - 1; i++) {
             RateEntity prevBar = inMemoryRateRepository.getRate(i)
                     .orElseThrow();
-            if (prevBar.getHigh() >= high) return Optional.empty();
+            if (key(prevBar.getHigh()) >= high) return Optional.empty();
         }
         return Optional.of(workingPoint);
     }
@@ -640,26 +794,26 @@ public class SwingsHandler {
         if (barsCount <= reverseBarsCount * 2 + 10) return Optional.empty();
         RateEntity bar = inMemoryRateRepository.getRate(0)
                 .orElseThrow();
-        double low = bar.getLow();
-        double high = bar.getHigh();
-        double max = bar.getHigh();
+        long low = key(bar.getLow());
+        long high = key(bar.getHigh());
+        long max = high;
         LocalDateTime workingPoint = bar.getTime();
 
         for (int i = 1; i <= reverseBarsCount; i++) {
             RateEntity prevBar = inMemoryRateRepository.getRate(i)
                     .orElseThrow();
-            if (bar.getLow() > prevBar.getLow()) return Optional.empty();
-            if (max < prevBar.getHigh()) {
-                max = prevBar.getHigh();
+            if (key(bar.getLow()) > key(prevBar.getLow())) return Optional.empty();
+            if (max < key(prevBar.getHigh())) {
+                max = key(prevBar.getHigh());
                 workingPoint = prevBar.getTime();
             }
             bar = prevBar;
         }
-        if (bar.getHigh() <= high) return Optional.empty();
+        if (key(bar.getHigh()) <= high) return Optional.empty();
         for (int i = reverseBarsCount + 1; i < reverseBarsCount * 2 && i < barsCount - 1; i++) {
             RateEntity prevBar = inMemoryRateRepository.getRate(i)
                     .orElseThrow();
-            if (prevBar.getLow() <= low) return Optional.empty();
+            if (key(prevBar.getLow()) <= low) return Optional.empty();
         }
         return Optional.of(workingPoint);
     }
@@ -693,7 +847,7 @@ public class SwingsHandler {
                     timeframe, context.getLastWorkingPoint());
         }
         RateEntity rate = ratesCache.get(context.getLastWorkingPoint());
-        double price = direction == UP ? rate.getLow() : rate.getHigh();
+        double price = round(direction == UP ? rate.getLow() : rate.getHigh());
         /*
         if (context.getLastWorkingPrice() != null) {
             price = context.getLastWorkingPrice();
@@ -725,7 +879,7 @@ public class SwingsHandler {
                 inMemoryRateRepository.getHighestRate(prevLastWorkingPoint, time)
                         .ifPresent(rt -> {
                             context.setLastWorkingPoint(rt.getTime());
-                            context.setLastWorkingPrice(rt.getHigh());
+                            context.setLastWorkingPrice(round(rt.getHigh()));
                         });
                 //lastWorkingPoint = iTime(symbol, period, iHighest(symbol, TFMigrate(period), MODE_HIGH, shift - nextShift, nextShift));
                 //debug(time, "1: " + IntegerToString(iHighest(symbol, TFMigrate(period), MODE_HIGH, shift - nextShift, nextShift)));
@@ -734,7 +888,7 @@ public class SwingsHandler {
                 inMemoryRateRepository.getLowestRate(prevLastWorkingPoint, time)
                         .ifPresent(rt -> {
                             context.setLastWorkingPoint(rt.getTime());
-                            context.setLastWorkingPrice(rt.getLow());
+                            context.setLastWorkingPrice(round(rt.getLow()));
                         });
                 //lastWorkingPoint = iTime(symbol, period, iLowest(symbol, TFMigrate(period), MODE_LOW, shift - nextShift, nextShift));
                 //debug(time, "2: " + IntegerToString(iLowest(symbol, TFMigrate(period), MODE_LOW, shift - nextShift, nextShift)));
@@ -0,0 +1,295 @@
+package org.trade.rateslib.model;
+
+import org.trade.rateslib.data.RateEntity;
+import org.trade.rateslib.data.SwingHandlerContextEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Бинарный снимок состояния {@link SwingsHandler}: контекст, окно {@link RatesCollection}
+ * и ограниченная история баров, которая нужна обработчику для продолжения работы.
+ * Необязательные поля записываются с байтом-признаком наличия, время - как секунды и наносекунды UTC,
+ * {@link BigDecimal} - как масштаб и байты немасштабированного значения
+ *
+ * @author javonavi
+ */
+class SwingsHandlerCheckpoint {
+
+    private static final int MAGIC = 0x53574843;
+    private static final byte VERSION = 1;
+
+    final int reverseBarsCount;
+    final String timeframe;
+    final String stock;
+    final SwingHandlerContextEntity context;
+    final List<Rate> window;
+    final List<RateEntity> rates;
+
+    SwingsHandlerCheckpoint(int reverseBarsCount,
+                            String timeframe,
+                            String stock,
+                            SwingHandlerContextEntity context,
+                            List<Rate> window,
+                            List<RateEntity> rates) {
+        this.reverseBarsCount = reverseBarsCount;
+        this.timeframe = timeframe;
+        this.stock = stock;
+        this.context = context;
+        this.window = window;
+        this.rates = rates;
+    }
+
+    byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + rates.size() * 45);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(reverseBarsCount);
+            out.writeUTF(timeframe);
+            out.writeUTF(stock);
+            writeContext(out, context);
+            out.writeInt(window.size());
+            for (Rate rate : window) {
+                writeRate(out, rate);
+            }
+            out.writeInt(rates.size());
+            for (RateEntity rate : rates) {
+                writeTime(out, rate.getTime());
+                out.writeDouble(rate.getOpen());
+                out.writeDouble(rate.getHigh());
+                out.writeDouble(rate.getLow());
+                out.writeDouble(rate.getClose());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static SwingsHandlerCheckpoint fromBytes(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int magic = in.readInt();
+            if (magic != MAGIC) {
+                throw new RuntimeException("Unexpected checkpoint magic: " + Integer.toHexString(magic));
+            }
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new RuntimeException("Unexpected checkpoint version: " + version);
+            }
+            int reverseBarsCount = in.readInt();
+            String timeframe = in.readUTF();
+            String stock = in.readUTF();
+            SwingHandlerContextEntity context = readContext(in);
+            int windowSize = in.readInt();
+            List<Rate> window = new ArrayList<>(windowSize);
+            for (int i = 0; i < windowSize; i++) {
+                window.add(readRate(in));
+            }
+            int ratesSize = in.readInt();
+            List<RateEntity> rates = new ArrayList<>(ratesSize);
+            for (int i = 0; i < ratesSize; i++) {
+                RateEntity rate = new RateEntity();
+                rate.setTime(readTime(in));
+                rate.setOpen(in.readDouble());
+                rate.setHigh(in.readDouble());
+                rate.setLow(in.readDouble());
+                rate.setClose(in.readDouble());
+                rates.add(rate);
+            }
+            return new SwingsHandlerCheckpoint(reverseBarsCount, timeframe, stock, context, window, rates);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeContext(DataOutputStream out, SwingHandlerContextEntity context) throws IOException {
+        writeTime(out, context.getTime());
+        writeDouble(out, context.getLocalHigh());
+        writeDouble(out, context.getLocalLow());
+        writeDouble(out, context.getCurrentHigh());
+        writeDouble(out, context.getCurrentLow());
+        writeDouble(out, context.getGlobalLow());
+        writeDouble(out, context.getGlobalHigh());
+        writeBoolean(out, context.getCurrentDirection());
+        writeInteger(out, context.getReverseBarsCount());
+        writeInteger(out, context.getWaitingReverseCount());
+        writeTime(out, context.getLastWorkingPoint());
+        writeDouble(out, context.getLastUpSwing());
+        writeDouble(out, context.getLastDownSwing());
+        writeDouble(out, context.getLastWorkingPrice());
+        writeSwing(out, context.getLastSwing());
+        writeRate(out, context.getLowRate());
+        writeRate(out, context.getHighRate());
+    }
+
+    private static SwingHandlerContextEntity readContext(DataInputStream in) throws IOException {
+        SwingHandlerContextEntity context = new SwingHandlerContextEntity();
+        context.setTime(readTime(in));
+        context.setLocalHigh(readDouble(in));
+        context.setLocalLow(readDouble(in));
+        context.setCurrentHigh(readDouble(in));
+        context.setCurrentLow(readDouble(in));
+        context.setGlobalLow(readDouble(in));
+        context.setGlobalHigh(readDouble(in));
+        context.setCurrentDirection(readBoolean(in));
+        context.setReverseBarsCount(readInteger(in));
+        context.setWaitingReverseCount(readInteger(in));
+        context.setLastWorkingPoint(readTime(in));
+        context.setLastUpSwing(readDouble(in));
+        context.setLastDownSwing(readDouble(in));
+        context.setLastWorkingPrice(readDouble(in));
+        context.setLastSwing(readSwing(in));
+        context.setLowRate(readRate(in));
+        context.setHighRate(readRate(in));
+        return context;
+    }
+
+    private static void writeSwing(DataOutputStream out, SwingPoint swing) throws IOException {
+        out.writeBoolean(swing != null);
+        if (swing == null) {
+            return;
+        }
+        writeTime(out, swing.getTime());
+        writeDecimal(out, swing.getPrice());
+        writeBoolean(out, swing.getDirection() == null ? null : swing.getDirection().toBoolean());
+        writeInteger(out, swing.getSection());
+        writeString(out, swing.getTimeframe());
+        writeDouble(out, swing.getLength());
+        writeDouble(out, swing.getLengthInBars());
+        writeTime(out, swing.getGenerateTime());
+    }
+
+    private static SwingPoint readSwing(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        SwingPoint.Builder builder = SwingPoint.builder()
+                .withTime(readTime(in))
+                .withPrice(readDecimal(in));
+        Boolean direction = readBoolean(in);
+        return builder
+                .withDirection(direction == null ? null : SwingDirection.byBoolean(direction))
+                .withSection(readInteger(in))
+                .withTimeframe(readString(in))
+                .withLength(readDouble(in))
+                .withLengthInBars(readDouble(in))
+                .withGenerateTime(readTime(in))
+                .build();
+    }
+
+    private static void writeRate(DataOutputStream out, Rate rate) throws IOException {
+        out.writeBoolean(rate != null);
+        if (rate == null) {
+            return;
+        }
+        writeTime(out, rate.getTime());
+        writeDecimal(out, rate.getOpen());
+        writeDecimal(out, rate.getHigh());
+        writeDecimal(out, rate.getLow());
+        writeDecimal(out, rate.getClose());
+        writeString(out, rate.getTimeframe());
+    }
+
+    private static Rate readRate(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return Rate.builder()
+                .withTime(readTime(in))
+                .withOpen(readDecimal(in))
+                .withHigh(readDecimal(in))
+                .withLow(readDecimal(in))
+                .withClose(readDecimal(in))
+                .withTimeframe(readString(in))
+                .build();
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+        }
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long epochSecond = in.readLong();
+        return LocalDateTime.ofEpochSecond(epochSecond, in.readInt(), ZoneOffset.UTC);
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            byte[] unscaled = value.unscaledValue().toByteArray();
+            out.writeInt(value.scale());
+            out.writeShort(unscaled.length);
+            out.write(unscaled);
+        }
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int scale = in.readInt();
+        byte[] unscaled = new byte[in.readUnsignedShort()];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeBoolean(DataOutputStream out, Boolean value) throws IOException {
+        out.writeByte(value == null ? -1 : value ? 1 : 0);
+    }
+
+    private static Boolean readBoolean(DataInputStream in) throws IOException {
+        byte value = in.readByte();
+        return value < 0 ? null : value == 1;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
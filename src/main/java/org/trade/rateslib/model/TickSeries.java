@@ -0,0 +1,175 @@
+package org.trade.rateslib.model;
+
+import org.trade.rateslib.utils.TimeUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Последовательность баров с ценами в тиках (см. {@link PriceCodec}), аналог {@link RateSeries}.
+ * Цены хранятся массивами long, поэтому сравнения цен - целочисленные.
+ * Срезы ({@link #slice}) не копируют данные, а ссылаются на те же массивы
+ *
+ * @author javonavi
+ */
+public class TickSeries {
+
+    private final PriceCodec codec;
+    private final long[] epochMinutes;
+    private final long[] open;
+    private final long[] high;
+    private final long[] low;
+    private final long[] close;
+    private final int offset;
+    private final int size;
+
+    private TickSeries(PriceCodec codec,
+                       long[] epochMinutes,
+                       long[] open,
+                       long[] high,
+                       long[] low,
+                       long[] close,
+                       int offset,
+                       int size) {
+        this.codec = codec;
+        this.epochMinutes = epochMinutes;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /**
+     * Переводит цены последовательности в тики с округлением до ближайшего
+     *
+     * @param series
+     * @param codec
+     * @return
+     */
+    public static TickSeries of(RateSeries series, PriceCodec codec) {
+        Objects.requireNonNull(codec, "codec is null");
+        int size = series.size();
+        long[] epochMinutes = new long[size];
+        long[] open = new long[size];
+        long[] high = new long[size];
+        long[] low = new long[size];
+        long[] close = new long[size];
+        for (int i = 0; i < size; i++) {
+            epochMinutes[i] = series.getEpochMinutes(i);
+            open[i] = codec.toTicks(series.getOpen(i));
+            high[i] = codec.toTicks(series.getHigh(i));
+            low[i] = codec.toTicks(series.getLow(i));
+            close[i] = codec.toTicks(series.getClose(i));
+        }
+        return new TickSeries(codec, epochMinutes, open, high, low, close, 0, size);
+    }
+
+    public PriceCodec getCodec() {
+        return codec;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getEpochMinutes(int index) {
+        return epochMinutes[offset + checkIndex(index)];
+    }
+
+    public LocalDateTime getTime(int index) {
+        return TimeUtils.fromEpochMinutes(getEpochMinutes(index));
+    }
+
+    public long getOpen(int index) {
+        return open[offset + checkIndex(index)];
+    }
+
+    public long getHigh(int index) {
+        return high[offset + checkIndex(index)];
+    }
+
+    public long getLow(int index) {
+        return low[offset + checkIndex(index)];
+    }
+
+    public long getClose(int index) {
+        return close[offset + checkIndex(index)];
+    }
+
+    /**
+     * @param index
+     * @param priceType тип цены; {@link PriceType#HLC3} не выражается целым числом тиков и не поддерживается
+     * @return
+     */
+    public long getPrice(int index, PriceType priceType) {
+        switch (priceType) {
+            case OPEN:
+                return getOpen(index);
+            case HIGH:
+                return getHigh(index);
+            case LOW:
+                return getLow(index);
+            case CLOSE:
+                return getClose(index);
+
+            default:
+                throw new RuntimeException("Unexpected price type: " + priceType);
+        }
+    }
+
+    /**
+     * Возвращает срез [fromIndex, toIndex) без копирования данных
+     */
+    public TickSeries slice(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size);
+        return new TickSeries(codec, epochMinutes, open, high, low, close, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * Возвращает индекс первого бара с временем не меньше заданного
+     *
+     * @param time
+     * @return Если такого бара нет, возвращает {@link #size()}
+     */
+    public int indexOf(LocalDateTime time) {
+        long key = TimeUtils.toEpochMinutes(time);
+        int pos = Arrays.binarySearch(epochMinutes, offset, offset + size, key);
+        return (pos >= 0 ? pos : -pos - 1) - offset;
+    }
+
+    /**
+     * Переводит тики обратно в цены
+     */
+    public RateSeries toRateSeries() {
+        double[] o = new double[size];
+        double[] h = new double[size];
+        double[] l = new double[size];
+        double[] c = new double[size];
+        for (int i = 0; i < size; i++) {
+            o[i] = codec.toPrice(open[offset + i]);
+            h[i] = codec.toPrice(high[offset + i]);
+            l[i] = codec.toPrice(low[offset + i]);
+            c[i] = codec.toPrice(close[offset + i]);
+        }
+        return RateSeries.of(Arrays.copyOfRange(epochMinutes, offset, offset + size), o, h, l, c);
+    }
+
+    private int checkIndex(int index) {
+        return Objects.checkIndex(index, size);
+    }
+
+    @Override
+    public String toString() {
+        return "TickSeries{" +
+                "codec=" + codec +
+                ", size=" + size +
+                '}';
+    }
+}
@@ -4,6 +4,8 @@ import java.time.Duration;
 import java.time.Period;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -40,6 +42,18 @@ public enum Timeframe {
             MN1, Y1
     );
 
+    /**
+     * Таймфреймы по коду в исходном и нижнем регистре
+     */
+    private static final Map<String, Timeframe> BY_CODE = new HashMap<>();
+
+    static {
+        for (Timeframe timeframe : values()) {
+            BY_CODE.put(timeframe.code, timeframe);
+            BY_CODE.put(timeframe.code.toLowerCase(Locale.ROOT), timeframe);
+        }
+    }
+
     private final String code;
     private final Integer value;
     private final String nextTimeframe;
@@ -91,6 +105,29 @@ public enum Timeframe {
                 .findFirst();
     }
 
+    /**
+     * Возвращает таймфрейм по коду без учета регистра.
+     * Код в исходном или нижнем регистре находится в таблице без создания строк
+     *
+     * @param code
+     * @return Если таймфрейм не найден, возвращает null
+     */
+    public static Timeframe of(String code) {
+        if (code == null) {
+            return null;
+        }
+        Timeframe timeframe = BY_CODE.get(code);
+        if (timeframe != null) {
+            return timeframe;
+        }
+        for (Timeframe value : values()) {
+            if (value.code.equalsIgnoreCase(code)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
     public boolean isAfter(Timeframe timeframe) {
         return this.value > Objects.requireNonNull(timeframe, "timeframe").getValue();
     }
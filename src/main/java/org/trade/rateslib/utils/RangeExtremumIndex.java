@@ -0,0 +1,171 @@
+package org.trade.rateslib.utils;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Дерево отрезков для поиска позиции максимума (или минимума) на произвольном интервале индексов за O(log n).
+ * Значения добавляются в конец за амортизированное O(log n).
+ * При равных значениях возвращается меньший индекс
+ *
+ * @author javonavi
+ */
+public class RangeExtremumIndex {
+
+    private final boolean maximum;
+    private double[] values;
+    private int[] tree;
+    private int capacity;
+    private int size;
+
+    private RangeExtremumIndex(boolean maximum) {
+        this.maximum = maximum;
+        this.capacity = 16;
+        this.values = new double[capacity];
+        this.tree = new int[capacity << 1];
+        Arrays.fill(tree, -1);
+    }
+
+    public static RangeExtremumIndex forMaximum() {
+        return new RangeExtremumIndex(true);
+    }
+
+    public static RangeExtremumIndex forMinimum() {
+        return new RangeExtremumIndex(false);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double get(int index) {
+        Objects.checkIndex(index, size);
+        return values[index];
+    }
+
+    /**
+     * Добавляет значение в конец
+     */
+    public void add(double value) {
+        if (size == capacity) {
+            grow();
+        }
+        values[size] = value;
+        update(size++);
+    }
+
+    /**
+     * Заменяет значение по индексу
+     */
+    public void set(int index, double value) {
+        Objects.checkIndex(index, size);
+        values[index] = value;
+        update(index);
+    }
+
+    /**
+     * Вставляет значение по индексу со сдвигом последующих. Работает за O(n)
+     */
+    public void insert(int index, double value) {
+        Objects.checkIndex(index, size + 1);
+        if (size == capacity) {
+            grow();
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+        for (int i = index; i < size; i++) {
+            tree[capacity + i] = i;
+        }
+        rebuild();
+    }
+
+    /**
+     * Удаляет count первых значений со сдвигом остальных. Работает за O(n)
+     */
+    public void removeFirst(int count) {
+        if (count <= 0) {
+            return;
+        }
+        if (count >= size) {
+            clear();
+            return;
+        }
+        System.arraycopy(values, count, values, 0, size - count);
+        size -= count;
+        for (int i = 0; i < capacity; i++) {
+            tree[capacity + i] = i < size ? i : -1;
+        }
+        rebuild();
+    }
+
+    public void clear() {
+        size = 0;
+        Arrays.fill(tree, -1);
+    }
+
+    /**
+     * Возвращает индекс экстремума на интервале [fromIndex, toIndex]
+     *
+     * @param fromIndex
+     * @param toIndex
+     * @return -1, если интервал пуст
+     */
+    public int query(int fromIndex, int toIndex) {
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        if (toIndex >= size) {
+            toIndex = size - 1;
+        }
+        int result = -1;
+        for (int l = fromIndex + capacity, r = toIndex + capacity + 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) {
+                result = best(result, tree[l++]);
+            }
+            if ((r & 1) == 1) {
+                result = best(result, tree[--r]);
+            }
+        }
+        return result;
+    }
+
+    private void update(int index) {
+        int node = capacity + index;
+        tree[node] = index;
+        for (node >>= 1; node > 0; node >>= 1) {
+            tree[node] = best(tree[node << 1], tree[(node << 1) + 1]);
+        }
+    }
+
+    private void grow() {
+        capacity <<= 1;
+        values = Arrays.copyOf(values, capacity);
+        tree = new int[capacity << 1];
+        Arrays.fill(tree, -1);
+        for (int i = 0; i < size; i++) {
+            tree[capacity + i] = i;
+        }
+        rebuild();
+    }
+
+    private void rebuild() {
+        for (int node = capacity - 1; node > 0; node--) {
+            tree[node] = best(tree[node << 1], tree[(node << 1) + 1]);
+        }
+    }
+
+    private int best(int i, int j) {
+        if (i < 0) {
+            return j;
+        }
+        if (j < 0) {
+            return i;
+        }
+        int cmp = Double.compare(values[i], values[j]);
+        if (cmp == 0) {
+            return Math.min(i, j);
+        }
+        return (cmp > 0) == maximum ? i : j;
+    }
+}
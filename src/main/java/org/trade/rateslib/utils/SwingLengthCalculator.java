@@ -21,7 +21,7 @@ public class SwingLengthCalculator {
         Timeframe endTimeframe = Timeframe.valueOf(smallestTimeframe.toUpperCase());
 
         if (currentTimeframe == endTimeframe) {
-            return ratesService.getCountBetween(stock, endTimeframe.getCode().toLowerCase(), fromTime, toTime);
+            return ratesService.getCountBetween(stock, endTimeframe, fromTime, toTime);
         }
 
         // Сначала находим минимальный таймфрейм, на котором можем посчитать среднее количество баров
@@ -31,7 +31,7 @@ public class SwingLengthCalculator {
 
         // Определяем минимальный TF, для которого есть бары на всем интервале
         while (endTimeframe.isBefore(currentTimeframe)) {
-            if (ratesService.getLatestRateBeforeTime(stock, endTimeframe.getCode().toLowerCase(), fromTimeInUpperTf).isPresent()) {
+            if (ratesService.getLatestRateBeforeTime(stock, endTimeframe, fromTimeInUpperTf).isPresent()) {
                 break;
             }
             if (endTimeframe.getNext().isEmpty()) {
@@ -46,12 +46,12 @@ public class SwingLengthCalculator {
 
         // Теперь считаем среднее количество баров меньшего периода в рамках рассматриваемого периода
 
-        double smallestTotalCount = ratesService.getCountBetween(stock, endTimeframe.getCode().toLowerCase(), fromTimeInUpperTf, toTimeInUpperTf);
+        double smallestTotalCount = ratesService.getCountBetween(stock, endTimeframe, fromTimeInUpperTf, toTimeInUpperTf);
         if (smallestTotalCount <= 0) {
             throw new RuntimeException("Smallest total count wasn't calculated on smallest TF: " + endTimeframe);
         }
 
-        double highestTotalCount = ratesService.getCountBetween(stock, currentTimeframe.getCode().toLowerCase(), fromTimeInUpperTf, toTimeInUpperTf);
+        double highestTotalCount = ratesService.getCountBetween(stock, currentTimeframe, fromTimeInUpperTf, toTimeInUpperTf);
         if (highestTotalCount <= 0) {
             throw new RuntimeException("Highest total count wasn't calculated on smallest TF: " + currentTimeframe);
         }
@@ -61,10 +61,10 @@ public class SwingLengthCalculator {
         double countPerCurrentRate = smallestTotalCount / highestTotalCount;
 
         // Вычитаем то, что лишнее в начале
-        result -= (double) ratesService.getCountBetween(stock, endTimeframe.getCode().toLowerCase(), fromTimeInUpperTf, fromTime) / countPerCurrentRate;
+        result -= (double) ratesService.getCountBetween(stock, endTimeframe, fromTimeInUpperTf, fromTime) / countPerCurrentRate;
 
         //Добавляем то, что остутствует в конце
-        result += (double) ratesService.getCountBetween(stock, endTimeframe.getCode().toLowerCase(), toTimeInUpperTf, toTime) / countPerCurrentRate;
+        result += (double) ratesService.getCountBetween(stock, endTimeframe, toTimeInUpperTf, toTime) / countPerCurrentRate;
 
         return result;
     }
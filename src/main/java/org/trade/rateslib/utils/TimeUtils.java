@@ -5,6 +5,7 @@ import org.trade.rateslib.model.Timeframe;
 import java.time.DayOfWeek;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 
@@ -20,6 +21,26 @@ public class TimeUtils {
         return ZonedDateTime.of(time, ZoneId.systemDefault());
     }
 
+    /**
+     * Возвращает количество минут от начала эпохи (время считается заданным в UTC)
+     *
+     * @param time
+     * @return
+     */
+    public static long toEpochMinutes(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60L);
+    }
+
+    /**
+     * Обратное преобразование к {@link #toEpochMinutes(LocalDateTime)}
+     *
+     * @param epochMinutes
+     * @return
+     */
+    public static LocalDateTime fromEpochMinutes(long epochMinutes) {
+        return LocalDateTime.ofEpochSecond(epochMinutes * 60L, 0, ZoneOffset.UTC);
+    }
+
     public static long calcDuration(Timeframe timeframe, LocalDateTime time1, LocalDateTime time2) {
         return calcDuration(timeframe, ZonedDateTime.of(time1, ZoneId.systemDefault()), ZonedDateTime.of(time2, ZoneId.systemDefault()));
     }
@@ -54,6 +75,10 @@ public class TimeUtils {
 
     public static LocalDateTime plus(LocalDateTime time, Timeframe timeframe, long ratio) {
         switch (timeframe) {
+            case M1:
+                return time.plusMinutes(ratio);
+            case M5:
+                return time.plusMinutes(ratio * 5);
             case M15:
                 return time.plusMinutes(ratio * 15);
             case H1:
@@ -84,6 +109,10 @@ public class TimeUtils {
 
     public static LocalDateTime minus(LocalDateTime time, Timeframe timeframe, long ratio) {
         switch (timeframe) {
+            case M1:
+                return time.minusMinutes(ratio);
+            case M5:
+                return time.minusMinutes(ratio * 5);
             case M15:
                 return time.minusMinutes(ratio * 15);
             case H1:
@@ -160,6 +189,8 @@ public class TimeUtils {
 
     public static LocalDateTime getLatestFinishedBarTime(LocalDateTime time, Timeframe timeframe) {
         switch (timeframe) {
+            case M1:
+                return time.truncatedTo(ChronoUnit.MINUTES);
             case M5:
                 return time.minusMinutes(time.getMinute() % 5).truncatedTo(ChronoUnit.MINUTES);
             case M15:
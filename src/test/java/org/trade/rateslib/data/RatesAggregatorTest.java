@@ -0,0 +1,88 @@
+package org.trade.rateslib.data;
+
+import org.junit.jupiter.api.Test;
+import org.trade.rateslib.data.impl.InMemoryRateRepository;
+import org.trade.rateslib.model.Timeframe;
+import org.trade.rateslib.utils.TimeUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author javonavi
+ */
+public class RatesAggregatorTest {
+
+    private static final List<Timeframe> TIMEFRAMES = List.of(Timeframe.H1, Timeframe.H4, Timeframe.D1, Timeframe.W1, Timeframe.MN1);
+
+    @Test
+    public void test_matches_grouping() {
+        List<RateEntity> rates = TestRates.randomWalk(3, LocalDateTime.parse("2021-01-04T00:00:00"), 15, 2, 10000);
+        Map<Timeframe, InMemoryRateRepository> repositories = new EnumMap<>(Timeframe.class);
+        TIMEFRAMES.forEach(timeframe -> repositories.put(timeframe, new InMemoryRateRepository()));
+        Map<Timeframe, Integer> finished = new EnumMap<>(Timeframe.class);
+        RatesAggregator.Listener writer = RatesAggregator.toRepositories(repositories, true);
+        RatesAggregator aggregator = new RatesAggregator(Timeframe.M15, TIMEFRAMES, (timeframe, rate, isFinished) -> {
+            writer.onRate(timeframe, rate, isFinished);
+            if (isFinished) {
+                finished.merge(timeframe, 1, Integer::sum);
+            }
+        });
+        aggregator.addAll(rates);
+
+        for (Timeframe timeframe : TIMEFRAMES) {
+            List<RateEntity> expected = group(rates, timeframe);
+            assertEquals(expected, repositories.get(timeframe).findAllByTimeGreaterThanEqualOrderByTimeAsc(rates.get(0).getTime().minusYears(1)));
+            assertEquals(expected.size() - 1, finished.get(timeframe));
+            assertEquals(expected.get(expected.size() - 1), aggregator.getCurrent(timeframe).orElseThrow());
+        }
+    }
+
+    @Test
+    public void test_replace_last_rate() {
+        List<RateEntity> rates = TestRates.randomWalk(3, LocalDateTime.parse("2021-01-04T00:00:00"), 15, 2, 200);
+        RatesAggregator aggregator = new RatesAggregator(Timeframe.M15, (timeframe, rate, isFinished) -> {
+        });
+        for (RateEntity rate : rates) {
+            RateEntity draft = new RateEntity();
+            draft.setTime(rate.getTime());
+            draft.setOpen(rate.getOpen());
+            draft.setHigh(rate.getHigh() + 100.);
+            draft.setLow(rate.getLow() - 100.);
+            draft.setClose(rate.getClose());
+            aggregator.add(draft);
+            aggregator.add(rate);
+        }
+        List<RateEntity> expected = group(rates, Timeframe.D1);
+        assertEquals(expected.get(expected.size() - 1), aggregator.getCurrent(Timeframe.D1).orElseThrow());
+        assertThrows(RuntimeException.class, () -> aggregator.add(rates.get(0)));
+    }
+
+    private List<RateEntity> group(List<RateEntity> rates,
+                                   Timeframe timeframe) {
+        TreeMap<LocalDateTime, RateEntity> result = new TreeMap<>();
+        for (RateEntity rate : rates) {
+            LocalDateTime time = TimeUtils.getLatestFinishedBarTime(rate.getTime(), timeframe);
+            RateEntity bar = result.get(time);
+            if (bar == null) {
+                bar = new RateEntity();
+                bar.setTime(time);
+                bar.setOpen(rate.getOpen());
+                bar.setHigh(rate.getHigh());
+                bar.setLow(rate.getLow());
+                result.put(time, bar);
+            }
+            bar.setHigh(Math.max(bar.getHigh(), rate.getHigh()));
+            bar.setLow(Math.min(bar.getLow(), rate.getLow()));
+            bar.setClose(rate.getClose());
+        }
+        return new ArrayList<>(result.values());
+    }
+}
@@ -0,0 +1,38 @@
+package org.trade.rateslib.data;
+
+import org.junit.jupiter.api.Test;
+import org.trade.rateslib.model.StockTimeframe;
+import org.trade.rateslib.model.Timeframe;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author javonavi
+ */
+public class StockTimeframeRegistryTest {
+
+    @Test
+    public void test_lookup() {
+        StockTimeframeRegistry<String> registry = new StockTimeframeRegistry<>();
+        registry.putAll("EURUSD", Map.of("m15", "a", "H1", "b"));
+        registry.put("GBPUSD", Timeframe.D1, "c");
+
+        assertEquals("a", registry.get("EURUSD", "M15"));
+        assertEquals("a", registry.get("EURUSD", Timeframe.M15));
+        assertEquals("b", registry.get("EURUSD", "h1"));
+        assertEquals("c", registry.get(StockTimeframe.of("GBPUSD", Timeframe.D1)));
+        assertNull(registry.get("EURUSD", Timeframe.D1));
+        assertNull(registry.get("USDJPY", Timeframe.D1));
+        assertNull(registry.get("EURUSD", "X5"));
+        assertEquals(Timeframe.MN1, Timeframe.of("Mn1"));
+        assertEquals(Timeframe.MN1, Timeframe.of("mn1"));
+        assertTrue(Timeframe.findByCode("mn1").isEmpty());
+        assertEquals(Timeframe.MN1, Timeframe.findByCode("MN1").orElseThrow());
+        assertThrows(RuntimeException.class, () -> registry.putAll("EURUSD", Map.of("x5", "d")));
+    }
+}
@@ -0,0 +1,102 @@
+package org.trade.rateslib.data;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.impl.StaticLoggerBinder;
+import org.trade.rateslib.data.impl.InMemoryRateRepository;
+import org.trade.rateslib.data.impl.InMemorySwingRepository;
+import org.trade.rateslib.model.StockTimeframe;
+import org.trade.rateslib.model.Timeframe;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author javonavi
+ */
+public class SwingsComputationServiceTest {
+
+    private static final Logger log = StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test");
+    private static final List<String> STOCKS = List.of("AAA", "BBB", "CCC");
+    private static final List<Timeframe> TIMEFRAMES = List.of(Timeframe.M15, Timeframe.H1);
+
+    @Test
+    public void test_parallel_matches_serial() {
+        List<StockTimeframe> targets = new ArrayList<>();
+        STOCKS.forEach(stock -> TIMEFRAMES.forEach(tf -> targets.add(StockTimeframe.of(stock, tf))));
+
+        Map<String, List<String>> serial = compute(targets, 1);
+        Map<String, List<String>> parallel = compute(targets, 4);
+        assertEquals(serial, parallel);
+        assertTrue(serial.values().stream().allMatch(swings -> !swings.isEmpty()));
+    }
+
+    private Map<String, List<String>> compute(List<StockTimeframe> targets,
+                                              int parallelism) {
+        RatesService ratesService = new RatesService();
+        SwingsService swingsService = new SwingsService();
+        SwingHandlerContextService contextService = new SwingHandlerContextService();
+        Map<String, Map<String, InMemorySwingRepository>> swingRepositories = new HashMap<>();
+        for (String stock : STOCKS) {
+            Map<String, RateRepository> rateRepositories = new HashMap<>();
+            Map<String, SwingRepository> stockSwingRepositories = new HashMap<>();
+            for (Timeframe timeframe : TIMEFRAMES) {
+                InMemoryRateRepository rateRepository = new InMemoryRateRepository();
+                TestRates.randomWalk(stock.hashCode() + timeframe.ordinal(), LocalDateTime.parse("2020-01-01T00:00:00"),
+                        timeframe.getValue(), 3000).forEach(rateRepository::insert);
+                rateRepositories.put(timeframe.getCode().toLowerCase(), rateRepository);
+                InMemorySwingRepository swingRepository = new InMemorySwingRepository();
+                stockSwingRepositories.put(timeframe.getCode().toLowerCase(), swingRepository);
+                swingRepositories.computeIfAbsent(stock, s -> new HashMap<>()).put(timeframe.getCode(), swingRepository);
+            }
+            ratesService.init(stock, rateRepositories);
+            swingsService.init(stock, stockSwingRepositories);
+            contextService.init(stock, ContextRepository::new);
+        }
+
+        List<SwingsComputationService.Task> tasks;
+        try (SwingsComputationService service = new SwingsComputationService(ratesService, swingsService, contextService, parallelism, log)) {
+            tasks = service.computeAll(targets, 12);
+        }
+        Map<String, List<String>> result = new HashMap<>();
+        for (SwingsComputationService.Task task : tasks) {
+            assertEquals(SwingsComputationService.State.DONE, task.getState());
+            assertEquals(task.getTotalBars(), task.getProcessedBars());
+            assertEquals(1., task.getProgress());
+            List<String> swings = swingRepositories.get(task.getStockTimeframe().getStock())
+                    .get(task.getStockTimeframe().getTimeframeCode())
+                    .getAll().stream()
+                    .map(swing -> swing.getTime() + " " + swing.getDirection() + " " + swing.getPrice())
+                    .collect(Collectors.toList());
+            assertEquals(task.getSwingsCount(), swings.size());
+            result.put(task.getStockTimeframe().toString(), swings);
+        }
+        return result;
+    }
+
+    private static class ContextRepository implements SwingHandlerContextRepository {
+        private final List<SwingHandlerContextEntity> contexts = new ArrayList<>();
+
+        @Override
+        public void deleteByTimeGreaterThan(LocalDateTime time) {
+            contexts.removeIf(context -> context.getTime().isAfter(time));
+        }
+
+        @Override
+        public List<SwingHandlerContextEntity> findAllByTimeLessThan(LocalDateTime time, Pageable pageable) {
+            return contexts.stream().filter(context -> context.getTime().isBefore(time)).collect(Collectors.toList());
+        }
+
+        @Override
+        public void save(SwingHandlerContextEntity entity) {
+            contexts.add(entity);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.trade.rateslib.data;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.impl.StaticLoggerBinder;
+import org.trade.rateslib.data.impl.InMemorySwingRepository;
+import org.trade.rateslib.model.SwingEvent;
+import org.trade.rateslib.model.SwingsHandler;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author javonavi
+ */
+public class SwingsProcessorTest {
+
+    private static final Logger log = StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test");
+    private static final String STOCK = "TEST";
+    private static final String TIMEFRAME = "M15";
+
+    @Test
+    public void test_stream_matches_polling() throws Exception {
+        List<RateEntity> rates = TestRates.randomWalk(5, LocalDateTime.parse("2021-01-04T00:00:00"), 15, 3000);
+
+        SwingsService expectedSwings = swingsService();
+        SwingsHandler handler = new SwingsHandler(12, TIMEFRAME, STOCK, new SwingHandlerContextEntity(), expectedSwings, log);
+        List<String> expected = new ArrayList<>();
+        rates.forEach(rate -> handler.addRate(rate).ifPresent(swing -> {
+            expectedSwings.save(STOCK, TIMEFRAME, swing.getSwingPoint());
+            expected.add(swing.getSwingPoint().getTime() + " " + swing.getSwingPoint().getPrice());
+        }));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        SubmissionPublisher<RateEntity> source = new SubmissionPublisher<>(executor, 4);
+        try {
+            SwingsProcessor processor = new SwingsProcessor(STOCK, TIMEFRAME, 12, new SwingHandlerContextEntity(),
+                    swingsService(), executor, 4, log);
+            SlowSubscriber subscriber = new SlowSubscriber();
+            processor.subscribe(subscriber);
+            source.subscribe(processor);
+            rates.forEach(source::submit);
+            source.close();
+
+            subscriber.completion.get(1, TimeUnit.MINUTES);
+            assertEquals(expected, subscriber.swings);
+            assertFalse(expected.isEmpty());
+            assertTrue(subscriber.contexts > subscriber.swings.size());
+            assertTrue(processor.isClosed());
+        } finally {
+            source.close();
+            executor.shutdownNow();
+        }
+    }
+
+    private SwingsService swingsService() {
+        SwingsService swingsService = new SwingsService();
+        swingsService.init(STOCK, Map.of(TIMEFRAME, new InMemorySwingRepository()));
+        return swingsService;
+    }
+
+    /**
+     * Подписчик, запрашивающий события по одному
+     */
+    private static class SlowSubscriber implements Flow.Subscriber<SwingEvent> {
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private final List<String> swings = new ArrayList<>();
+        private int contexts;
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(SwingEvent event) {
+            if (event.getType() == SwingEvent.Type.SWING) {
+                swings.add(event.getSwingPoint().getTime() + " " + event.getSwingPoint().getPrice());
+            } else {
+                contexts++;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completion.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completion.complete(null);
+        }
+    }
+}
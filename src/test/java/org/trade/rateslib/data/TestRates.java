@@ -0,0 +1,63 @@
+package org.trade.rateslib.data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Синтетические бары для тестов: случайное блуждание close с шагом до 1 и тенями до 0.5
+ *
+ * @author javonavi
+ */
+public final class TestRates {
+
+    private TestRates() {
+    }
+
+    /**
+     * @param seed
+     * @param start       время первого бара
+     * @param stepMinutes интервал между барами
+     * @param count
+     * @return
+     */
+    public static List<RateEntity> randomWalk(long seed,
+                                              LocalDateTime start,
+                                              int stepMinutes,
+                                              int count) {
+        return randomWalk(seed, start, stepMinutes, 1, count);
+    }
+
+    /**
+     * @param seed
+     * @param start       время первого бара
+     * @param stepMinutes интервал между барами
+     * @param maxSteps    интервал между барами выбирается случайно от 1 до maxSteps шагов (пропуски баров)
+     * @param count
+     * @return
+     */
+    public static List<RateEntity> randomWalk(long seed,
+                                              LocalDateTime start,
+                                              int stepMinutes,
+                                              int maxSteps,
+                                              int count) {
+        Random random = new Random(seed);
+        List<RateEntity> result = new ArrayList<>(count);
+        LocalDateTime time = start;
+        double close = 100.;
+        for (int i = 0; i < count; i++) {
+            double open = close;
+            close = open + random.nextDouble() * 2 - 1;
+            RateEntity rate = new RateEntity();
+            rate.setTime(time);
+            rate.setOpen(open);
+            rate.setClose(close);
+            rate.setHigh(Math.max(open, close) + random.nextDouble() * 0.5);
+            rate.setLow(Math.min(open, close) - random.nextDouble() * 0.5);
+            result.add(rate);
+            time = time.plusMinutes((long) stepMinutes * (maxSteps > 1 ? 1 + random.nextInt(maxSteps) : 1));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,42 @@
+package org.trade.rateslib.data.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author javonavi
+ */
+public class CompressedBlockCodecTest {
+
+    @Test
+    public void test_round_trip() {
+        Random random = new Random(17);
+        for (int slots : new int[]{1, 7, 24, 96, 1440}) {
+            double[] values = new double[slots * 4];
+            double close = 1.1;
+            for (int slot = 0; slot < slots; slot++) {
+                if (random.nextInt(10) < 3) {
+                    continue;
+                }
+                double open = close;
+                close = Math.round((open + random.nextGaussian() * 0.001) * 100000) / 100000.;
+                values[slot * 4] = open;
+                values[slot * 4 + 1] = Math.max(open, close) + Math.round(random.nextDouble() * 50) / 100000.;
+                values[slot * 4 + 2] = Math.min(open, close) - Math.round(random.nextDouble() * 50) / 100000.;
+                values[slot * 4 + 3] = close;
+            }
+            values[0] = Double.MIN_VALUE;
+            values[3] = Double.MAX_VALUE;
+            byte[] encoded = CompressedBlockCodec.encode(values, slots);
+            assertTrue(CompressedBlockCodec.isCompressed(ByteBuffer.wrap(encoded)));
+            assertArrayEquals(values, CompressedBlockCodec.decode(ByteBuffer.wrap(encoded)));
+        }
+        assertFalse(CompressedBlockCodec.isCompressed(ByteBuffer.allocate(32).putDouble(0, 1.5)));
+    }
+}
@@ -3,16 +3,30 @@ package org.trade.rateslib.data.impl;
 import org.junit.jupiter.api.Test;
 import org.slf4j.impl.StaticLoggerBinder;
 import org.trade.rateslib.data.RateEntity;
+import org.trade.rateslib.model.PriceCodec;
+import org.trade.rateslib.model.RateSeries;
+import org.trade.rateslib.model.TickSeries;
 import org.trade.rateslib.model.Timeframe;
+import org.trade.rateslib.utils.TimeUtils;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class FileStorageRateRepositoryTest {
 
@@ -68,4 +82,463 @@ public class FileStorageRateRepositoryTest {
         List<RateEntity> rates = repository.loadFile(block);
         rates.forEach(System.out::println);
     }
+
+    @Test
+    public void test_mapped_scan() {
+        Timeframe timeframe = Timeframe.H1;
+        FileStorageRateRepository repository = new FileStorageRateRepository(path, "SBER", timeframe,
+                FileStorageSettings.builder().withReadMode(FileStorageSettings.ReadMode.MAPPED).build(),
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        List<LocalDateTime> times = Arrays.asList(
+                LocalDateTime.of(2021, 3, 1, 22, 0),
+                LocalDateTime.of(2021, 3, 1, 23, 0),
+                LocalDateTime.of(2021, 3, 2, 0, 0),
+                LocalDateTime.of(2021, 3, 2, 5, 0)
+        );
+        times.forEach(t -> insertRate(repository, t));
+
+        List<LocalDateTime> scanned = new ArrayList<>();
+        repository.scan(LocalDateTime.of(2021, 3, 1, 23, 0), LocalDateTime.of(2021, 3, 2, 5, 0),
+                (time, open, high, low, close) -> {
+                    assertEquals(5., open);
+                    assertEquals(10., high);
+                    scanned.add(TimeUtils.fromEpochMinutes(time));
+                });
+        assertEquals(times.subList(1, 4), scanned);
+        assertEquals(times.subList(1, 4), repository.findAllByTimeBetween(LocalDateTime.of(2021, 3, 1, 23, 0), LocalDateTime.of(2021, 3, 2, 5, 0))
+                .stream().map(RateEntity::getTime).collect(Collectors.toList()));
+
+        // Отображенные блоки берутся из кеша: повторное сканирование и чтение по времени файлы не читают
+        long loads = repository.getCacheStats().loadCount();
+        assertEquals(3, repository.getSeriesBetween(LocalDateTime.of(2021, 3, 1, 23, 0), LocalDateTime.of(2021, 3, 2, 5, 0)).size());
+        assertEquals(times.get(3), repository.findById(times.get(3)).orElseThrow().getTime());
+        assertTrue(repository.findById(LocalDateTime.of(2021, 3, 2, 4, 0)).isEmpty());
+        assertEquals(loads, repository.getCacheStats().loadCount());
+    }
+
+    @Test
+    public void test_cache_stats() {
+        Timeframe timeframe = Timeframe.H1;
+        FileStorageRateRepository repository = new FileStorageRateRepository(path, "GAZP", timeframe,
+                FileStorageSettings.builder().withCacheMaximumBars(1000L).build(),
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        insertRate(repository, LocalDateTime.of(2021, 4, 1, 10, 0));
+        insertRate(repository, LocalDateTime.of(2021, 4, 1, 11, 0));
+
+        long hits = repository.getCacheStats().hitCount();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(2, repository.getLatest(LocalDateTime.of(2021, 4, 1, 12, 0), 2).size());
+        }
+        assertTrue(repository.getCacheStats().hitCount() >= hits + 9);
+    }
+
+    @Test
+    public void test_batch_upsert() {
+        Timeframe timeframe = Timeframe.H1;
+        FileStorageRateRepository repository = new FileStorageRateRepository(path, "LKOH", timeframe, StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        List<RateEntity> rates = Arrays.asList(
+                getRate(LocalDateTime.of(2021, 5, 4, 10, 0)),
+                getRate(LocalDateTime.of(2021, 5, 4, 11, 0)),
+                getRate(LocalDateTime.of(2021, 5, 5, 10, 0)));
+        repository.upsertAll(rates);
+
+        RateEntity changed = getRate(LocalDateTime.of(2021, 5, 4, 11, 0));
+        changed.setClose(7.);
+        repository.insertAll(List.of(changed));
+        assertEquals(5., repository.findById(changed.getTime()).orElseThrow().getClose());
+        repository.upsertAll(List.of(changed));
+        assertEquals(7., repository.findById(changed.getTime()).orElseThrow().getClose());
+        assertEquals(3, repository.findAllByTimeBetween(LocalDateTime.of(2021, 5, 4, 0, 0), LocalDateTime.of(2021, 5, 5, 23, 0)).size());
+    }
+
+    @Test
+    public void test_wal_recovery() throws IOException {
+        Path walPath = Files.createTempDirectory("wal");
+        FileStorageSettings settings = FileStorageSettings.builder()
+                .withWalEnabled(true)
+                .withWalSyncEveryRecords(1)
+                .withWalCompactionRecords(1000)
+                .build();
+        FileStorageRateRepository repository = new FileStorageRateRepository(walPath, "SBER", Timeframe.M15, settings,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        LocalDateTime start = LocalDateTime.of(2021, 3, 1, 20, 0);
+        for (int i = 0; i < 30; i++) {
+            repository.insert(getRate(start.plusMinutes(15L * i)));
+        }
+        RateEntity changed = getRate(start.plusMinutes(15));
+        changed.setClose(7.);
+        repository.update(changed);
+
+        FileStorageRateRepository.StorageBlock block = repository.getBlockByTime(start);
+        assertTrue(!block.getPath().toFile().exists());
+        assertEquals(30, repository.findAllByTimeBetween(start, start.plusDays(1)).size());
+        assertEquals(7., repository.findById(changed.getTime()).orElseThrow().getClose());
+        assertEquals(start.plusMinutes(15 * 29), repository.getLatest(3).get(2).getTime());
+        assertEquals(start, repository.getFirstRate().orElseThrow().getTime());
+
+        // Имитация падения посреди записи: недописанная запись в конце журнала
+        Path wal = walPath.resolve("SBER").resolve("M15.wal");
+        Files.write(wal, new byte[]{1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        FileStorageRateRepository recovered = new FileStorageRateRepository(walPath, "SBER", Timeframe.M15, settings,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        assertEquals(0, Files.size(wal));
+        assertTrue(block.getPath().toFile().exists());
+        List<RateEntity> rates = recovered.findAllByTimeBetween(start, start.plusDays(1));
+        assertEquals(30, rates.size());
+        assertEquals(7., rates.get(1).getClose());
+        recovered.close();
+    }
+
+    @Test
+    public void test_wal_compaction() throws IOException {
+        Path walPath = Files.createTempDirectory("wal");
+        FileStorageRateRepository repository = new FileStorageRateRepository(walPath, "SBER", Timeframe.H1,
+                FileStorageSettings.builder().withWalEnabled(true).withWalCompactionRecords(10).build(),
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        LocalDateTime start = LocalDateTime.of(2021, 3, 1, 0, 0);
+        List<RateEntity> rates = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            rates.add(getRate(start.plusHours(i)));
+        }
+        repository.upsertAll(rates.subList(0, 5));
+        repository.upsertAll(rates.subList(5, 12));
+        rates.subList(12, 25).forEach(repository::update);
+        Path wal = walPath.resolve("SBER").resolve("H1.wal");
+        assertTrue(Files.size(wal) < 10 * RateWriteAheadLog.RECORD_SIZE);
+        assertEquals(25, repository.findAllByTimeBetween(start, start.plusDays(2)).size());
+        repository.close();
+        assertEquals(0, Files.size(wal));
+        assertEquals(25, repository.findAllByTimeBetween(start, start.plusDays(2)).size());
+    }
+
+    @Test
+    public void test_read_during_compaction() throws Exception {
+        Path walPath = Files.createTempDirectory("wal");
+        FileStorageRateRepository repository = new FileStorageRateRepository(walPath, "SBER", Timeframe.M15,
+                FileStorageSettings.builder().withWalEnabled(true).withWalCompactionRecords(3).build(),
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        LocalDateTime start = LocalDateTime.of(2021, 3, 1, 0, 0);
+        int count = 3000;
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger missed = new AtomicInteger();
+        Runnable read = () -> {
+            while (written.get() < count) {
+                int acknowledged = written.get();
+                if (acknowledged == 0) {
+                    continue;
+                }
+                LocalDateTime last = start.plusMinutes(15L * (acknowledged - 1));
+                if (repository.findAllByTimeBetween(start, last).size() < acknowledged
+                        || repository.findById(last).isEmpty()) {
+                    missed.incrementAndGet();
+                }
+            }
+        };
+        Thread reader = new Thread(read);
+        Thread otherReader = new Thread(read);
+        reader.start();
+        otherReader.start();
+        for (int i = 0; i < count; i++) {
+            repository.insert(getRate(start.plusMinutes(15L * i)));
+            written.incrementAndGet();
+        }
+        reader.join();
+        otherReader.join();
+        repository.close();
+        assertEquals(0, missed.get());
+        assertEquals(count, repository.findAllByTimeBetween(start, start.plusDays(40)).size());
+    }
+
+    @Test
+    public void test_slot_update() throws IOException {
+        Path slotPath = Files.createTempDirectory("slot");
+        FileStorageRateRepository repository = new FileStorageRateRepository(slotPath, "SBER", Timeframe.W1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        LocalDateTime start = LocalDateTime.of(2021, 1, 4, 0, 0);
+        repository.insert(getRate(start));
+        FileStorageRateRepository.StorageBlock block = repository.getBlockByTime(start);
+        byte[] before = Files.readAllBytes(block.getPath());
+        for (int i = 1; i < 10; i++) {
+            repository.insert(getRate(start.plusWeeks(i)));
+        }
+        RateEntity changed = getRate(start.plusWeeks(3));
+        changed.setClose(7.);
+        repository.update(changed);
+        repository.upsertAll(List.of(getRate(start.plusWeeks(10))));
+
+        assertEquals(3, repository.getSlot(block, changed.getTime()));
+        assertEquals(-1, repository.getSlot(block, changed.getTime().plusDays(1)));
+        assertEquals(before.length, Files.size(block.getPath()));
+        List<RateEntity> rates = repository.findAllByTimeBetween(start, start.plusWeeks(20));
+        assertEquals(11, rates.size());
+        assertEquals(7., rates.get(3).getClose());
+        assertEquals(5., rates.get(4).getClose());
+        assertThrows(RuntimeException.class, () -> repository.insert(getRate(start.plusWeeks(5))));
+    }
+
+    @Test
+    public void test_first_and_last_blocks() throws IOException {
+        Path edgesPath = Files.createTempDirectory("edges");
+        FileStorageRateRepository repository = new FileStorageRateRepository(edgesPath, "SBER", Timeframe.D1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        assertTrue(repository.getLatest(1).isEmpty());
+        assertTrue(repository.getFirstRate().isEmpty());
+        LocalDateTime start = LocalDateTime.of(2020, 11, 20, 0, 0);
+        for (int i = 0; i < 60; i++) {
+            repository.insert(getRate(start.plusDays(i)));
+        }
+        Path blocks = edgesPath.resolve("SBER").resolve("D1.blocks");
+        assertTrue(Files.exists(blocks));
+        assertFalse(Files.exists(edgesPath.resolve("SBER").resolve("D1.manifest")));
+        assertEquals(start.plusDays(59), repository.findFirstByOrderByTimeDesc().getTime());
+        assertEquals(start, repository.getFirstRate().orElseThrow().getTime());
+
+        FileStorageRateRepository reopened = new FileStorageRateRepository(edgesPath, "SBER", Timeframe.D1,
+                FileStorageSettings.builder().withBlockIndexRefreshInterval(Duration.ZERO).build(),
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        assertEquals(start.plusDays(59), reopened.findFirstByOrderByTimeDesc().getTime());
+        assertEquals(start, reopened.getFirstRate().orElseThrow().getTime());
+        FileStorageRateRepository isolated = new FileStorageRateRepository(edgesPath, "SBER", Timeframe.D1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        assertEquals(start.plusDays(59), isolated.findFirstByOrderByTimeDesc().getTime());
+
+        // Крайние блоки, записанные другим экземпляром, видны без переоткрытия, если задана проверка индекса;
+        // без нее индекс в памяти не перечитывается
+        repository.insert(getRate(start.plusDays(75)));
+        repository.insert(getRate(start.minusDays(30)));
+        assertEquals(start.plusDays(75), reopened.findFirstByOrderByTimeDesc().getTime());
+        assertEquals(start.minusDays(30), reopened.getFirstRate().orElseThrow().getTime());
+        assertEquals(start.plusDays(59), isolated.findFirstByOrderByTimeDesc().getTime());
+
+        // Индекс указывает на удаленные блоки: они убираются из индекса при чтении
+        Files.delete(repository.getBlockByTime(start.plusDays(75)).getPath());
+        Files.delete(repository.getBlockByTime(start.minusDays(30)).getPath());
+        FileStorageRateRepository stale = new FileStorageRateRepository(edgesPath, "SBER", Timeframe.D1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        assertEquals(start.plusDays(59), stale.findFirstByOrderByTimeDesc().getTime());
+        assertEquals(start, stale.getFirstRate().orElseThrow().getTime());
+        Files.delete(blocks);
+        FileStorageRateRepository rebuilt = new FileStorageRateRepository(edgesPath, "SBER", Timeframe.D1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        assertEquals(start, rebuilt.getFirstRate().orElseThrow().getTime());
+        assertEquals(start.plusDays(59), rebuilt.findFirstByOrderByTimeDesc().getTime());
+        assertTrue(Files.exists(blocks));
+    }
+
+    @Test
+    public void test_block_layout() throws IOException {
+        FileStorageRateRepository w1 = new FileStorageRateRepository(path, "SBER", Timeframe.W1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        FileStorageRateRepository.StorageBlock block = w1.getBlockByTime(LocalDateTime.of(2021, 6, 7, 0, 0));
+        assertEquals(LocalDateTime.of(2021, 1, 4, 0, 0), block.getStart());
+        assertEquals(LocalDateTime.of(2021, 12, 27, 0, 0), block.getEnd());
+        assertEquals(53, block.getSize());
+        FileStorageRateRepository mn1 = new FileStorageRateRepository(path, "SBER", Timeframe.MN1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        assertEquals(LocalDateTime.of(2029, 12, 1, 0, 0), mn1.getBlockByTime(LocalDateTime.of(2021, 6, 1, 0, 0)).getEnd());
+
+        Path layoutPath = Files.createTempDirectory("layout");
+        for (Timeframe timeframe : List.of(Timeframe.M1, Timeframe.M5, Timeframe.H4, Timeframe.H8, Timeframe.MN3, Timeframe.Y1)) {
+            FileStorageRateRepository repository = new FileStorageRateRepository(layoutPath, "SBER", timeframe,
+                    StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+            LocalDateTime start = TimeUtils.getLatestFinishedBarTime(LocalDateTime.of(2019, 12, 31, 20, 0), timeframe);
+            List<RateEntity> rates = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                rates.add(getRate(TimeUtils.plus(start, timeframe, i)));
+            }
+            repository.upsertAll(rates);
+            LocalDateTime end = rates.get(rates.size() - 1).getTime();
+            assertEquals(30, repository.findAllByTimeBetween(start, end).size());
+            assertEquals(end, repository.findFirstByOrderByTimeDesc().getTime());
+            assertEquals(start, repository.getFirstRate().orElseThrow().getTime());
+        }
+
+        FileStorageRateRepository hourly = new FileStorageRateRepository(layoutPath, "GAZP", Timeframe.M5,
+                FileStorageSettings.builder().withBlockLayout(Timeframe.M5, BlockLayout.of(BlockLayout.Period.MONTH)).build(),
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        assertEquals(31 * 288, hourly.getBlockByTime(LocalDateTime.of(2021, 2, 3, 4, 5)).getSize());
+        assertThrows(RuntimeException.class, () -> FileStorageSettings.builder().withBlockLayout(Timeframe.W1, BlockLayout.of(BlockLayout.Period.DAY)));
+    }
+
+    @Test
+    public void test_compressed_blocks() throws IOException {
+        Path compressedPath = Files.createTempDirectory("compressed");
+        LocalDateTime start = LocalDateTime.of(2021, 3, 1, 0, 0);
+        List<RateEntity> rates = new ArrayList<>();
+        for (int i = 0; i < 24 * 20; i++) {
+            if (i % 24 < 20) {
+                RateEntity rate = getRate(start.plusHours(i));
+                rate.setClose(5. + (i % 7) / 100.);
+                rates.add(rate);
+            }
+        }
+        FileStorageRateRepository raw = new FileStorageRateRepository(compressedPath, "SBER", Timeframe.H1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        raw.upsertAll(rates.subList(0, 100));
+
+        FileStorageRateRepository repository = new FileStorageRateRepository(compressedPath, "SBER", Timeframe.H1,
+                FileStorageSettings.builder().withCompressionEnabled(true).build(),
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        repository.upsertAll(rates.subList(100, rates.size()));
+        RateEntity changed = getRate(start.plusHours(30));
+        changed.setClose(7.);
+        repository.update(changed);
+        repository.update(getRate(start.plusHours(200)));
+
+        FileStorageRateRepository.StorageBlock block = repository.getBlockByTime(start.plusDays(10));
+        assertTrue(Files.size(block.getPath()) * 4 < block.getSize() * 32L);
+        List<RateEntity> loaded = repository.findAllByTimeBetween(start, start.plusDays(20));
+        assertEquals(rates.size(), loaded.size());
+        assertEquals(7., repository.findById(changed.getTime()).orElseThrow().getClose());
+        assertEquals(rates.get(300), repository.findById(rates.get(300).getTime()).orElseThrow());
+        FileStorageRateRepository reader = new FileStorageRateRepository(compressedPath, "SBER", Timeframe.H1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        assertEquals(loaded, reader.findAllByTimeBetween(start, start.plusDays(20)));
+    }
+
+    @Test
+    public void test_price_codec_blocks() throws IOException {
+        Path ticksPath = Files.createTempDirectory("ticks");
+        LocalDateTime start = LocalDateTime.of(2021, 3, 1, 0, 0);
+        List<RateEntity> rates = new ArrayList<>();
+        for (int i = 0; i < 24 * 20; i++) {
+            RateEntity rate = getRate(start.plusHours(i));
+            rate.setClose(5. + (i % 7) / 100.);
+            rates.add(rate);
+        }
+        FileStorageRateRepository repository = new FileStorageRateRepository(ticksPath, "SBER", Timeframe.H1,
+                FileStorageSettings.builder().withPriceCodec(PriceCodec.of("0.01")).build(),
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        repository.upsertAll(rates);
+        RateEntity changed = getRate(start.plusHours(30));
+        changed.setClose(7.05);
+        repository.update(changed);
+
+        FileStorageRateRepository.StorageBlock block = repository.getBlockByTime(start.plusDays(10));
+        assertTrue(Files.size(block.getPath()) * 4 < block.getSize() * 32L);
+        assertEquals(7.05, repository.findById(changed.getTime()).orElseThrow().getClose());
+        assertEquals(rates.get(300), repository.findById(rates.get(300).getTime()).orElseThrow());
+        TickSeries ticks = repository.getTickSeriesBetween(start, start.plusHours(23), PriceCodec.of("0.01"));
+        assertEquals(24, ticks.size());
+        assertEquals(rates.get(5).getTime(), ticks.getTime(5));
+        assertEquals(505, ticks.getClose(5));
+        assertEquals(rates.get(5), ticks.toRateSeries().toEntity(5));
+
+        // Цена не кратна шагу - блок записывается без потерь в обычном формате
+        RateEntity inexact = getRate(start.plusDays(15));
+        inexact.setClose(5.001);
+        repository.update(inexact);
+        assertEquals(5.001, repository.findById(inexact.getTime()).orElseThrow().getClose());
+        assertEquals(block.getSize() * 32L, Files.size(repository.getBlockByTime(inexact.getTime()).getPath()));
+        assertEquals(rates.size(), repository.findAllByTimeBetween(start, start.plusDays(20)).size());
+    }
+
+    @Test
+    public void test_prefetch() throws IOException {
+        Path prefetchPath = Files.createTempDirectory("prefetch");
+        LocalDateTime start = LocalDateTime.of(2021, 1, 4, 0, 0);
+        List<RateEntity> rates = new ArrayList<>();
+        for (int i = 0; i < 24 * 300; i++) {
+            LocalDateTime time = start.plusHours(i);
+            if (time.getDayOfWeek().getValue() < 6) {
+                RateEntity rate = getRate(time);
+                rate.setClose(5. + (i % 7) / 100.);
+                rates.add(rate);
+            }
+        }
+        FileStorageRateRepository plain = new FileStorageRateRepository(prefetchPath, "SBER", Timeframe.H1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        plain.upsertAll(rates);
+
+        // Пул выполняет чтение в вызывающем потоке, поэтому блоки оказываются в кеше до обращения сканирования
+        AtomicInteger prefetched = new AtomicInteger();
+        FileStorageSettings settings = FileStorageSettings.builder()
+                .withPrefetchBlocks(16)
+                .withPrefetchExecutor(command -> {
+                    prefetched.incrementAndGet();
+                    command.run();
+                })
+                .withCacheMaximumBlocks(400)
+                .build();
+        FileStorageRateRepository repository = new FileStorageRateRepository(prefetchPath, "SBER", Timeframe.H1,
+                settings, StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        LocalDateTime before = start.plusDays(299);
+        List<RateEntity> expected = plain.getLatest(before, 5000);
+        assertEquals(5000, expected.size());
+        assertEquals(expected, repository.getLatest(before, 5000));
+        assertTrue(prefetched.get() > 0);
+        assertEquals(prefetched.get(), repository.getCacheStats().loadCount());
+        assertTrue(repository.getCacheStats().hitCount() >= prefetched.get());
+        repository.close();
+
+        // getLatest(count) останавливается на первом пустом блоке (выходных), дальше него блоки не читаются
+        FileStorageRateRepository latest = new FileStorageRateRepository(prefetchPath, "SBER", Timeframe.H1,
+                settings, StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        List<RateEntity> latestRates = latest.getLatest(3000);
+        assertEquals(plain.getLatest(3000), latestRates);
+        assertEquals(latestRates.stream().map(r -> r.getTime().toLocalDate()).distinct().count(),
+                latest.getCacheStats().loadCount());
+        latest.close();
+
+        assertEquals(Math.min(16, Runtime.getRuntime().availableProcessors()), settings.getPrefetchThreads());
+        assertEquals(2, FileStorageSettings.builder().withPrefetchBlocks(16).withPrefetchThreads(2).build()
+                .getPrefetchThreads());
+    }
+
+    @Test
+    public void test_block_index() throws IOException {
+        Path indexPath = Files.createTempDirectory("index");
+        LocalDateTime start = LocalDateTime.of(2021, 1, 4, 0, 0);
+        List<RateEntity> rates = new ArrayList<>();
+        for (int i = 0; i < 24 * 60; i++) {
+            LocalDateTime time = start.plusHours(i);
+            if (time.getDayOfWeek().getValue() < 6 && (i < 24 * 20 || i >= 24 * 40)) {
+                rates.add(getRate(time));
+            }
+        }
+        FileStorageRateRepository repository = new FileStorageRateRepository(indexPath, "SBER", Timeframe.H1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        repository.upsertAll(rates);
+        Path index = indexPath.resolve("SBER").resolve("H1.blocks");
+        assertTrue(Files.exists(index));
+
+        List<RateEntity> all = repository.findAllByTimeBetween(start.minusDays(30), start.plusDays(90));
+        assertEquals(rates, all);
+        RateSeries series = repository.getSeriesBetween(start.minusDays(30), start.plusDays(90));
+        assertEquals(rates.size(), series.size());
+        // 20 пустых дней подряд больше допустимого пропуска после найденных баров
+        assertEquals(rates.subList(rates.size() - 24 * 14, rates.size()),
+                repository.getLatest(start.plusDays(70), 1000));
+        // Пока ничего не найдено, пропускается до 100 пустых дней
+        assertEquals(rates.subList(rates.size() - 24 * 5, rates.size()),
+                repository.getLatest(start.plusDays(150), 24 * 5));
+
+        FileStorageRateRepository other = new FileStorageRateRepository(indexPath, "SBER", Timeframe.H1,
+                FileStorageSettings.builder().withBlockIndexRefreshInterval(Duration.ZERO).build(),
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        assertEquals(all, other.findAllByTimeBetween(start.minusDays(30), start.plusDays(90)));
+        RateEntity added = getRate(start.plusDays(100));
+        repository.insert(added);
+        assertEquals(added, other.getLatest(start.plusDays(101), 1).get(0));
+
+        // Запись другим экземпляром без промежуточного чтения не затирает блок, отмеченный первым
+        repository.insert(getRate(start.plusDays(103)));
+        other.insert(getRate(start.plusDays(104)));
+        FileStorageRateRepository reopened = new FileStorageRateRepository(indexPath, "SBER", Timeframe.H1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        assertEquals(rates.size() + 3, reopened.findAllByTimeBetween(start.minusDays(30), start.plusDays(120)).size());
+        try (Stream<Path> files = Files.walk(indexPath)) {
+            assertTrue(files.noneMatch(f -> f.getFileName().toString().endsWith(".tmp")));
+        }
+
+        // Оставшийся после сбоя временный файл не считается блоком
+        Path blockPath = repository.getBlockByTime(start.plusDays(104)).getPath();
+        Files.createFile(blockPath.resolveSibling(blockPath.getFileName() + "123.tmp"));
+        Files.delete(index);
+        FileStorageRateRepository rebuilt = new FileStorageRateRepository(indexPath, "SBER", Timeframe.H1,
+                StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+        assertEquals(rates.size() + 3, rebuilt.findAllByTimeBetween(start.minusDays(30), start.plusDays(120)).size());
+        assertTrue(Files.exists(index));
+    }
 }
@@ -101,6 +101,38 @@ public class InMemoryRateRepositoryTest {
         assertEquals(repository.getLatest(LocalDateTime.parse("2001-01-01T00:00:00"), 2).get(1).getTime(), LocalDateTime.parse("1999-10-01T00:00:00"));
     }
 
+    @Test
+    public void indexAfterUpdateAndOutOfOrderInsert() {
+        InMemoryRateRepository repository = init(List.of(
+                LocalDateTime.parse("1999-01-01T00:00:00"),
+                LocalDateTime.parse("2000-01-01T00:00:00"),
+                LocalDateTime.parse("2002-01-01T00:00:00")
+        ));
+        RateEntity entity = new RateEntity();
+        entity.setClose(2.);
+        entity.setHigh(2.);
+        entity.setOpen(2.);
+        entity.setLow(2.);
+        entity.setTime(LocalDateTime.parse("2000-01-01T00:00:00"));
+        repository.update(entity);
+        assertEquals(repository.count(), 3);
+        assertEquals(repository.getByIndex(1).getClose(), 2.);
+
+        entity = new RateEntity();
+        entity.setTime(LocalDateTime.parse("2001-01-01T00:00:00"));
+        repository.insert(entity);
+        assertEquals(repository.getByIndex(1).getTime(), LocalDateTime.parse("2001-01-01T00:00:00"));
+        assertEquals(repository.getShift(LocalDateTime.parse("2000-01-01T00:00:00")), 2);
+        assertEquals(repository.countByTimeBetween(LocalDateTime.parse("1999-01-01T00:00:00"), LocalDateTime.parse("2001-01-01T00:00:00")), 3);
+        assertEquals(repository.getLatest(2).get(0).getTime(), LocalDateTime.parse("2001-01-01T00:00:00"));
+        assertEquals(repository.getLatest(2).get(1).getTime(), LocalDateTime.parse("2000-01-01T00:00:00"));
+        assertEquals(repository.getByIndex(4), null);
+        assertEquals(repository.getHighestRate(LocalDateTime.parse("1999-01-01T00:00:00"), LocalDateTime.parse("2002-01-01T00:00:00")).get().getTime(),
+                LocalDateTime.parse("2000-01-01T00:00:00"));
+        assertEquals(repository.getLowestRate(LocalDateTime.parse("1999-06-01T00:00:00"), LocalDateTime.parse("2002-01-01T00:00:00")).get().getTime(),
+                LocalDateTime.parse("2002-01-01T00:00:00"));
+    }
+
     private InMemoryRateRepository init(List<LocalDateTime> times) {
         InMemoryRateRepository repository = new InMemoryRateRepository();
         for (LocalDateTime time : times) {
@@ -0,0 +1,94 @@
+package org.trade.rateslib.data.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.impl.StaticLoggerBinder;
+import org.trade.rateslib.data.RateEntity;
+import org.trade.rateslib.model.Timeframe;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SegmentRateRepositoryTest {
+
+    @TempDir
+    Path path;
+
+    @Test
+    public void test_insert_and_read() {
+        SegmentRateRepository repository = createRepository();
+        // вставка не по порядку и через границу года
+        repository.insert(getRate(LocalDateTime.of(2021, 1, 1, 2, 0), 3.));
+        repository.insert(getRate(LocalDateTime.of(2021, 1, 1, 0, 0), 1.));
+        repository.insert(getRate(LocalDateTime.of(2020, 12, 31, 23, 0), 0.5));
+        repository.insert(getRate(LocalDateTime.of(2021, 1, 1, 1, 0), 2.));
+        repository.insert(getRate(LocalDateTime.of(2021, 2, 1, 0, 0), 4.));
+
+        assertEquals(5, repository.count());
+        assertEquals(LocalDateTime.of(2021, 2, 1, 0, 0), repository.findFirstByOrderByTimeDesc().getTime());
+        assertEquals(LocalDateTime.of(2020, 12, 31, 23, 0), repository.getFirstRate().orElseThrow().getTime());
+        assertEquals(List.of(0.5, 1., 2.), repository.findAllByTimeBetween(
+                        LocalDateTime.of(2020, 12, 31, 0, 0), LocalDateTime.of(2021, 1, 1, 1, 0))
+                .stream().map(RateEntity::getOpen).collect(Collectors.toList()));
+        assertEquals(List.of(1., 2.), repository.getLatest(LocalDateTime.of(2021, 1, 1, 2, 0), 2)
+                .stream().map(RateEntity::getOpen).collect(Collectors.toList()));
+        assertEquals(List.of(3., 4.), repository.getLatest(2)
+                .stream().map(RateEntity::getOpen).collect(Collectors.toList()));
+        assertEquals(3, repository.countByTimeGreaterThanEqual(LocalDateTime.of(2021, 1, 1, 1, 0)));
+        assertEquals(2., repository.getByIndex(2).getOpen());
+        assertEquals(0.5, repository.findFirstByTimeLessThanOrderByTimeDesc(LocalDateTime.of(2021, 1, 1, 0, 0)).getOpen());
+    }
+
+    @Test
+    public void test_update_and_reopen() {
+        SegmentRateRepository repository = createRepository();
+        repository.update(getRate(LocalDateTime.of(2022, 5, 3, 10, 0), 1.));
+        repository.update(getRate(LocalDateTime.of(2022, 5, 3, 10, 0), 7.));
+        repository.close();
+
+        SegmentRateRepository reopened = createRepository();
+        assertEquals(1, reopened.count());
+        assertEquals(7., reopened.findById(LocalDateTime.of(2022, 5, 3, 10, 0)).orElseThrow().getOpen());
+        assertTrue(reopened.findById(LocalDateTime.of(2022, 5, 3, 11, 0)).isEmpty());
+        reopened.deleteAll();
+        assertEquals(0, reopened.count());
+    }
+
+    @Test
+    public void test_batch_upsert() {
+        SegmentRateRepository repository = createRepository();
+        repository.insert(getRate(LocalDateTime.of(2022, 1, 3, 10, 0), 1.));
+        repository.insertAll(List.of(
+                getRate(LocalDateTime.of(2022, 1, 3, 10, 0), 5.),
+                getRate(LocalDateTime.of(2022, 1, 3, 12, 0), 3.),
+                getRate(LocalDateTime.of(2022, 1, 3, 11, 0), 2.)));
+        assertEquals(List.of(1., 2., 3.), repository.getLatest(10)
+                .stream().map(RateEntity::getOpen).collect(Collectors.toList()));
+
+        repository.upsertAll(List.of(
+                getRate(LocalDateTime.of(2022, 1, 3, 10, 0), 5.),
+                getRate(LocalDateTime.of(2022, 1, 3, 9, 0), 0.5),
+                getRate(LocalDateTime.of(2022, 2, 1, 0, 0), 4.)));
+        assertEquals(List.of(0.5, 5., 2., 3., 4.), repository.getLatest(10)
+                .stream().map(RateEntity::getOpen).collect(Collectors.toList()));
+    }
+
+    private SegmentRateRepository createRepository() {
+        return new SegmentRateRepository(path, "SBER", Timeframe.H1, StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+    }
+
+    private RateEntity getRate(LocalDateTime time, double price) {
+        RateEntity r = new RateEntity();
+        r.setOpen(price);
+        r.setHigh(price);
+        r.setLow(price);
+        r.setClose(price);
+        r.setTime(time);
+        return r;
+    }
+}
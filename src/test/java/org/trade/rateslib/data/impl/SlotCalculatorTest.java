@@ -0,0 +1,45 @@
+package org.trade.rateslib.data.impl;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.impl.StaticLoggerBinder;
+import org.trade.rateslib.model.Timeframe;
+import org.trade.rateslib.utils.TimeUtils;
+
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author javonavi
+ */
+public class SlotCalculatorTest {
+
+    @Test
+    public void test_matches_iteration() {
+        List<LocalDateTime> times = List.of(
+                LocalDateTime.of(2020, 2, 29, 13, 45),
+                LocalDateTime.of(2021, 1, 1, 0, 0),
+                LocalDateTime.of(2024, 12, 31, 23, 0));
+        for (Timeframe timeframe : Timeframe.values()) {
+            FileStorageRateRepository repository = new FileStorageRateRepository(Paths.get("tmp"), "SLOT", timeframe,
+                    StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test"));
+            for (LocalDateTime time : times) {
+                FileStorageRateRepository.StorageBlock block = repository.getBlockByTime(time);
+                SlotCalculator slots = repository.getSlots(block);
+                int slot = 0;
+                for (LocalDateTime t = block.getStart(); !t.isAfter(block.getEnd()); t = TimeUtils.plus(t, timeframe)) {
+                    assertEquals(t, slots.getTime(slot));
+                    assertEquals(TimeUtils.toEpochMinutes(t), slots.getEpochMinutes(slot));
+                    assertEquals(slot, slots.getSlot(t));
+                    assertEquals(-1, slots.getSlot(timeframe == Timeframe.M1 ? t.plusSeconds(30) : t.plusMinutes(1)));
+                    slot++;
+                }
+                assertEquals(slot, slots.size());
+                assertEquals(-1, slots.getSlot(block.getStart().minusMinutes(15)));
+                assertEquals(-1, slots.getSlot(TimeUtils.plus(block.getEnd(), timeframe)));
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.trade.rateslib.data.impl;
+
+import org.junit.jupiter.api.Test;
+import org.trade.rateslib.model.PriceCodec;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author javonavi
+ */
+public class TicksBlockCodecTest {
+
+    @Test
+    public void test_round_trip() {
+        Random random = new Random(17);
+        for (String tickSize : new String[]{"0.00001", "0.25", "100"}) {
+            PriceCodec codec = PriceCodec.of(tickSize);
+            for (int slots : new int[]{1, 7, 24, 96, 1440}) {
+                double[] values = new double[slots * 4];
+                long close = 110000;
+                for (int slot = 0; slot < slots; slot++) {
+                    if (random.nextInt(10) < 3) {
+                        continue;
+                    }
+                    long open = close;
+                    close = Math.max(1, open + Math.round(random.nextGaussian() * 100));
+                    values[slot * 4] = codec.toPrice(open);
+                    values[slot * 4 + 1] = codec.toPrice(Math.max(open, close) + random.nextInt(50));
+                    values[slot * 4 + 2] = codec.toPrice(Math.min(open, close) - random.nextInt(50));
+                    values[slot * 4 + 3] = codec.toPrice(close);
+                }
+                byte[] encoded = TicksBlockCodec.encode(values, slots, codec);
+                assertTrue(TicksBlockCodec.isTicks(ByteBuffer.wrap(encoded)));
+                assertTrue(CompressedBlockCodec.isCompressed(ByteBuffer.wrap(encoded)));
+                assertArrayEquals(values, TicksBlockCodec.decode(ByteBuffer.wrap(encoded)));
+            }
+        }
+        assertNull(TicksBlockCodec.encode(new double[]{1.1, 1.2, 1.0, 1.15}, 1, PriceCodec.of("0.1")));
+        assertFalse(TicksBlockCodec.isTicks(ByteBuffer.wrap(CompressedBlockCodec.encode(new double[4], 1))));
+    }
+}
@@ -2,8 +2,10 @@ package org.trade.rateslib.indicator;
 
 import org.junit.jupiter.api.Test;
 import org.trade.rateslib.model.Rate;
+import org.trade.rateslib.model.RateSeries;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -17,8 +19,45 @@ public class AtrTest {
 
     @Test
     public void test1() {
-        List<Rate> rates = Arrays.asList(
-            compileRate(21.51, 21.51, 21.51),
+        List<Rate> rates = getRates();
+
+        Atr atr = new Atr();
+        List<Double> result = atr.calc(rates, 12);
+        assertEquals(2, result.size());
+    }
+
+    @Test
+    public void test_rate_series() {
+        List<Rate> rates = getRates();
+        Atr atr = new Atr();
+        List<Double> result = atr.calc(rates, 12);
+
+        RateSeries series = RateSeries.fromRates(rates);
+        assertEquals(rates.size(), series.size());
+        assertEquals(result.get(1), atr.calc(series.slice(1, series.size()), 0, 11), 1e-12);
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(atr.calc(rates, i, i + 11), atr.calc(series, i, i + 11), 1e-15);
+        }
+    }
+
+    @Test
+    public void test_calculator() {
+        List<Rate> rates = getRates();
+        Atr atr = new Atr();
+        List<Double> result = atr.calc(rates, 12);
+
+        Atr.AtrCalculator calculator = new Atr.AtrCalculator(12);
+        List<Double> streamed = new ArrayList<>();
+        rates.forEach(rate -> calculator.calc(rate).ifPresent(streamed::add));
+        assertEquals(3, streamed.size());
+        assertEquals(result.get(0), streamed.get(0), 1e-12);
+        assertEquals(result.get(1), streamed.get(1), 1e-12);
+        assertEquals(atr.calc(rates, 2, 13), streamed.get(2), 1e-12);
+    }
+
+    private List<Rate> getRates() {
+        return Arrays.asList(
+                compileRate(21.51, 21.51, 21.51),
                 compileRate(21.95, 20.22, 21.61),
                 compileRate(22.25, 21.10, 20.83),
                 compileRate(21.50, 20.34, 22.65),
@@ -32,10 +71,6 @@ public class AtrTest {
                 compileRate(24.92, 23.76, 24.60),
                 compileRate(25.23, 24.09, 24.89),
                 compileRate(25.55, 24.39, 25.20));
-
-        Atr atr = new Atr();
-        List<Double> result = atr.calc(rates, 12);
-        assertEquals(2, result.size());
     }
 
     private Rate compileRate(double high,
@@ -0,0 +1,71 @@
+package org.trade.rateslib.indicator;
+
+import org.junit.jupiter.api.Test;
+import org.trade.rateslib.model.Rate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author javonavi
+ */
+public class BollingerBandsTest {
+
+    @Test
+    public void test_calculator() {
+        List<Rate> rates = new ArrayList<>();
+        double[] closes = {21.51, 21.61, 20.83, 22.65, 22.41, 22.67, 23.05, 23.31, 23.68, 23.97, 24.31, 24.60, 24.89, 25.20};
+        for (double close : closes) {
+            rates.add(Rate.builder()
+                    .withOpen(close)
+                    .withHigh(close)
+                    .withLow(close)
+                    .withClose(close)
+                    .withTimeframe("W1")
+                    .withTime(LocalDateTime.now())
+                    .build());
+        }
+        BollingerBands bollingerBands = new BollingerBands();
+        BollingerBands.BollingerBandsCalculator calculator = new BollingerBands.BollingerBandsCalculator(5);
+        for (int i = 0; i < rates.size(); i++) {
+            Optional<BollingerBands.BollingerBandsResult> bb = calculator.calc(rates.get(i));
+            assertEquals(i >= 4, bb.isPresent());
+            if (bb.isPresent()) {
+                assertEquals(bollingerBands.calc(rates, i - 4, i).getUpper(), bb.get().getUpper(), 1e-9);
+                assertEquals(bollingerBands.calc(rates, i - 4, i).getLower(), bb.get().getLower(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void test_long_feed() {
+        Random random = new Random(5);
+        int length = 20;
+        BollingerBands.BollingerBandsCalculator calculator = new BollingerBands.BollingerBandsCalculator(length);
+        double[] window = new double[length];
+        double close = 100000.;
+        Optional<BollingerBands.BollingerBandsResult> bb = Optional.empty();
+        for (int i = 0; i < 1_000_003; i++) {
+            close += random.nextGaussian() * 0.01;
+            window[i % length] = close;
+            bb = calculator.calc(close);
+        }
+        double mean = 0;
+        for (double v : window) {
+            mean += v;
+        }
+        mean /= length;
+        double m2 = 0;
+        for (double v : window) {
+            m2 += (v - mean) * (v - mean);
+        }
+        double sd = Math.sqrt(m2 / length);
+        assertEquals(mean, bb.orElseThrow().getCenter(), 1e-9);
+        assertEquals(mean + 2 * sd, bb.orElseThrow().getUpper(), 1e-9);
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -26,4 +27,33 @@ public class MovingAverageTest {
         assertEquals(result.size(), 4);
         assertEquals(result.get(0), 20);
     }
+
+    @Test
+    public void checkCalculators() {
+        MovingAverage.MovingAverageCalculator sma = MovingAverage.MovingAverageCalculator.create(MovingAverage.MovingAverageType.SMA, 3);
+        assertEquals(sma.calc(10.), Optional.empty());
+        assertEquals(sma.calc(20.), Optional.empty());
+        assertEquals(sma.calc(30.), Optional.of(20.));
+        assertEquals(sma.calc(40.), Optional.of(30.));
+
+        List<Double> ema = new MovingAverage().calc(List.of(10., 20., 30., 40.), 3, MovingAverage.MovingAverageType.EMA);
+        assertEquals(ema.size(), 2);
+        assertEquals(ema.get(0), 20.);
+        assertEquals(ema.get(1), 30.);
+    }
+
+    @Test
+    public void checkEmaOverloadsAgree() {
+        MovingAverage ma = new MovingAverage();
+        List<Double> vals = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            vals.add(100. + Math.sin(i / 3.) * 10 + i % 7);
+        }
+        int length = 9;
+        List<Double> ema = ma.calc(vals, length, MovingAverage.MovingAverageType.EMA);
+        assertEquals(vals.size() - length + 1, ema.size());
+        for (int k = 0; k < ema.size(); k++) {
+            assertEquals(ema.get(k), ma.calc(vals, k, k + length - 1, MovingAverage.MovingAverageType.EMA), 1e-12);
+        }
+    }
 }
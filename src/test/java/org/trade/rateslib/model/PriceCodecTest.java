@@ -0,0 +1,52 @@
+package org.trade.rateslib.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author javonavi
+ */
+public class PriceCodecTest {
+
+    @Test
+    public void test_ticks() {
+        PriceCodec codec = PriceCodec.of("0.00001");
+        for (int i = 0; i < 200000; i++) {
+            double price = Double.parseDouble(BigDecimal.valueOf(i, 5).toPlainString());
+            assertEquals(i, codec.toTicks(price));
+            assertEquals(price, codec.toPrice(i));
+            assertTrue(codec.isExact(price));
+        }
+        assertEquals(110000, codec.toTicks(new BigDecimal("1.10000")));
+        assertEquals(new BigDecimal("1.10000"), codec.toBigDecimal(110000).setScale(5));
+        assertFalse(codec.isExact(1.000001));
+        assertEquals(1., codec.round(1.000001));
+
+        PriceCodec quarter = PriceCodec.of("0.25");
+        assertEquals(7, quarter.toTicks(1.8));
+        assertEquals(1.75, quarter.toPrice(7));
+    }
+
+    @Test
+    public void test_tick_series() {
+        RateSeries series = RateSeries.of(new long[]{1, 2, 3},
+                new double[]{1.1, 1.2, 1.3},
+                new double[]{1.15, 1.25, 1.35},
+                new double[]{1.05, 1.15, 1.25},
+                new double[]{1.2, 1.3, 1.4});
+        TickSeries ticks = TickSeries.of(series, PriceCodec.of("0.01"));
+        assertEquals(3, ticks.size());
+        assertEquals(115, ticks.getHigh(0));
+        assertEquals(125, ticks.getPrice(2, PriceType.LOW));
+        assertEquals(1, ticks.slice(1, 3).indexOf(series.getTime(2)));
+        RateSeries back = ticks.toRateSeries();
+        for (int i = 0; i < series.size(); i++) {
+            assertEquals(series.toEntity(i), back.toEntity(i));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.trade.rateslib.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author javonavi
+ */
+public class RatesCollectionTest {
+
+    @Test
+    public void test_window_extremums() {
+        Random random = new Random(7);
+        RatesCollection collection = new RatesCollection(5);
+        List<Rate> window = new ArrayList<>();
+        LocalDateTime time = LocalDateTime.parse("2020-01-01T00:00:00");
+        for (int i = 0; i < 200; i++) {
+            double low = random.nextInt(10);
+            Rate rate = Rate.builder()
+                    .withOpen(low)
+                    .withHigh(low + random.nextInt(3))
+                    .withLow(low)
+                    .withClose(low)
+                    .withTimeframe("H1")
+                    .withTime(time.plusHours(i))
+                    .build();
+            collection.add(rate);
+            window.add(rate);
+            if (window.size() > 5) {
+                window.remove(0);
+            }
+            assertEquals(window.size(), collection.size());
+            assertSame(window.stream().max(Comparator.comparing(Rate::getHigh)).orElseThrow(), collection.highest());
+            assertSame(window.stream().min(Comparator.comparing(Rate::getLow)).orElseThrow(), collection.lowest());
+        }
+    }
+}
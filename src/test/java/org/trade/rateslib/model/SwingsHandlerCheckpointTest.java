@@ -0,0 +1,76 @@
+package org.trade.rateslib.model;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.impl.StaticLoggerBinder;
+import org.trade.rateslib.data.RateEntity;
+import org.trade.rateslib.data.SwingHandlerContextEntity;
+import org.trade.rateslib.data.SwingsService;
+import org.trade.rateslib.data.TestRates;
+import org.trade.rateslib.data.impl.InMemorySwingRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author javonavi
+ */
+public class SwingsHandlerCheckpointTest {
+
+    private static final Logger log = StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test");
+    private static final String STOCK = "TEST";
+    private static final String TIMEFRAME = "M15";
+
+    @Test
+    public void test_restore_continues_like_uninterrupted_replay() {
+        List<RateEntity> rates = TestRates.randomWalk(11, LocalDateTime.parse("2021-01-04T00:00:00"), 15, 4000);
+        int reverseBarsCount = 12;
+
+        SwingsService expectedSwings = swingsService();
+        SwingsHandler expected = new SwingsHandler(reverseBarsCount, TIMEFRAME, STOCK, new SwingHandlerContextEntity(), expectedSwings, log);
+        List<String> expectedResult = new ArrayList<>();
+        rates.forEach(rate -> expected.addRate(rate).ifPresent(swing -> {
+            expectedSwings.save(STOCK, TIMEFRAME, swing.getSwingPoint());
+            expectedResult.add(swing.getSwingPoint().getTime() + " " + swing.getSwingPoint().getPrice());
+        }));
+
+        for (int split : new int[]{700, 2000, 3111}) {
+            assertEquals(expectedResult, replayWithRestore(rates, reverseBarsCount, split));
+        }
+        assertFalse(expectedResult.isEmpty());
+    }
+
+    private List<String> replayWithRestore(List<RateEntity> rates,
+                                           int reverseBarsCount,
+                                           int split) {
+        SwingsService actualSwings = swingsService();
+        SwingsHandler first = new SwingsHandler(reverseBarsCount, TIMEFRAME, STOCK, new SwingHandlerContextEntity(), actualSwings, log);
+        List<String> actualResult = new ArrayList<>();
+        rates.subList(0, split).forEach(rate -> first.addRate(rate).ifPresent(swing -> {
+            actualSwings.save(STOCK, TIMEFRAME, swing.getSwingPoint());
+            actualResult.add(swing.getSwingPoint().getTime() + " " + swing.getSwingPoint().getPrice());
+        }));
+        byte[] checkpoint = first.snapshot();
+        assertTrue(checkpoint.length < split * 45);
+
+        SwingsHandler restored = SwingsHandler.restore(checkpoint, actualSwings, log);
+        assertEquals(first.getContext().toString(), restored.getContext().toString());
+        rates.subList(split, rates.size()).forEach(rate -> restored.addRate(rate).ifPresent(swing -> {
+            actualSwings.save(STOCK, TIMEFRAME, swing.getSwingPoint());
+            actualResult.add(swing.getSwingPoint().getTime() + " " + swing.getSwingPoint().getPrice());
+        }));
+        return actualResult;
+    }
+
+    private SwingsService swingsService() {
+        SwingsService swingsService = new SwingsService();
+        swingsService.init(STOCK, Map.of(TIMEFRAME, new InMemorySwingRepository()));
+        return swingsService;
+    }
+}
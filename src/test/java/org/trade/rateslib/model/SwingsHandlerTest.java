@@ -0,0 +1,86 @@
+package org.trade.rateslib.model;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.impl.StaticLoggerBinder;
+import org.trade.rateslib.data.RateEntity;
+import org.trade.rateslib.data.SwingHandlerContextEntity;
+import org.trade.rateslib.data.SwingsService;
+import org.trade.rateslib.data.TestRates;
+import org.trade.rateslib.data.impl.InMemorySwingRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author javonavi
+ */
+public class SwingsHandlerTest {
+
+    private static final Logger log = StaticLoggerBinder.getSingleton().getLoggerFactory().getLogger("test");
+    private static final String STOCK = "TEST";
+    private static final String TIMEFRAME = "M15";
+
+    @Test
+    public void test_retention_keeps_results() {
+        List<RateEntity> rates = TestRates.randomWalk(11, LocalDateTime.parse("2021-01-04T00:00:00"), 15, 4000);
+        List<String> expectedResult = replay(rates, null);
+        assertEquals(expectedResult, replay(rates, 0));
+        assertEquals(expectedResult, replay(rates, 50));
+    }
+
+    @Test
+    public void test_price_codec_keeps_results() {
+        PriceCodec codec = PriceCodec.of("0.01");
+        List<RateEntity> rates = TestRates.randomWalk(11, LocalDateTime.parse("2021-01-04T00:00:00"), 15, 4000);
+        List<RateEntity> rounded = new ArrayList<>();
+        for (RateEntity rate : rates) {
+            RateEntity r = new RateEntity();
+            r.setTime(rate.getTime());
+            r.setOpen(codec.round(rate.getOpen()));
+            r.setHigh(codec.round(rate.getHigh()));
+            r.setLow(codec.round(rate.getLow()));
+            r.setClose(codec.round(rate.getClose()));
+            rounded.add(r);
+        }
+        List<String> expectedResult = replay(rounded, null);
+        assertFalse(expectedResult.isEmpty());
+        assertEquals(expectedResult, replay(rounded, null, codec));
+        assertEquals(expectedResult, replay(rates, null, codec));
+    }
+
+    private List<String> replay(List<RateEntity> rates,
+                                Integer retentionMarginBars) {
+        return replay(rates, retentionMarginBars, null);
+    }
+
+    private List<String> replay(List<RateEntity> rates,
+                                Integer retentionMarginBars,
+                                PriceCodec priceCodec) {
+        SwingsService swingsService = swingsService();
+        SwingsHandler handler = new SwingsHandler(12, TIMEFRAME, STOCK, new SwingHandlerContextEntity(), swingsService, log);
+        handler.setRetentionMarginBars(retentionMarginBars);
+        handler.setPriceCodec(priceCodec);
+        List<String> result = new ArrayList<>();
+        rates.forEach(rate -> handler.addRate(rate).ifPresent(swing -> {
+            swingsService.save(STOCK, TIMEFRAME, swing.getSwingPoint());
+            result.add(swing.getSwingPoint().getTime() + " " + swing.getSwingPoint().getPrice());
+        }));
+        if (retentionMarginBars != null) {
+            assertTrue(handler.getHistorySize() < 500, "historySize=" + handler.getHistorySize());
+        }
+        return result;
+    }
+
+    private SwingsService swingsService() {
+        SwingsService swingsService = new SwingsService();
+        swingsService.init(STOCK, Map.of(TIMEFRAME, new InMemorySwingRepository()));
+        return swingsService;
+    }
+}
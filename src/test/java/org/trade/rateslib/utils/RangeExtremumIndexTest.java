@@ -0,0 +1,59 @@
+package org.trade.rateslib.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author javonavi
+ */
+public class RangeExtremumIndexTest {
+
+    @Test
+    public void test_query_matches_linear_scan() {
+        Random random = new Random(42);
+        RangeExtremumIndex highs = RangeExtremumIndex.forMaximum();
+        RangeExtremumIndex lows = RangeExtremumIndex.forMinimum();
+        List<Double> values = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            double value = random.nextInt(20);
+            if (i % 50 == 49) {
+                int position = random.nextInt(values.size());
+                values.add(position, value);
+                highs.insert(position, value);
+                lows.insert(position, value);
+            } else {
+                values.add(value);
+                highs.add(value);
+                lows.add(value);
+            }
+            if (i % 7 == 0) {
+                int position = random.nextInt(values.size());
+                values.set(position, value + 1);
+                highs.set(position, value + 1);
+                lows.set(position, value + 1);
+            }
+        }
+        for (int k = 0; k < 1000; k++) {
+            int from = random.nextInt(values.size());
+            int to = from + random.nextInt(values.size() - from);
+            int max = from;
+            int min = from;
+            for (int i = from + 1; i <= to; i++) {
+                if (values.get(i) > values.get(max)) {
+                    max = i;
+                }
+                if (values.get(i) < values.get(min)) {
+                    min = i;
+                }
+            }
+            assertEquals(max, highs.query(from, to));
+            assertEquals(min, lows.query(from, to));
+        }
+        assertEquals(-1, highs.query(5, 4));
+    }
+}